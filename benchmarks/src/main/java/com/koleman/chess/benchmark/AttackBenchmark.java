@@ -0,0 +1,45 @@
+package com.koleman.chess.benchmark;
+
+import com.koleman.chess.model.PositionImpl;
+import com.koleman.chess.model.PositionUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PositionImpl.isAttacked(), which the mailbox backend calls for every pseudo-legal move it checks.
+ * BitboardPosition has no attack query of its own, so only the mailbox is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class AttackBenchmark {
+
+    @Param({"STARTING", "COMPLICATED", "PROMOTION"})
+    public String fen;
+
+    private PositionImpl position;
+
+    @Setup
+    public void setUp() {
+        position = (PositionImpl) PositionUtil.createFromFENString(BenchmarkData.fen(fen));
+    }
+
+    /**
+     * Asks whether the side not to move attacks each of the 64 squares.
+     */
+    @Benchmark
+    @OperationsPerInvocation(64)
+    public void isAttacked(Blackhole blackhole) {
+        int attacker = -position.getTeamToMove();
+        for (int i = 0; i < 128; i++) {
+            if ((i & 0x88) == 0) {
+                blackhole.consume(position.isAttacked(i, attacker));
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.koleman.chess.benchmark;
+
+import static com.koleman.chess.model.TestData.*;
+
+/**
+ * Maps the short names used in @Param values to the TestData FEN strings.
+ */
+final class BenchmarkData {
+
+    private BenchmarkData() {}
+
+    static String fen(String name) {
+        if (name.equals("STARTING")) {
+            return STARTING_FEN;
+        }
+        if (name.equals("COMPLICATED")) {
+            return COMPLICATED_FEN;
+        }
+        if (name.equals("PROMOTION")) {
+            return PROMOTION_FEN;
+        }
+        throw new IllegalArgumentException("Unknown benchmark position: " + name);
+    }
+}
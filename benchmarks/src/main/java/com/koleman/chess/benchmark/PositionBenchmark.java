@@ -0,0 +1,89 @@
+package com.koleman.chess.benchmark;
+
+import com.koleman.chess.engine.EngineImpl;
+import com.koleman.chess.model.Position;
+import com.koleman.chess.model.PositionUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.koleman.chess.model.Definitions.*;
+
+/**
+ * Throughput of the Position operations the search leans on, measured on the standard TestData positions.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PositionBenchmark {
+
+    @Param({"STARTING", "COMPLICATED", "PROMOTION"})
+    public String fen;
+
+    @Param({"MAILBOX_0X88", "BITBOARD"})
+    public String backend;
+
+    private Position position;
+    private int[] moves;
+    private int moveCount;
+    private int[] buffer;
+    private EngineImpl engine;
+
+    @Setup
+    public void setUp() {
+        position = PositionUtil.createFromFENString(BenchmarkData.fen(fen), PositionUtil.Backend.valueOf(backend));
+        List<Integer> possible = position.getPossibleMoves();
+        moves = new int[possible.size()];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = possible.get(i);
+        }
+        moveCount = moves.length;
+        buffer = new int[MAX_LEGAL_MOVES];
+        engine = new EngineImpl();
+    }
+
+    @Benchmark
+    public List<Integer> getPossibleMoves() {
+        return position.getPossibleMoves();
+    }
+
+    @Benchmark
+    public List<Integer> getCaptureMoves() {
+        return position.getCaptureMoves();
+    }
+
+    @Benchmark
+    public int generateMoves() {
+        return position.generateMoves(buffer, 0);
+    }
+
+    /**
+     * Makes and unmakes 32 of the position's legal moves, cycling through the list.
+     */
+    @Benchmark
+    @OperationsPerInvocation(32)
+    public long makeMove() {
+        long hash = 0;
+        for (int i = 0; i < 32; i++) {
+            int move = moves[i % moveCount];
+            position.makeMove(move);
+            hash ^= position.getHashKey();
+            position.unmakeMove(move);
+        }
+        return hash;
+    }
+
+    @Benchmark
+    public Position deepClone() {
+        return position.deepClone();
+    }
+
+    @Benchmark
+    public int evaluateMaterial() {
+        return engine.evaluateMaterial(position);
+    }
+}
@@ -0,0 +1,41 @@
+package com.koleman.chess.benchmark;
+
+import com.koleman.chess.engine.EngineImpl;
+import com.koleman.chess.model.Move;
+import com.koleman.chess.model.PositionUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for a complete fixed depth search. Every invocation gets a fresh engine, so nothing carries over in the
+ * transposition table from the last one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+
+    @Param({"STARTING", "COMPLICATED"})
+    public String fen;
+
+    @Param({"3"})
+    public int depth;
+
+    private EngineImpl engine;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        engine = new EngineImpl();
+        engine.setVerbose(false);
+        engine.setPosition(PositionUtil.createFromFENString(BenchmarkData.fen(fen)));
+    }
+
+    @Benchmark
+    public Move computeMoveAtDepth() {
+        return engine.computeMoveAtDepth(depth);
+    }
+}
@@ -1,6 +1,7 @@
 import com.koleman.chess.engine.Engine;
 import com.koleman.chess.engine.EngineUtil;
 import com.koleman.chess.model.*;
+import com.koleman.chess.uci.UciProtocol;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -21,6 +22,7 @@ public class Main {
     private static com.koleman.chess.model.Position position = PositionUtil.createStartingPosition();
     private static Engine engine = EngineUtil.createDefaultEngine();
     private static int depth = 3;
+    private static final int PERFT_TABLE_MB = 64;
 
     private static final String HELP_STRING = "Commands: " +
             "\n show - Outputs a visual representation of the current position" +
@@ -36,8 +38,13 @@ public class Main {
             "\n think - Pablo will think about the position and reveal his thoughts to you" +
             "\n nullmove - Toggles whose turn it is" +
             "\n setdepth {depth} - sets the search depth" +
+            "\n uci - Switches to the Universal Chess Interface, for chess GUIs. Also available as \"java -jar pablo.jar uci\"" +
             "";
     public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equalsIgnoreCase("uci")) {
+            new UciProtocol(reader, outputStream).run();
+            return;
+        }
         outputStream.println("Welcome to pablo, a chess engine written in Java by Koleman Nix. Type help for help.");
         String inputString;
         while (true) {
@@ -50,6 +57,14 @@ public class Main {
                 continue;
             }
 
+            // GUIs open with "uci". From then on it's their protocol, not ours.
+            if (inputString.trim().equals("uci")) {
+                UciProtocol uci = new UciProtocol(reader, outputStream);
+                uci.execute(inputString);
+                uci.run();
+                return;
+            }
+
             // Case Insensitive Commands Go Here
             inputString = inputString.toLowerCase();
             if (inputString.contentEquals("help")) {
@@ -121,7 +136,7 @@ public class Main {
             outputStream.println("Grab a cup of coffee and sit down. It's gonna be a long ride...");
         }
         long startTime = System.currentTimeMillis();
-        long score = PositionUtil.perft(position, depth);
+        long score = PositionUtil.perft(position, depth, Runtime.getRuntime().availableProcessors(), new PerftTable(PERFT_TABLE_MB));
         long endTime = System.currentTimeMillis();
         long elapsed = endTime - startTime;
         outputStream.println("Nodes at depth " + depth+ ": " + score);
@@ -142,7 +157,7 @@ public class Main {
         if (depth == 0) {
             outputStream.println("Done! That was easy... there isn't much to calculate at depth 0.");
         }
-        Map<String, Long> divideMap = PositionUtil.divide(position, depth);
+        Map<String, Long> divideMap = PositionUtil.divide(position, depth, Runtime.getRuntime().availableProcessors());
         for (String key : divideMap.keySet()) {
             outputStream.println(key + " " + divideMap.get(key));
         }
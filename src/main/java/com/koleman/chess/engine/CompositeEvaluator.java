@@ -0,0 +1,154 @@
+package com.koleman.chess.engine;
+
+import com.koleman.chess.model.Position;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adds up a list of evaluation terms, in the order they were added, so the cheap ones should go first. Each term
+ * comes with a margin: the most it can move the score either way. A term's score is clamped to its margin, so the
+ * margin holds even when it's a rough estimate rather than a proven bound. When the search only needs to know where
+ * the score falls relative to a window, and the terms left can't carry the score so far back into it, they're
+ * skipped (lazy evaluation). What comes back then is the bound on the real score nearest the window.
+ * Terms can also be timed one by one, to see where the evaluation spends its time. Timing costs two clock reads per
+ * term, so it's off by default.
+ */
+public class CompositeEvaluator implements Evaluator {
+    /** The margin of a term whose effect has no useful bound. The terms before it are never skipped. */
+    public static final int UNBOUNDED = 1 << 20;
+
+    private final List<Term> terms = new ArrayList<Term>();
+    private volatile boolean timed = false;
+
+    private static class Term {
+        final Evaluator evaluator;
+        final int margin;
+        /** The sum of the margins of this term and every one after it */
+        int marginLeft;
+        final LongAdder calls = new LongAdder();
+        final LongAdder skips = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+
+        Term(Evaluator evaluator, int margin) {
+            this.evaluator = evaluator;
+            this.margin = margin;
+        }
+    }
+
+    /**
+     * Adds a term that's never skipped.
+     * @return this, so terms can be chained
+     */
+    public CompositeEvaluator add(Evaluator term) {
+        return add(term, UNBOUNDED);
+    }
+
+    /**
+     * @param margin The most the term can add to or take from the score, in centipawns. Anything past it is cut off.
+     * @return this, so terms can be chained
+     */
+    public CompositeEvaluator add(Evaluator term, int margin) {
+        if (margin < 0) {
+            throw new IllegalArgumentException("A term's margin can't be negative: " + margin);
+        }
+        terms.add(new Term(term, Math.min(margin, UNBOUNDED)));
+        int left = 0;
+        for (int i = terms.size() - 1; i >= 0; i--) {
+            // Capped, so adding a few unbounded margins can't overflow
+            left = Math.min(left + terms.get(i).margin, UNBOUNDED);
+            terms.get(i).marginLeft = left;
+        }
+        return this;
+    }
+
+    @Override
+    public int evaluate(Position position) {
+        return evaluate(position, -UNBOUNDED * 4, UNBOUNDED * 4);
+    }
+
+    @Override
+    public int evaluate(Position position, int lower, int upper) {
+        int score = 0;
+        boolean timing = timed;
+        for (int i = 0; i < terms.size(); i++) {
+            Term term = terms.get(i);
+            if (term.marginLeft < UNBOUNDED && (score + term.marginLeft <= lower || score - term.marginLeft >= upper)) {
+                if (timing) {
+                    term.skips.increment();
+                }
+                // The bound nearest the window, so the caller can trust it either way
+                return score + term.marginLeft <= lower ? score + term.marginLeft : score - term.marginLeft;
+            }
+            if (timing) {
+                long start = System.nanoTime();
+                score += clamp(term.evaluator.evaluate(position), term.margin);
+                term.nanos.add(System.nanoTime() - start);
+                term.calls.increment();
+            } else {
+                score += clamp(term.evaluator.evaluate(position), term.margin);
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Keeps a term within its margin, which is what makes skipping it sound.
+     */
+    private static int clamp(int value, int margin) {
+        if (margin >= UNBOUNDED) {
+            return value;
+        }
+        return Math.max(-margin, Math.min(margin, value));
+    }
+
+    /**
+     * Turns the per-term counters on or off. They keep counting from where they were.
+     */
+    public void setTimed(boolean timed) {
+        this.timed = timed;
+    }
+
+    public boolean isTimed() {
+        return timed;
+    }
+
+    public int getTermCount() {
+        return terms.size();
+    }
+
+    public Evaluator getTerm(int index) {
+        return terms.get(index).evaluator;
+    }
+
+    /**
+     * @return How many times the term was evaluated while timing was on
+     */
+    public long getTermCalls(int index) {
+        return terms.get(index).calls.sum();
+    }
+
+    /**
+     * @return How many lazy cutoffs happened just before the term, while timing was on. It and every term after it
+     * were skipped.
+     */
+    public long getTermSkips(int index) {
+        return terms.get(index).skips.sum();
+    }
+
+    /**
+     * @return The total time spent in the term while timing was on, in nanoseconds
+     */
+    public long getTermNanos(int index) {
+        return terms.get(index).nanos.sum();
+    }
+
+    public void resetTimes() {
+        for (Term term : terms) {
+            term.calls.reset();
+            term.skips.reset();
+            term.nanos.reset();
+        }
+    }
+}
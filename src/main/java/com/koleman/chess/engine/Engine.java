@@ -25,6 +25,11 @@ public interface Engine {
      */
     public Move computeMoveTimed(int millis);
 
+    /**
+     * Searches within the limits of a time manager, and returns the best thing found
+     */
+    public Move computeMoveTimed(TimeManager time);
+
     /**
      * Searches forever.
      */
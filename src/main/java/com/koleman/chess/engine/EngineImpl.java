@@ -1,12 +1,9 @@
 package com.koleman.chess.engine;
 
-import com.koleman.chess.model.BitMove;
 import com.koleman.chess.model.Move;
 import com.koleman.chess.model.Position;
 
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 
 import static com.koleman.chess.model.Definitions.*;
 
@@ -15,154 +12,109 @@ import static com.koleman.chess.model.Definitions.*;
  * Created On 7/19/12 at 9:15 AM
  */
 public class EngineImpl implements Engine {
-    /** Aspiration window */
-    private static final int ASP_WINDOW = 10;
-    /** The maximum depth at which to perform quiescent searches, to prevent a quiescent explosion */
-    private static final int MAX_QUIES = 10;
-    /** Null Move reduction constant */
-    private static final int R = 2;
-    /** The Checkmate constant. It's a very high score because, well, checkmates are good. */
-    private static final int MATE = 150000;
     /** Virtual Infinity */
-    private static final int INFINITY = 300000;
-    /** The time interval, in milliseconds */
-    private static final int TIME_INTERVAL = 100;
+    private static final int INFINITY = SearchWorker.INFINITY;
+    /** The score of a checkmate on the board. A mate n plies away scores MATE - n. */
+    public static final int MATE = SearchWorker.MATE;
+    /** The deepest ply a search reaches, so any score past MATE - MAX_PLY is a mate */
+    public static final int MAX_PLY = SearchWorker.MAX_PLY;
+    /** Default transposition table size, in megabytes */
+    public static final int DEFAULT_HASH_MB = 16;
+    /** Default evaluation cache size, in megabytes */
+    public static final int DEFAULT_EVAL_HASH_MB = 4;
+    /** No search, the helpers' included, iterates deeper than this, so no line can outgrow the ply-indexed tables */
+    private static final int MAX_DEPTH = 64;
+    /** How often a search that has reached MAX_DEPTH looks to see whether it's been stopped, in milliseconds */
+    private static final int IDLE_INTERVAL = 10;
 
     private KibitzView kibitzView;
-    private int nodesSearched = 0;
-    private boolean timedOut = false;
+    /** Set by the main search thread when time runs out or by a caller on another thread, and read by every search thread */
+    private volatile boolean timedOut = false;
     private boolean shouldKibitz = false;
-    private int timeRemaining = 0;
-    private Timer timer;
-    private int A = -INFINITY, B = INFINITY;
-    private int deepestPly = 0;
+    /** The limits of the current timed search, or null when the search isn't timed */
+    private TimeManager timeManager;
     private Position position;
     private int difficulty = -1;
+    private TranspositionTable transpositionTable = new TranspositionTable(DEFAULT_HASH_MB);
+    private SearchConfig searchConfig = new SearchConfig();
+    private final Evaluator evaluator;
+    private EvalCache evalCache = new EvalCache(DEFAULT_EVAL_HASH_MB);
+    /** Total number of search threads, the caller's included */
+    private int threads = 1;
+    /** Whether the search prints every root move and its score to the console */
+    private boolean verbose = true;
+    private final SearchWorker mainWorker = new SearchWorker(this, true);
+    private SearchWorker[] helpers = new SearchWorker[0];
+    private Thread[] helperThreads = new Thread[0];
 
     public EngineImpl(KibitzView kview) {
         kibitzView = kview;
         shouldKibitz = true;
+        evaluator = EngineUtil.createDefaultEvaluator();
     }
 
     public EngineImpl(int dif) {
         difficulty = dif;
         shouldKibitz = false;
+        evaluator = EngineUtil.createDefaultEvaluator();
     }
     public EngineImpl() {
+        this(EngineUtil.createDefaultEvaluator());
+    }
+
+    public EngineImpl(Evaluator evaluator) {
+        if (evaluator == null) {
+            throw new IllegalArgumentException("An engine needs an evaluator");
+        }
         shouldKibitz = false;
         difficulty = 3;
+        this.evaluator = evaluator;
     }
 
+    /**
+     * The static evaluation, from the side to move's point of view. Positions evaluated before come from the
+     * evaluation cache.
+     */
     public int evaluatePosition(Position position) {
-        int score = evaluateMaterial(position);
+        long key = position.getHashKey();
+        long cached = evalCache.probe(key);
+        int score;
+        if (cached != EvalCache.MISS) {
+            score = EvalCache.getScore(cached);
+        } else {
+            score = evaluator.evaluate(position);
+            evalCache.store(key, score);
+        }
         return score * position.getTeamToMove();
     }
 
     /**
-     * Simple, unintelligent evaluation function for material, in centipawns.
-     * (pawns worth 100 points). It also gives development bonuses. For example,
-     * in the first 20 moves, a bishop in its starting position is worth less
-     * than a bishop anywhere else on the position. Likewise, pawns in the center 4
-     * squares are worth more than pawns on their starting position. Also,
-     * Knights receive a bonus for occupying the center. Rooks get a 7th rank
-     * bonus, etc.
-     *
-     * @param position The position to evaluate
-     * @return The calculated score. Positive if white is winning, negative if
-     * black is winning. (hoorah for zero-sum games!)
+     * Same as evaluatePosition(), for a search that only needs to know how the score compares with alpha and beta.
+     * The evaluator may then skip its expensive terms (lazy evaluation), so a score at or outside the window is
+     * only a bound. Those aren't cached.
      */
-    public int evaluateMaterial(Position position) {
-        int whitePoints = 0;
-        int blackPoints = 0;
-
-        for (int i = 0; i < 128; i++) {
-            if ((i & 0x88) == 0) {
-                int piece = position.getPiece(i);
-                switch (piece) {
-                    case WHITE_PAWN:
-                        if (i > 15 && i < 24) {
-                            whitePoints -= 10;
-                        }
-                        if (i == 51 || i == 52 || i == 67 || i == 68) {
-                            whitePoints += 25;
-                        }
-                        whitePoints += VAL_PAWN;
-                        break;
-                    case WHITE_KNIGHT:
-                        if (i == 1 || i == 6) {
-                            whitePoints -= 25;
-                        }
-                        if (i == 39 || i == 32) {
-                            whitePoints -= 15;
-                        }
-                        whitePoints += VAL_KNIGHT;
-                        break;
-                    case WHITE_BISHOP:
-                        if (i == 2 || i == 5) {
-                            whitePoints -= 25;
-                        }
-                        whitePoints += VAL_BISHOP;
-                        break;
-                    case WHITE_ROOK:
-                        // Rook on the 7th and 8th rank bonus
-                        if (i > 95 && i < 104) {
-                            whitePoints += 50;
-                        }
-                        if (i > 111 && i < 120) {
-                            whitePoints += 25;
-                        }
-                        whitePoints += VAL_ROOK;
-                        break;
-                    case WHITE_QUEEN:
-                        whitePoints += VAL_QUEEN;
-                        break;
-                    case WHITE_KING:
-                        whitePoints += VAL_KING;
-                        break;
-                    case BLACK_PAWN:
-                        if (i > 95 && i < 104) {
-                            blackPoints -= 10;
-                        }
-                        if (i == 51 || i == 52 || i == 67 || i == 68) {
-                            blackPoints += 25;
-                        }
-                        blackPoints += VAL_PAWN;
-                        break;
-                    case BLACK_KNIGHT:
-                        if (i == 113 || i == 118) {
-                            blackPoints -= 25;
-                        }
-                        if (i == 80 || i == 87) {
-                            blackPoints -= 15;
-                        }
-                        blackPoints += VAL_KNIGHT;
-                        break;
-                    case BLACK_BISHOP:
-                        if (i == 114 || i == 117) {
-                            blackPoints -= 25;
-                        }
-                        blackPoints += VAL_BISHOP;
-                        break;
-                    case BLACK_ROOK:
-                        // Rook on the 7th and 8th rank bonus
-                        if (i > 15 && i < 24) {
-                            blackPoints += 50;
-                        }
-                        if (i > -1 && i < 8) {
-                            blackPoints += 25;
-                        }
-                        blackPoints += VAL_ROOK;
-                        break;
-                    case BLACK_QUEEN:
-                        blackPoints += VAL_QUEEN;
-                        break;
-                    case BLACK_KING:
-                        blackPoints += VAL_KING;
-                        break;
-                }
-            }
+    public int evaluatePosition(Position position, int alpha, int beta) {
+        long key = position.getHashKey();
+        long cached = evalCache.probe(key);
+        if (cached != EvalCache.MISS) {
+            return EvalCache.getScore(cached) * position.getTeamToMove();
+        }
+        int side = position.getTeamToMove();
+        // The evaluator's window is white's
+        int lower = side == WHITE_TEAM ? alpha : -beta;
+        int upper = side == WHITE_TEAM ? beta : -alpha;
+        int score = evaluator.evaluate(position, lower, upper);
+        if (score > lower && score < upper) {
+            evalCache.store(key, score);
         }
-        return whitePoints - blackPoints;
+        return score * side;
+    }
+
+    /**
+     * The static evaluation, in centipawns from white's point of view.
+     */
+    public int evaluate(Position position) {
+        return evaluator.evaluate(position);
     }
 
     /**
@@ -178,14 +130,175 @@ public class EngineImpl implements Engine {
     @Override
     public Move computeMoveAtDepth(int depth) {
         timedOut = false;
-        deepestPly = 0;
-        return mainSearchRoot(position, depth);
+        timeManager = null;
+        startSearch();
+        try {
+            Move move = mainWorker.searchRoot(position, depth);
+            if (move != null) {
+                reportPrincipalVariation();
+            }
+            return move;
+        } finally {
+            stopHelpers();
+        }
     }
 
     public void setPosition(Position position) {
         this.position = position;
     }
 
+    /**
+     * Replaces the transposition table with an empty one of the given size.
+     * @param megabytes The most memory the table may use
+     */
+    public void setHashSize(int megabytes) {
+        transpositionTable = new TranspositionTable(megabytes);
+    }
+
+    /**
+     * Searches can share one table. Results found by one are then used by all of them.
+     */
+    public void setTranspositionTable(TranspositionTable table) {
+        transpositionTable = table;
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return transpositionTable;
+    }
+
+    /**
+     * Replaces the evaluation cache with an empty one of the given size.
+     * @param megabytes The most memory the cache may use
+     */
+    public void setEvalCacheSize(int megabytes) {
+        evalCache = new EvalCache(megabytes);
+    }
+
+    /**
+     * The cache of static evaluations, shared by every search thread, with its hit and miss counts.
+     */
+    public EvalCache getEvalCache() {
+        return evalCache;
+    }
+
+    public Evaluator getEvaluator() {
+        return evaluator;
+    }
+
+    /**
+     * The pruning settings. Change them through the returned object, or swap in another one between searches.
+     */
+    public SearchConfig getSearchConfig() {
+        return searchConfig;
+    }
+
+    public void setSearchConfig(SearchConfig searchConfig) {
+        this.searchConfig = searchConfig;
+    }
+
+    /**
+     * Sets how many threads search at once. Every thread past the first runs a helper search on its own copy of
+     * the position, feeding the shared transposition table. The move is still chosen by the caller's thread.
+     * @param threads The number of search threads, at least 1
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("An engine needs at least one search thread: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return The nodes searched so far by every thread of the current (or last) search
+     */
+    public long getNodesSearched() {
+        long nodes = mainWorker.getNodesSearched();
+        for (SearchWorker helper : helpers) {
+            nodes += helper.getNodesSearched();
+        }
+        return nodes;
+    }
+
+    boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Called by the main worker every few thousand nodes. Stops the search once the hard time limit is reached.
+     */
+    void checkTime() {
+        TimeManager time = timeManager;
+        if (time != null && time.hardLimitReached()) {
+            timedOut = true;
+        }
+    }
+
+    /**
+     * Turns the console output of the search on or off. Front ends that own standard out, like UCI, turn it off.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    /**
+     * Resets the main worker and starts the helpers, if there are any.
+     */
+    private void startSearch() {
+        transpositionTable.newSearch();
+        mainWorker.reset(shouldKibitz ? kibitzView : null);
+        helpers = new SearchWorker[threads - 1];
+        helperThreads = new Thread[threads - 1];
+        for (int i = 0; i < helpers.length; i++) {
+            final SearchWorker helper = new SearchWorker(this, false);
+            final Position copy = position.deepClone();
+            // Half of the helpers start a ply deeper, so they aren't all searching the same depth at the same time
+            final int firstDepth = 1 + (i & 1);
+            helper.reset(null);
+            helpers[i] = helper;
+            helperThreads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int depth = firstDepth; depth <= MAX_DEPTH && !helper.isStopped(); depth++) {
+                        helper.searchRoot(copy, depth);
+                    }
+                }
+            }, "Helper Search " + (i + 1));
+            helperThreads[i].setDaemon(true);
+            helperThreads[i].start();
+        }
+    }
+
+    /**
+     * Stops the helpers and waits for them to finish, so none of them is still running when the next search starts.
+     */
+    private void stopHelpers() {
+        for (SearchWorker helper : helpers) {
+            helper.stop();
+        }
+        boolean interrupted = false;
+        for (Thread thread : helperThreads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * This is the main function of the Engine. Give it a position to search, and a
      * time limit, and it will return the best move found. It uses a non
@@ -196,49 +309,59 @@ public class EngineImpl implements Engine {
      * @param millis The time allotted to complete the search. (in milliseconds)
      * @return The Best Move found.
      */
+    @Override
     public Move computeMoveTimed(int millis) {
+        return computeMoveTimed(TimeManager.forMoveTime(millis));
+    }
+
+    /**
+     * Same as computeMoveTimed(int), with the limits decided by a TimeManager. Deepening stops at the soft limit,
+     * or sooner when the next iteration isn't expected to finish in time, and the search stops at the hard limit.
+     */
+    @Override
+    public Move computeMoveTimed(TimeManager time) {
         if (shouldKibitz) {
             kibitzView.clearAll();
             kibitzView.clearDisplayBoard();
         }
-        nodesSearched = 0;
         timedOut = false;
-        deepestPly = 0;
-        int alpha = -INFINITY;
-        int beta = INFINITY;
-        long startTime;
-        long endTime;
-        Move bestMove = mainSearchRootNoQuies(position, 1, alpha, beta);
-        if (shouldKibitz) kibitzView.setBestMove(bestMove);
-        timeRemaining = millis;
-        TimerTask task = new TimerTask() {
-            @Override
-            public void run() {
-                updateTime();
-            }
-        };
-        timer = new Timer("Engine Timer");
-        timer.scheduleAtFixedRate(task, 0, TIME_INTERVAL);
-        int depth = 0;
-        while (!timedOut) {
-            startTime = System.currentTimeMillis();
-            Move move = mainSearchRoot(position, depth);
-            endTime = System.currentTimeMillis();
-            if (move != null && shouldKibitz) {
-                kibitzView.highlightMove(move);
-                bestMove = move;
-            }
-            depth++;
-            if (!timedOut && shouldKibitz) {
-                int time = (int) endTime - (int) startTime;
-                kibitzView.setBestMove(move);
-                kibitzView.setCurrentPly(depth - 1);
-                if (time != 0) {
-                    kibitzView.setNodesPerSecond(nodesSearched / (int) (endTime - startTime));
+        time.start();
+        timeManager = time;
+        startSearch();
+        try {
+            int alpha = -INFINITY;
+            int beta = INFINITY;
+            Move bestMove = mainWorker.searchRootNoQuies(position, 1, alpha, beta);
+            if (shouldKibitz) kibitzView.setBestMove(bestMove);
+            int depth = 0;
+            while (!timedOut && depth <= MAX_DEPTH) {
+                long startTime = System.nanoTime();
+                Move move = mainWorker.searchRoot(position, depth);
+                long iterationTime = System.nanoTime() - startTime;
+                if (move != null) {
+                    bestMove = move;
+                    reportPrincipalVariation();
+                }
+                depth++;
+                // An iteration cut short still gives its move, but it didn't reach the depth
+                if (move != null && !timedOut && shouldKibitz) {
+                    kibitzView.highlightMove(move);
+                    kibitzView.setBestMove(move);
+                    kibitzView.setCurrentPly(depth - 1);
+                    long millis = iterationTime / 1000000;
+                    if (millis != 0) {
+                        kibitzView.setNodesPerSecond((int) (getNodesSearched() / millis));
+                    }
+                }
+                if (!time.canStartIteration(iterationTime)) {
+                    break;
                 }
             }
+            return bestMove;
+        } finally {
+            timeManager = null;
+            stopHelpers();
         }
-        return bestMove;
     }
 
     public Move computeMoveBasedOnDifficulty() {
@@ -259,7 +382,8 @@ public class EngineImpl implements Engine {
      * time limit, and it will return the best move found. It uses a non
      * quiescent search at depth 0 to find its first move, then proceeds to use
      * a quiescent search with iterative deepening to find a better move. It
-     * keeps deepening forever, setting the best move found so far in the kibitz view.
+     * keeps deepening until the thread is interrupted or stopCalculating() is called, setting the best move found
+     * so far in the kibitz view. Past MAX_DEPTH it just waits to be stopped.
      */
     @Override
     public void computeMoveIndefinitely() throws InterruptedException {
@@ -267,41 +391,75 @@ public class EngineImpl implements Engine {
             kibitzView.clearAll();
             kibitzView.clearDisplayBoard();
         }
-        nodesSearched = 0;
-        deepestPly = 0;
-        int alpha = -INFINITY;
-        int beta = INFINITY;
-        long startTime;
-        long endTime;
-        Move bestMove = mainSearchRootNoQuies(position, 1, alpha, beta);
-        if (shouldKibitz) {
-            kibitzView.setBestMove(bestMove);
-        }
-        int depth = 0;
-        while (true) {
-            if (Thread.interrupted()) {
-                throw new InterruptedException();
-            }
-            startTime = System.currentTimeMillis();
-            Move move = mainSearchRoot(position, depth);
-            endTime = System.currentTimeMillis();
-            if (move != null && shouldKibitz) {
-                Move m = move;
-                kibitzView.highlightMove(m);
-                kibitzView.setBestMove(m);
-            }
-            depth++;
+        timedOut = false;
+        timeManager = null;
+        startSearch();
+        try {
+            int alpha = -INFINITY;
+            int beta = INFINITY;
+            long startTime;
+            long endTime;
+            Move bestMove = mainWorker.searchRootNoQuies(position, 1, alpha, beta);
             if (shouldKibitz) {
-                int time = (int) endTime - (int) startTime;
-                kibitzView.setBestMove(move);
-                kibitzView.setCurrentPly(depth - 1);
-                if (time != 0) {
-                    kibitzView.setNodesPerSecond(nodesSearched / (int) (endTime - startTime));
+                kibitzView.setBestMove(bestMove);
+            }
+            int depth = 0;
+            while (!timedOut && depth <= MAX_DEPTH) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                startTime = System.currentTimeMillis();
+                Move move = mainWorker.searchRoot(position, depth);
+                endTime = System.currentTimeMillis();
+                if (move != null && shouldKibitz) {
+                    Move m = move;
+                    kibitzView.highlightMove(m);
+                    kibitzView.setBestMove(m);
+                    reportPrincipalVariation();
                 }
+                depth++;
+                if (move != null && !timedOut && shouldKibitz) {
+                    int time = (int) endTime - (int) startTime;
+                    kibitzView.setBestMove(move);
+                    kibitzView.setCurrentPly(depth - 1);
+                    if (time != 0) {
+                        kibitzView.setNodesPerSecond((int) (getNodesSearched() / (endTime - startTime)));
+                    }
+                }
+            }
+            // Nothing deeper to search, but the caller still decides when the search is over
+            while (!timedOut) {
+                Thread.sleep(IDLE_INTERVAL);
             }
+        } finally {
+            stopHelpers();
         }
     }
 
+    /**
+     * @return The line the main search expects to be played, starting with the move it last returned or reported
+     */
+    public List<Move> getPrincipalVariation() {
+        return mainWorker.getPrincipalVariation();
+    }
+
+    /**
+     * Sends the principal variation to the view, if there is one, as moves in long algebraic notation.
+     */
+    private void reportPrincipalVariation() {
+        if (!shouldKibitz) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Move move : mainWorker.getPrincipalVariation()) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(move.toLongAlgebraic());
+        }
+        kibitzView.setPV(sb.toString());
+    }
+
     @Override
     public void setKibitzView(KibitzView view) {
         this.kibitzView = view;
@@ -319,119 +477,6 @@ public class EngineImpl implements Engine {
         timedOut = true;
     }
 
-    /**
-     * Updates the timeRemaining global variable every TIME_INTERVAL (currently
-     * 100 ms), and updates the timedOut boolean global variable appropriately.
-     */
-    private void updateTime() {
-        timeRemaining -= TIME_INTERVAL;
-        if (timeRemaining <= 100) {
-            timedOut = true;
-            timer.cancel();
-        }
-    }
-
-    /**
-     * This search will return the best Move found, rather than simply an
-     * integer score. It calls Negamax WITH quiescent search, and is thus much
-     * more time-consuming, and much more thorough, at a given depth than
-     * mainSearchRootNoQuies(). Call this once you are sure that you at least
-     * have one decent move to return, and can afford to try to find a better
-     * one.
-     *
-     * @param position The position to search
-     * @param depth The depth at which to search. Note: Quiescent evaluation
-     * will run much deeper than this depth at some points, but the complete
-     * search will not exceed this depth.
-     * @return
-     */
-    private Move mainSearchRoot(Position position, int depth) {
-        int score;
-        int bestMove = -1;
-        int best = -INFINITY;
-        List<Integer> moves = position.getPossibleMoves();
-        int total = moves.size();
-        int progress = 0;
-        A = -INFINITY;
-        B = INFINITY;
-
-        for (Integer move : moves) {
-            if (timedOut  || Thread.interrupted()) {
-                return null;
-            }
-            Position positionCopy = position.deepClone();
-            positionCopy.makeMove(move);
-            score = -NegamaxQuiescent(positionCopy, 1, depth - 1, A, B, true);
-            if (shouldKibitz) {
-                kibitzView.setDisplayBoard(positionCopy.toString());
-                progress++;
-                kibitzView.setNodesSearched(nodesSearched);
-                kibitzView.setProgress(progress, total);
-                kibitzView.setDeepestPly(deepestPly);
-            }
-//            System.out.print(BitMove.getMoveObject(move).toSAN() + ": " + score);
-            if (position.getTeamToMove() == WHITE_TEAM) {
-                System.out.print(BitMove.getMoveObject(move).toSAN() + ": " + score);
-            } else {
-                System.out.print(BitMove.getMoveObject(move).toSAN() + ": " + -score);
-            }
-            if (score > best) {
-                best = score;
-                if (shouldKibitz) kibitzView.setEvaluation((score/100.0)*(position.getTeamToMove()));
-                bestMove = move;
-                System.out.println(" *(New Best)");
-            } else {
-                System.out.println();
-            }
-        }
-        // Set up the aspiration window for the next search.
-
-        if (best <= A || best >= B) {
-            A = -INFINITY;
-            B = INFINITY;
-        } else {
-            A = best - ASP_WINDOW;
-            B = best + ASP_WINDOW;
-        }
-        return BitMove.getMoveObject(bestMove);
-    }
-
-    /**
-     * This search will return the best MOVE found, rather than simply an
-     * integer score. This search calls Negamax without quiescent evaluation. As
-     * such, it is subject to the horizon effect. A good use of this function is
-     * to call it with a depth of 1 or 0, just to ensure that you have a decent
-     * move to return when the time runs out. (useful for short calculation
-     * times, like 1 second)
-     *
-     * @param position The board to search
-     * @param depth The depth at which to search
-     * @param alpha Alpha value. Use -infinity
-     * @param beta Beta value. Use infinity.
-     * @return The best move found.
-     */
-    private Move mainSearchRootNoQuies(Position position, int depth, int alpha, int beta) {
-        int score;
-        int bestMove = -1;
-        int best = -INFINITY;
-        for (Integer move : position.getPossibleMoves()) {
-            if (timedOut) {
-                return null;
-            }
-            Position boardCopy = position.deepClone();
-            boardCopy.makeMove(move);
-            score = -Negamax(boardCopy, 1, depth - 1, alpha, beta);
-            if (shouldKibitz) {
-                kibitzView.setNodesSearched(nodesSearched);
-            }
-            if (score > best) {
-                best = score;
-                bestMove = move;
-            }
-        }
-        return BitMove.getMoveObject(bestMove);
-    }
-
     public void stop() {
         timedOut = true;
     }
@@ -439,175 +484,4 @@ public class EngineImpl implements Engine {
     public void unstop() {
         timedOut = false;
     }
-
-    /**
-     * A Negamax search which uses Quiescent evaluation. This means that once
-     * the depth parameter is reached, it will run a quiescent search, which
-     * evaluates all possible nodes until there are no captures available, and
-     * the position is "quiet".
-     *
-     * @param board The board to search
-     * @param ply the current ply. If this isn't a recursive call, this should
-     * be set to 0.
-     * @param depth The depth to search. Anything more than 6 with a quiescent
-     * search is asking for a long wait.
-     * @param alpha The alpha value. If this isn't a recursive call, alpha
-     * should be set to negative Infinity
-     * @param beta The beta value. If this isn't a recursive call, beta should
-     * be set to positive infinity
-     * @param allowNull Whether or not to use null move forward pruning. This
-     * improves search speed, but can mess up the evaluation in late game
-     * scenarios when Zugzwangs are more common.
-     * @return The score of the best continuation.
-     */
-    public int NegamaxQuiescent(Position board, int ply, int depth, int alpha, int beta, boolean allowNull) {
-        nodesSearched++;
-        if (timedOut) {
-            return 0;
-        }
-        int val;
-        if (allowNull && !board.inCheck()) {
-            board.makeNullMove(); // Making a null-move
-            val = -NegamaxQuiescent(board, ply + 1, depth - 1 - R, -beta, -beta + 1, false); // Evaluating the position.
-            board.makeNullMove(); // Unmaking a null-move
-
-            if (val >= beta) {
-                return val; // Cutoff
-            }
-        }
-        if (depth <= 0) {
-            return Quies(board, ply + 1, alpha, beta);
-        }
-        List<Integer> legalMoves = board.getPossibleMoves();
-
-        if (legalMoves.isEmpty()) {
-            // It's a checkmate!
-            if (board.inCheck()) {
-                return -MATE + ply;
-            } else {
-                // It's a stalemate!
-                return 0;
-            }
-        }
-        int best = -INFINITY;
-        for (Integer move : legalMoves) {
-            Position boardCopy = board.deepClone();
-            boardCopy.makeMove(move);
-            val = -NegamaxQuiescent(boardCopy, ply + 1, depth - 1, -beta, -alpha, true); // Note the minus sign here.
-
-            if (val >= beta) {
-                return beta;
-            }
-            if (val > alpha) {
-                alpha = val;
-            }
-        }
-        return alpha;
-
-    }
-
-    /**
-     * A quiescent search. This function searches the board parameter until no
-     * more captures can be made, and returns the score of the 'quiet' position.
-     * This solves the 'horizon' problem.
-     *
-     * @param position The board to analyze
-     * @param ply the current ply (again, if this isn't a recursive call, set it
-     * to 0)
-     * @param alpha If non-recursive call, set to negative infinity.
-     * @param beta If non-recursive call, set to positive infinity.
-     * @return The score of the quiet position.
-     */
-    public int Quies(Position position, int ply, int alpha, int beta) {
-        nodesSearched++;
-
-        if (ply > deepestPly) {
-            deepestPly = ply;
-        }
-        if (timedOut) {
-            return 0;
-        }
-        if (position.inCheck()) {
-            if (position.isCheckmate()) {
-                return -(MATE + ply);
-            }
-            return Negamax(position, ply + 1, 1, alpha, beta);
-        }
-        int val = evaluatePosition(position);
-
-        if (val >= beta) {
-            return beta;
-        }
-        if (val > alpha) {
-            alpha = val;
-        }
-        if (ply >= MAX_QUIES) {
-            return alpha;
-        }
-
-        List<Integer> moves = position.getCaptureMoves();
-        for (Integer move : moves) {
-            Position boardCopy = position.deepClone();
-            boardCopy.makeMove(move);
-            val = -Quies(boardCopy, ply + 1, -beta, -alpha);
-            if (val >= beta) {
-                return beta;
-            }
-            if (val > alpha) {
-                alpha = val;
-            }
-        }
-        return alpha;
-    }
-
-    /**
-     * A negamax search without quiescent evaluation. Subject to the limits of
-     * the horizon effect.
-     *
-     * @param board The board to search.
-     * @param ply The current ply (0 if this is a root call, recursive calls
-     * will be ply + 1.
-     * @param depth The depth to search ( can go much deeper than
-     * negamaxQuiescent because quiescent searched take a lot of time )
-     * @param alpha The alpha value. If not recursive call, set to negative
-     * Infinity
-     * @param beta The beta value. If not recursive call, set to positive
-     * Infinity.
-     * @return
-     */
-    public int Negamax(Position board, int ply, int depth, int alpha, int beta) {
-        nodesSearched++;
-        int val;
-        if (timedOut) {
-            return 0;
-        }
-        if (depth <= 0) {
-            return evaluatePosition(board);
-        }
-        List<Integer> legalMoves = board.getPossibleMoves();
-        int best = -INFINITY;
-        if (legalMoves.isEmpty()) {
-            // It's a checkmate!
-            if (board.inCheck()) {
-                return -(MATE + ply);
-            } else {
-                // It's a stalemate!
-                return 0;
-            }
-        }
-        for (Integer move : legalMoves) {
-            Position boardCopy = board.deepClone();
-            boardCopy.makeMove(move);
-            val = -Negamax(boardCopy, ply + 1, depth - 1, -beta, -alpha); // Note the minus sign here.
-
-            if (val >= beta) {
-                return beta;
-            }
-            if (val > alpha) {
-                alpha = val;
-            }
-        }
-        return alpha;
-    }
 }
-
@@ -5,7 +5,40 @@ package com.koleman.chess.engine;
  * Created On 7/19/12 at 10:21 AM
  */
 public class EngineUtil {
+    /**
+     * A heuristic cap on the pawn terms, not a proven bound: a couple of far advanced passed pawns get close to it.
+     * Structures worth more than this are rare, already winning, and get clamped to it.
+     */
+    private static final int PAWN_STRUCTURE_MARGIN = 250;
+
     public static Engine createDefaultEngine() {
         return new EngineImpl();
     }
+
+    /**
+     * Creates an engine that evaluates positions with the given evaluator.
+     */
+    public static Engine createEngine(Evaluator evaluator) {
+        return new EngineImpl(evaluator);
+    }
+
+    /**
+     * The evaluation engines get unless they're given another: material and piece placement, then pawn structure,
+     * capped at PAWN_STRUCTURE_MARGIN and skipped when it can't bring the score back into the search's window.
+     */
+    public static CompositeEvaluator createDefaultEvaluator() {
+        return new CompositeEvaluator()
+                .add(new PieceSquareEvaluator())
+                .add(new PawnStructureEvaluator(), PAWN_STRUCTURE_MARGIN);
+    }
+
+    /**
+     * Creates an engine that searches with several threads sharing one transposition table.
+     * @param threads The number of search threads, including the one that calls the engine
+     */
+    public static Engine createParallelEngine(int threads) {
+        EngineImpl engine = new EngineImpl();
+        engine.setThreads(threads);
+        return engine;
+    }
 }
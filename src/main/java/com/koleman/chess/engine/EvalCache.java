@@ -0,0 +1,94 @@
+package com.koleman.chess.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers static evaluations by Zobrist key. The same positions come up again and again, through transpositions
+ * and in every iteration of the iterative deepening, and the quiescence search evaluates every one of them, so a
+ * cache hit saves the whole evaluation. Laid out like the TranspositionTable: two longs per entry, the key XORed
+ * with the data and then the data, with no locks, so every search thread can share one cache. A newer entry always
+ * replaces an older one.
+ *
+ * The data long is the score (white's point of view) in the low 32 bits and a valid bit, so an entry is never 0.
+ */
+public class EvalCache {
+    /** What probe() returns when the position isn't in the cache */
+    public static final long MISS = 0;
+
+    private static final long VALID = 1L << 32;
+    /** Two longs per entry */
+    private static final int ENTRY_BYTES = 16;
+
+    private final long[] table;
+    private final int mask;
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * @param megabytes The most memory the cache may use. The entry count is rounded down to a power of two.
+     */
+    public EvalCache(int megabytes) {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException("Evaluation cache size must be at least 1 MB: " + megabytes);
+        }
+        int entries = (int) Long.highestOneBit(Math.min((long) megabytes * 1024 * 1024 / ENTRY_BYTES, 1 << 29));
+        table = new long[entries * 2];
+        mask = entries - 1;
+    }
+
+    /**
+     * Looks up a position.
+     * @return The packed score, or MISS. Read it with getScore().
+     */
+    public long probe(long key) {
+        probes.increment();
+        int index = ((int) key & mask) << 1;
+        long data = table[index + 1];
+        if ((table[index] ^ data) != key || data == MISS) {
+            return MISS;
+        }
+        hits.increment();
+        return data;
+    }
+
+    public void store(long key, int score) {
+        long data = (score & 0xFFFFFFFFL) | VALID;
+        int index = ((int) key & mask) << 1;
+        table[index] = key ^ data;
+        table[index + 1] = data;
+    }
+
+    /**
+     * Empties the cache and resets the counters. Needed whenever the evaluation itself changes.
+     */
+    public void clear() {
+        Arrays.fill(table, 0);
+        probes.reset();
+        hits.reset();
+    }
+
+    public int getEntryCount() {
+        return mask + 1;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return probes.sum() - hits.sum();
+    }
+
+    /**
+     * @return The fraction of probes that found their position, from 0 to 1
+     */
+    public double getHitRate() {
+        long total = probes.sum();
+        return total == 0 ? 0 : (double) hits.sum() / total;
+    }
+
+    public static int getScore(long data) {
+        return (int) data;
+    }
+}
@@ -0,0 +1,22 @@
+package com.koleman.chess.engine;
+
+import com.koleman.chess.model.Position;
+
+/**
+ * A static evaluation of a position, in centipawns from white's point of view. The engine takes one at construction
+ * (see EngineUtil), so evaluations can be swapped, combined and benchmarked without touching the search.
+ * Implementations are shared by every search thread, so they must not keep per-position state.
+ */
+public interface Evaluator {
+    public int evaluate(Position position);
+
+    /**
+     * Evaluates the position for a search that only cares where the score falls relative to a window. An evaluator
+     * may stop early once it's sure the score is at or below lower, or at or above upper, and return that bound: an
+     * upper bound at or below lower, or a lower bound at or above upper. Only a score strictly inside the window is
+     * exact. The default evaluates everything.
+     */
+    public default int evaluate(Position position, int lower, int upper) {
+        return evaluate(position);
+    }
+}
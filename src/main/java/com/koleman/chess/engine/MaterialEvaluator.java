@@ -0,0 +1,26 @@
+package com.koleman.chess.engine;
+
+import com.koleman.chess.model.Position;
+
+import static com.koleman.chess.model.Definitions.*;
+
+/**
+ * Counts material and nothing else, square by square. The simplest evaluation there is, kept as a baseline to
+ * measure the others against.
+ */
+public class MaterialEvaluator implements Evaluator {
+    @Override
+    public int evaluate(Position position) {
+        int score = 0;
+        for (int i = 0; i < 128; i++) {
+            if ((i & 0x88) == 0) {
+                int piece = position.getPiece(i);
+                // Both sides always have a king
+                if (piece != EMPTY && (piece & 7) != WHITE_KING) {
+                    score += piece >> 3 == 0 ? PIECE_VALUES[piece] : -PIECE_VALUES[piece];
+                }
+            }
+        }
+        return score;
+    }
+}
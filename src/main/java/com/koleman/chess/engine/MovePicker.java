@@ -0,0 +1,200 @@
+package com.koleman.chess.engine;
+
+import com.koleman.chess.model.BitMove;
+import com.koleman.chess.model.Position;
+
+import java.util.Arrays;
+
+import static com.koleman.chess.model.Definitions.*;
+
+/**
+ * Hands out a node's moves one at a time, generating them in stages so a node that cuts off early never pays for
+ * the rest. The order is the hash move, then the captures that don't lose material (best static exchange first, ties
+ * by their MVV/LVA ordering bits), then the two killer moves, then the quiet moves, best history score first, and
+ * last the losing captures. The hash move and the killers come from other positions, so they are checked for legality
+ * before they are played, and skipped when their stage's generated list brings them up again.
+ * For the quiescence search it can also hand out just the captures that don't lose material.
+ * The search keeps one picker per ply, so nothing is allocated while searching.
+ */
+class MovePicker {
+    private static final int STAGE_HASH_MOVE = 0;
+    private static final int STAGE_GENERATE_CAPTURES = 1;
+    private static final int STAGE_CAPTURES = 2;
+    private static final int STAGE_FIRST_KILLER = 3;
+    private static final int STAGE_SECOND_KILLER = 4;
+    private static final int STAGE_GENERATE_QUIETS = 5;
+    private static final int STAGE_QUIETS = 6;
+    private static final int STAGE_LOSING_CAPTURES = 7;
+    private static final int STAGE_DONE = 8;
+
+    private final int[] moves = new int[MAX_LEGAL_MOVES];
+    private final int[] scores = new int[MAX_LEGAL_MOVES];
+    /** The captures put off until after the quiet moves */
+    private final int[] losingCaptures = new int[MAX_LEGAL_MOVES];
+    private int losingCount;
+    /** Whether this is a quiescence node, which only searches the captures that don't lose material */
+    private boolean capturesOnly;
+    private Position position;
+    private int hashMove;
+    private int firstKiller;
+    private int secondKiller;
+    private int[] history;
+    private int stage;
+    private int count;
+    private int index;
+
+    /**
+     * Starts over on a new node.
+     * @param hashMove The transposition table's move for the position, or 0
+     * @param firstKiller The latest quiet move to cause a cutoff at the same ply elsewhere in the tree, or 0
+     * @param secondKiller The one before it, or 0
+     * @param history The side to move's history scores, indexed by from << 7 | to, or null to leave the quiet
+     * moves in generation order
+     */
+    void init(Position position, int hashMove, int firstKiller, int secondKiller, int[] history) {
+        this.position = position;
+        this.hashMove = BitMove.stripOrdering(hashMove);
+        this.firstKiller = BitMove.stripOrdering(firstKiller);
+        this.secondKiller = BitMove.stripOrdering(secondKiller);
+        this.history = history;
+        capturesOnly = false;
+        stage = STAGE_HASH_MOVE;
+        count = 0;
+        index = 0;
+        losingCount = 0;
+    }
+
+    /**
+     * Starts over on a quiescence node: only the captures that don't lose material, best first.
+     */
+    void initCaptures(Position position) {
+        init(position, 0, 0, 0, null);
+        capturesOnly = true;
+        stage = STAGE_GENERATE_CAPTURES;
+    }
+
+    /**
+     * @return The next move to search, or 0 when there are none left
+     */
+    int next() {
+        while (true) {
+            switch (stage) {
+                case STAGE_HASH_MOVE:
+                    stage = STAGE_GENERATE_CAPTURES;
+                    if (hashMove != 0 && position.isLegalMove(hashMove)) {
+                        return hashMove;
+                    }
+                    hashMove = 0;
+                    break;
+                case STAGE_GENERATE_CAPTURES:
+                    count = position.generateCaptures(moves, 0);
+                    Arrays.sort(moves, 0, count);
+                    for (int i = 0; i < count; i++) {
+                        scores[i] = position.staticExchange(moves[i]);
+                    }
+                    index = 0;
+                    stage = STAGE_CAPTURES;
+                    break;
+                case STAGE_CAPTURES:
+                    while (index < count) {
+                        int move = pickBest();
+                        if (scores[index - 1] < 0) {
+                            // The rest lose material too
+                            if (!capturesOnly) {
+                                losingCaptures[losingCount++] = move;
+                                System.arraycopy(moves, index, losingCaptures, losingCount, count - index);
+                                losingCount += count - index;
+                            }
+                            break;
+                        }
+                        if (BitMove.stripOrdering(move) != hashMove) {
+                            return move;
+                        }
+                    }
+                    stage = capturesOnly ? STAGE_DONE : STAGE_FIRST_KILLER;
+                    break;
+                case STAGE_FIRST_KILLER:
+                    stage = STAGE_SECOND_KILLER;
+                    if (firstKiller != 0 && firstKiller != hashMove && position.isLegalMove(firstKiller)) {
+                        return firstKiller;
+                    }
+                    firstKiller = 0;
+                    break;
+                case STAGE_SECOND_KILLER:
+                    stage = STAGE_GENERATE_QUIETS;
+                    if (secondKiller != 0 && secondKiller != hashMove && secondKiller != firstKiller
+                            && position.isLegalMove(secondKiller)) {
+                        return secondKiller;
+                    }
+                    secondKiller = 0;
+                    break;
+                case STAGE_GENERATE_QUIETS:
+                    count = position.generateQuiets(moves, 0);
+                    Arrays.sort(moves, 0, count);
+                    scoreQuiets();
+                    index = 0;
+                    stage = STAGE_QUIETS;
+                    break;
+                case STAGE_QUIETS:
+                    while (index < count) {
+                        int move = pickBest();
+                        int stripped = BitMove.stripOrdering(move);
+                        if (stripped != hashMove && stripped != firstKiller && stripped != secondKiller) {
+                            return move;
+                        }
+                    }
+                    index = 0;
+                    stage = STAGE_LOSING_CAPTURES;
+                    break;
+                case STAGE_LOSING_CAPTURES:
+                    while (index < losingCount) {
+                        int move = losingCaptures[index++];
+                        if (BitMove.stripOrdering(move) != hashMove) {
+                            return move;
+                        }
+                    }
+                    stage = STAGE_DONE;
+                    break;
+                default:
+                    return 0;
+            }
+        }
+    }
+
+    private void scoreQuiets() {
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int type = BitMove.getType(move);
+            if (type >= PROMOTION_KNIGHT && type <= PROMOTION_QUEEN) {
+                // Promotions never earn history, but they're still the likeliest quiet moves to matter
+                scores[i] = Integer.MAX_VALUE;
+            } else if (history == null) {
+                scores[i] = 0;
+            } else {
+                scores[i] = history[BitMove.getFromIndex(move) << 7 | BitMove.getToIndex(move)];
+            }
+        }
+    }
+
+    /**
+     * Moves the best scoring of the remaining moves up to index and returns it. Sorting the whole list up front
+     * would be wasted on the nodes that cut off after a few of them.
+     */
+    private int pickBest() {
+        int best = index;
+        for (int i = index + 1; i < count; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        int move = moves[best];
+        int score = scores[best];
+        // Shift rather than swap, so equal scores keep their sorted order
+        System.arraycopy(moves, index, moves, index + 1, best - index);
+        System.arraycopy(scores, index, scores, index + 1, best - index);
+        moves[index] = move;
+        scores[index] = score;
+        index++;
+        return move;
+    }
+}
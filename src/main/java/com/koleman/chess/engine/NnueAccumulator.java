@@ -0,0 +1,89 @@
+package com.koleman.chess.engine;
+
+import com.koleman.chess.model.Bitboards;
+import com.koleman.chess.model.PieceObserver;
+import com.koleman.chess.model.Position;
+
+import static com.koleman.chess.model.Definitions.*;
+
+/**
+ * The feature transformer's output for one position, from both sides' points of view. It's attached to the position
+ * as its PieceObserver, so makeMove() and unmakeMove() keep it current: each piece put down or picked up adds or
+ * subtracts one row of weights per side, instead of the whole board being summed again.
+ *
+ * The loops are plain int16 arithmetic over whole arrays, written so the JIT can turn them into SIMD instructions.
+ * Sums wrap around like the int16 registers a trained network's weights are sized for.
+ */
+class NnueAccumulator implements PieceObserver {
+    final NnueNetwork network;
+    final short[] white;
+    final short[] black;
+
+    NnueAccumulator(NnueNetwork network) {
+        this.network = network;
+        white = new short[network.hidden];
+        black = new short[network.hidden];
+    }
+
+    /**
+     * Sums the whole board from scratch.
+     */
+    void refresh(Position position) {
+        System.arraycopy(network.featureBias, 0, white, 0, network.hidden);
+        System.arraycopy(network.featureBias, 0, black, 0, network.hidden);
+        for (int index = 0; index < 128; index++) {
+            if ((index & 0x88) == 0 && position.getPiece(index) != EMPTY) {
+                pieceAdded(position.getPiece(index), index);
+            }
+        }
+    }
+
+    @Override
+    public void pieceAdded(int piece, int square) {
+        int sq = Bitboards.X88_TO_SQUARE[square];
+        add(white, network.featureWeights, NnueNetwork.feature(piece, sq, 0) * network.hidden);
+        add(black, network.featureWeights, NnueNetwork.feature(piece, sq, 1) * network.hidden);
+    }
+
+    @Override
+    public void pieceRemoved(int piece, int square) {
+        int sq = Bitboards.X88_TO_SQUARE[square];
+        subtract(white, network.featureWeights, NnueNetwork.feature(piece, sq, 0) * network.hidden);
+        subtract(black, network.featureWeights, NnueNetwork.feature(piece, sq, 1) * network.hidden);
+    }
+
+    /**
+     * @return The network's output from the side to move's point of view, in centipawns
+     */
+    int output(int teamToMove) {
+        short[] us = teamToMove == WHITE_TEAM ? white : black;
+        short[] them = teamToMove == WHITE_TEAM ? black : white;
+        int sum = network.outputBias
+                + clippedDot(us, network.outputWeights, 0)
+                + clippedDot(them, network.outputWeights, network.hidden);
+        return (int) ((long) sum * NnueNetwork.SCALE / (NnueNetwork.QA * NnueNetwork.QB));
+    }
+
+    private static void add(short[] accumulator, short[] weights, int offset) {
+        for (int i = 0; i < accumulator.length; i++) {
+            accumulator[i] = (short) (accumulator[i] + weights[offset + i]);
+        }
+    }
+
+    private static void subtract(short[] accumulator, short[] weights, int offset) {
+        for (int i = 0; i < accumulator.length; i++) {
+            accumulator[i] = (short) (accumulator[i] - weights[offset + i]);
+        }
+    }
+
+    /**
+     * The clipped ReLU and the output layer in one pass. The network's constructor makes sure the int can't overflow.
+     */
+    private static int clippedDot(short[] accumulator, short[] weights, int offset) {
+        int sum = 0;
+        for (int i = 0; i < accumulator.length; i++) {
+            sum += Math.min(Math.max(accumulator[i], 0), NnueNetwork.QA) * weights[offset + i];
+        }
+        return sum;
+    }
+}
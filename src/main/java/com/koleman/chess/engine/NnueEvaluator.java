@@ -0,0 +1,44 @@
+package com.koleman.chess.engine;
+
+import com.koleman.chess.model.PieceObserver;
+import com.koleman.chess.model.Position;
+
+/**
+ * Evaluates positions with an NnueNetwork in place of the hand-written terms, e.g.
+ * EngineUtil.createEngine(new NnueEvaluator(NnueNetwork.load(file))).
+ *
+ * The first time it sees a position it sums the whole board and attaches an NnueAccumulator to it, replacing any
+ * other PieceObserver. From then on the position keeps the accumulator current as moves are made and unmade, and
+ * evaluating is just the output layer. Each search thread has its own copy of the position, so each gets its own
+ * accumulator, and the evaluator itself can be shared.
+ */
+public class NnueEvaluator implements Evaluator {
+    private final NnueNetwork network;
+
+    public NnueEvaluator(NnueNetwork network) {
+        if (network == null) {
+            throw new IllegalArgumentException("NnueEvaluator needs a network");
+        }
+        this.network = network;
+    }
+
+    @Override
+    public int evaluate(Position position) {
+        return accumulator(position).output(position.getTeamToMove()) * position.getTeamToMove();
+    }
+
+    public NnueNetwork getNetwork() {
+        return network;
+    }
+
+    private NnueAccumulator accumulator(Position position) {
+        PieceObserver observer = position.getPieceObserver();
+        if (observer instanceof NnueAccumulator && ((NnueAccumulator) observer).network == network) {
+            return (NnueAccumulator) observer;
+        }
+        NnueAccumulator accumulator = new NnueAccumulator(network);
+        accumulator.refresh(position);
+        position.setPieceObserver(accumulator);
+        return accumulator;
+    }
+}
@@ -0,0 +1,145 @@
+package com.koleman.chess.engine;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The weights of a small quantized evaluation network. Every (piece, square) pair is an input feature, seen once
+ * from white's side and once from black's, with the board flipped, so both sides share one feature transformer.
+ * The transformer's output for each side is an accumulator of hidden int16 sums that's cheap to update when a piece
+ * moves. The two accumulators, side to move first, are clipped to [0, QA] and go through a single output layer.
+ *
+ * The weights file is little-endian: the magic number, the format version and the hidden layer size as ints, then
+ * the feature weights (FEATURES rows of hidden shorts), the feature biases (hidden shorts), the output weights (two
+ * times hidden shorts, side to move first) and the output bias as an int.
+ */
+public class NnueNetwork {
+    /** "NNUE", read as a little-endian int */
+    public static final int MAGIC = 0x45554E4E;
+    public static final int VERSION = 1;
+    /** Two teams, six piece types, 64 squares */
+    public static final int FEATURES = 768;
+    public static final int MAX_HIDDEN = 4096;
+    /** The clipped accumulator's ceiling: 1.0 in the quantized arithmetic */
+    public static final int QA = 255;
+    /** 1.0 for the output weights */
+    public static final int QB = 64;
+    /** Converts the network's output to centipawns */
+    public static final int SCALE = 400;
+
+    final int hidden;
+    final short[] featureWeights;
+    final short[] featureBias;
+    final short[] outputWeights;
+    final int outputBias;
+
+    public NnueNetwork(int hidden, short[] featureWeights, short[] featureBias, short[] outputWeights, int outputBias) {
+        if (hidden < 1 || hidden > MAX_HIDDEN) {
+            throw new IllegalArgumentException("Hidden layer size must be from 1 to " + MAX_HIDDEN + ": " + hidden);
+        }
+        if (featureWeights.length != FEATURES * hidden || featureBias.length != hidden
+                || outputWeights.length != 2 * hidden) {
+            throw new IllegalArgumentException("Weight arrays don't match a hidden layer of " + hidden);
+        }
+        // The output layer adds up in an int, so make sure no position can overflow it
+        long worst = Math.abs((long) outputBias);
+        for (short weight : outputWeights) {
+            worst += (long) QA * Math.abs(weight);
+        }
+        if (worst > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Output weights are too large for 32 bit arithmetic");
+        }
+        this.hidden = hidden;
+        this.featureWeights = featureWeights;
+        this.featureBias = featureBias;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+    }
+
+    public static NnueNetwork load(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return load(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    public static NnueNetwork load(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        ByteBuffer header = read(in, 12);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a network file");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported network version: " + version);
+        }
+        int hidden = header.getInt();
+        if (hidden < 1 || hidden > MAX_HIDDEN) {
+            throw new IOException("Bad hidden layer size: " + hidden);
+        }
+        short[] featureWeights = readShorts(in, FEATURES * hidden);
+        short[] featureBias = readShorts(in, hidden);
+        short[] outputWeights = readShorts(in, 2 * hidden);
+        int outputBias = read(in, 4).getInt();
+        if (in.read() != -1) {
+            throw new IOException("Network file is longer than its header says");
+        }
+        try {
+            return new NnueNetwork(hidden, featureWeights, featureBias, outputWeights, outputBias);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the network in the format load() reads.
+     */
+    public void write(OutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(12 + 2 * (FEATURES * hidden + 3 * hidden) + 4)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(hidden);
+        buffer.asShortBuffer().put(featureWeights).put(featureBias).put(outputWeights);
+        buffer.position(buffer.capacity() - 4);
+        buffer.putInt(outputBias);
+        out.write(buffer.array());
+        out.flush();
+    }
+
+    public int getHiddenSize() {
+        return hidden;
+    }
+
+    /**
+     * The input feature a piece stands for, from one side's point of view. Black sees the board flipped, with its own
+     * pieces as the first 384 features, just like white does.
+     * @param piece A piece, white 1-6 or black 9-14
+     * @param square Its 0-63 square
+     * @param perspective 0 for white, 1 for black
+     */
+    static int feature(int piece, int square, int perspective) {
+        int relative = (piece >> 3) ^ perspective;
+        int flipped = perspective == 0 ? square : square ^ 56;
+        return relative * 384 + ((piece & 7) - 1) * 64 + flipped;
+    }
+
+    private static ByteBuffer read(DataInputStream in, int bytes) throws IOException {
+        byte[] data = new byte[bytes];
+        in.readFully(data);
+        return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static short[] readShorts(DataInputStream in, int count) throws IOException {
+        short[] values = new short[count];
+        read(in, count * 2).asShortBuffer().get(values);
+        return values;
+    }
+}
@@ -0,0 +1,185 @@
+package com.koleman.chess.engine;
+
+import com.koleman.chess.model.Position;
+
+import static com.koleman.chess.model.Definitions.*;
+
+/**
+ * The pawn terms of the evaluation, in centipawns from white's point of view: passed, isolated, doubled and backward
+ * pawns, which depend on nothing but the pawns and are cached in a PawnTable, and the pawn shield in front of each
+ * king, which moves with the king and so is worked out every time (it's only a few squares).
+ * Pawns are read into 64-bit masks, a1 = bit 0, h8 = bit 63.
+ */
+class PawnStructure {
+    /** By rank, counted from the pawn's own side */
+    private static final int[] PASSED_MIDGAME = {0, 5, 10, 15, 25, 40, 60, 0};
+    private static final int[] PASSED_ENDGAME = {0, 10, 15, 25, 45, 75, 110, 0};
+    private static final int ISOLATED_MIDGAME = -10;
+    private static final int ISOLATED_ENDGAME = -15;
+    /** For every pawn with another of its own in front of it */
+    private static final int DOUBLED_MIDGAME = -10;
+    private static final int DOUBLED_ENDGAME = -20;
+    private static final int BACKWARD_MIDGAME = -8;
+    private static final int BACKWARD_ENDGAME = -10;
+    /** Middlegame only: for each pawn right in front of a king on its first two ranks, and one square further */
+    private static final int SHIELD_NEAR = 12;
+    private static final int SHIELD_FAR = 6;
+
+    private static final long FILE_A = 0x0101010101010101L;
+    /** [side][square]: the squares ahead of a pawn on its own file */
+    private static final long[][] FRONT = new long[2][64];
+    /** [side][square]: the squares ahead of a pawn on its own and the neighboring files. No enemy pawns there means passed. */
+    private static final long[][] PASSED_SPAN = new long[2][64];
+    /** [side][square]: the neighboring files, from the pawn's rank back. A pawn there can support it. */
+    private static final long[][] SUPPORT = new long[2][64];
+    private static final long[] ADJACENT_FILES = new long[8];
+
+    static {
+        for (int file = 0; file < 8; file++) {
+            ADJACENT_FILES[file] = (file > 0 ? FILE_A << (file - 1) : 0) | (file < 7 ? FILE_A << (file + 1) : 0);
+        }
+        for (int square = 0; square < 64; square++) {
+            int file = square & 7;
+            int rank = square >> 3;
+            for (int other = 0; other < 64; other++) {
+                int otherFile = other & 7;
+                int otherRank = other >> 3;
+                long bit = 1L << other;
+                boolean near = Math.abs(otherFile - file) <= 1;
+                if (near && otherRank > rank) {
+                    PASSED_SPAN[0][square] |= bit;
+                    if (otherFile == file) {
+                        FRONT[0][square] |= bit;
+                    }
+                }
+                if (near && otherRank < rank) {
+                    PASSED_SPAN[1][square] |= bit;
+                    if (otherFile == file) {
+                        FRONT[1][square] |= bit;
+                    }
+                }
+                if (Math.abs(otherFile - file) == 1) {
+                    if (otherRank <= rank) {
+                        SUPPORT[0][square] |= bit;
+                    }
+                    if (otherRank >= rank) {
+                        SUPPORT[1][square] |= bit;
+                    }
+                }
+            }
+        }
+    }
+
+    private PawnStructure() {
+    }
+
+    /**
+     * The cached pawn terms, from the table if they're there, otherwise worked out and stored.
+     * @return The packed scores. Read them with PawnTable.getMidgame() and getEndgame().
+     */
+    static long probe(Position position, PawnTable table) {
+        long key = position.getPawnKey();
+        long data = table.probe(key);
+        if (data != PawnTable.MISS) {
+            return data;
+        }
+        long[] pawns = readPawns(position);
+        int midgame = 0;
+        int endgame = 0;
+        for (int side = 0; side < 2; side++) {
+            int sign = side == 0 ? 1 : -1;
+            long own = pawns[side];
+            long enemy = pawns[side ^ 1];
+            long remaining = own;
+            while (remaining != 0) {
+                int square = Long.numberOfTrailingZeros(remaining);
+                remaining &= remaining - 1;
+                int file = square & 7;
+                int relativeRank = side == 0 ? square >> 3 : 7 - (square >> 3);
+                if ((own & FRONT[side][square]) != 0) {
+                    midgame += sign * DOUBLED_MIDGAME;
+                    endgame += sign * DOUBLED_ENDGAME;
+                }
+                if ((own & ADJACENT_FILES[file]) == 0) {
+                    midgame += sign * ISOLATED_MIDGAME;
+                    endgame += sign * ISOLATED_ENDGAME;
+                } else if ((own & SUPPORT[side][square]) == 0 && isStopped(square, side, enemy)) {
+                    midgame += sign * BACKWARD_MIDGAME;
+                    endgame += sign * BACKWARD_ENDGAME;
+                }
+                if ((enemy & PASSED_SPAN[side][square]) == 0 && (own & FRONT[side][square]) == 0) {
+                    midgame += sign * PASSED_MIDGAME[relativeRank];
+                    endgame += sign * PASSED_ENDGAME[relativeRank];
+                }
+            }
+        }
+        return table.store(key, midgame, endgame);
+    }
+
+    /**
+     * The pawn shields of both kings. Middlegame only: in the endgame the king should be out in front of its pawns.
+     */
+    static int kingShelter(Position position) {
+        return shelter(position, WHITE_TEAM) - shelter(position, BLACK_TEAM);
+    }
+
+    private static int shelter(Position position, int team) {
+        int king = position.getKingSquare(team);
+        if (king < 0) {
+            return 0;
+        }
+        int forward = team == WHITE_TEAM ? 16 : -16;
+        int backRank = team == WHITE_TEAM ? 0 : 7;
+        if (Math.abs((king >> 4) - backRank) > 1) {
+            return 0;
+        }
+        int pawn = team == WHITE_TEAM ? WHITE_PAWN : BLACK_PAWN;
+        int score = 0;
+        for (int file = -1; file <= 1; file++) {
+            int near = king + forward + file;
+            int far = near + forward;
+            if ((near & 0x88) != 0) {
+                continue;
+            }
+            if (position.getPiece(near) == pawn) {
+                score += SHIELD_NEAR;
+            } else if ((far & 0x88) == 0 && position.getPiece(far) == pawn) {
+                score += SHIELD_FAR;
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Whether an enemy pawn guards the square in front of the pawn, so it can't advance without being taken.
+     */
+    private static boolean isStopped(int square, int side, long enemy) {
+        int stop = side == 0 ? square + 8 : square - 8;
+        if (stop < 0 || stop > 63) {
+            return false;
+        }
+        int file = stop & 7;
+        int attackerRank = (stop >> 3) + (side == 0 ? 1 : -1);
+        if (attackerRank < 0 || attackerRank > 7) {
+            return false;
+        }
+        long attackers = ADJACENT_FILES[file] & (0xFFL << (attackerRank * 8));
+        return (enemy & attackers) != 0;
+    }
+
+    /**
+     * @return White's pawns, then black's
+     */
+    private static long[] readPawns(Position position) {
+        long[] pawns = new long[2];
+        for (int square = 0; square < 64; square++) {
+            int piece = position.getPiece((square >> 3) * 16 + (square & 7));
+            if (piece == WHITE_PAWN) {
+                pawns[0] |= 1L << square;
+            } else if (piece == BLACK_PAWN) {
+                pawns[1] |= 1L << square;
+            }
+        }
+        return pawns;
+    }
+}
@@ -0,0 +1,37 @@
+package com.koleman.chess.engine;
+
+import com.koleman.chess.model.PieceSquareTables;
+import com.koleman.chess.model.Position;
+
+/**
+ * Passed, isolated, doubled and backward pawns, cached in a PawnTable, plus the pawn shields in front of the kings.
+ * See PawnStructure.
+ */
+public class PawnStructureEvaluator implements Evaluator {
+    /** Pawn table size, in megabytes. Pawn structures repeat so often that a small one is plenty. */
+    public static final int PAWN_HASH_MB = 1;
+
+    private final PawnTable pawnTable;
+
+    public PawnStructureEvaluator() {
+        this(new PawnTable(PAWN_HASH_MB));
+    }
+
+    public PawnStructureEvaluator(PawnTable pawnTable) {
+        this.pawnTable = pawnTable;
+    }
+
+    @Override
+    public int evaluate(Position position) {
+        long pawns = PawnStructure.probe(position, pawnTable);
+        int midgame = PawnTable.getMidgame(pawns) + PawnStructure.kingShelter(position);
+        return PieceSquareTables.taper(midgame, PawnTable.getEndgame(pawns), position.getPhase());
+    }
+
+    /**
+     * The cache of pawn structure evaluations. Its hit rate is worth watching when the pawn terms change.
+     */
+    public PawnTable getPawnTable() {
+        return pawnTable;
+    }
+}
@@ -0,0 +1,111 @@
+package com.koleman.chess.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches pawn structure evaluations by the position's pawn key. The pawns change on few moves, so nearly every
+ * evaluation finds its structure here. Laid out like the TranspositionTable: two longs per entry, the key XORed with
+ * the data and then the data, with no locks, so every search thread can share one table.
+ *
+ * The data long is packed like this (low bits first):
+ *   midgame score  20 bits  (signed)
+ *   endgame score  20 bits  (signed)
+ *   valid           1 bit   (so an entry is never 0)
+ */
+public class PawnTable {
+    /** What probe() returns when the pawns aren't in the table */
+    public static final long MISS = 0;
+
+    private static final int ENDGAME_SHIFT = 20;
+    private static final long SCORE_MASK = (1L << 20) - 1;
+    private static final long VALID = 1L << 40;
+    /** Two longs per entry */
+    private static final int ENTRY_BYTES = 16;
+
+    private final long[] table;
+    private final int mask;
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * @param megabytes The most memory the table may use. The entry count is rounded down to a power of two.
+     */
+    public PawnTable(int megabytes) {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException("Pawn table size must be at least 1 MB: " + megabytes);
+        }
+        int entries = (int) Long.highestOneBit(Math.min((long) megabytes * 1024 * 1024 / ENTRY_BYTES, 1 << 29));
+        table = new long[entries * 2];
+        mask = entries - 1;
+    }
+
+    /**
+     * Looks up a pawn structure.
+     * @return The packed scores, or MISS. Read them with the static getters.
+     */
+    public long probe(long pawnKey) {
+        probes.increment();
+        int index = ((int) pawnKey & mask) << 1;
+        long data = table[index + 1];
+        if ((table[index] ^ data) != pawnKey || data == MISS) {
+            return MISS;
+        }
+        hits.increment();
+        return data;
+    }
+
+    /**
+     * Stores a pawn structure's scores, replacing whatever was in its slot.
+     * @return The packed scores, as probe() would return them
+     */
+    public long store(long pawnKey, int midgame, int endgame) {
+        long data = pack(midgame, endgame);
+        int index = ((int) pawnKey & mask) << 1;
+        table[index] = pawnKey ^ data;
+        table[index + 1] = data;
+        return data;
+    }
+
+    /**
+     * Empties the table and resets the counters.
+     */
+    public void clear() {
+        Arrays.fill(table, 0);
+        probes.reset();
+        hits.reset();
+    }
+
+    public int getEntryCount() {
+        return mask + 1;
+    }
+
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The fraction of probes that found their pawn structure, from 0 to 1
+     */
+    public double getHitRate() {
+        long total = probes.sum();
+        return total == 0 ? 0 : (double) hits.sum() / total;
+    }
+
+    private static long pack(int midgame, int endgame) {
+        return (midgame & SCORE_MASK) | ((endgame & SCORE_MASK) << ENDGAME_SHIFT) | VALID;
+    }
+
+    public static int getMidgame(long data) {
+        // Shift the 20 score bits to the top, then back down to sign extend them
+        return (int) ((data << 44) >> 44);
+    }
+
+    public static int getEndgame(long data) {
+        return (int) ((data << (44 - ENDGAME_SHIFT)) >> 44);
+    }
+}
@@ -0,0 +1,17 @@
+package com.koleman.chess.engine;
+
+import com.koleman.chess.model.PieceSquareTables;
+import com.koleman.chess.model.Position;
+
+/**
+ * Material and piece placement. The position keeps middlegame and endgame totals up to date as pieces move (see
+ * PieceSquareTables), so this only blends the two by how much material is left: a few field reads. Kings head for
+ * shelter while the queens are on and for the center once they're off, pawns are worth more the further they get in
+ * the endgame, and so on.
+ */
+public class PieceSquareEvaluator implements Evaluator {
+    @Override
+    public int evaluate(Position position) {
+        return PieceSquareTables.taper(position.getMidgameScore(), position.getEndgameScore(), position.getPhase());
+    }
+}
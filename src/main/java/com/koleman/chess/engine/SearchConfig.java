@@ -0,0 +1,139 @@
+package com.koleman.chess.engine;
+
+/**
+ * The forward pruning knobs of the search, so strength can be traded against speed (and the two compared in
+ * matches) without touching the search itself. Everything is on by default. Changes take effect at the next search.
+ *
+ * Late move reductions: quiet moves that come late in a well ordered list rarely turn out best, so they are searched
+ * a ply or two shallower first, and only searched again at full depth if they beat alpha anyway.
+ * Futility pruning: close to the horizon, when even a generous margin on top of the static evaluation can't reach
+ * alpha, quiet moves are skipped.
+ * Reverse futility pruning: close to the horizon, when the static evaluation beats beta by more than a margin, the
+ * node is assumed to fail high without searching it.
+ * Null move pruning: if passing still fails high in a reduced search, a real move surely would. Deep cutoffs can be
+ * verified with a reduced search of the real moves, which catches most of the zugzwangs the pawn-ending guard misses.
+ */
+public class SearchConfig {
+    private boolean lateMoveReductions = true;
+    /** Nodes shallower than this are never reduced */
+    private int reductionMinDepth = 3;
+    /** This many moves are searched at full depth before any are reduced */
+    private int fullDepthMoves = 3;
+
+    private boolean nullMovePruning = true;
+    private boolean nullMoveVerification = true;
+    /** Null move cutoffs at this depth and deeper are verified */
+    private int nullMoveVerificationDepth = 5;
+
+    private boolean futilityPruning = true;
+    /** Only nodes this close to the horizon are pruned */
+    private int futilityDepth = 2;
+    /** Centipawns per ply of depth left */
+    private int futilityMargin = 200;
+
+    private boolean reverseFutilityPruning = true;
+    private int reverseFutilityDepth = 3;
+    private int reverseFutilityMargin = 120;
+
+    public boolean isLateMoveReductions() {
+        return lateMoveReductions;
+    }
+
+    public void setLateMoveReductions(boolean lateMoveReductions) {
+        this.lateMoveReductions = lateMoveReductions;
+    }
+
+    public int getReductionMinDepth() {
+        return reductionMinDepth;
+    }
+
+    public void setReductionMinDepth(int reductionMinDepth) {
+        if (reductionMinDepth < 2) {
+            throw new IllegalArgumentException("Reducing below depth 2 would drop nodes into quiescence: " + reductionMinDepth);
+        }
+        this.reductionMinDepth = reductionMinDepth;
+    }
+
+    public int getFullDepthMoves() {
+        return fullDepthMoves;
+    }
+
+    public void setFullDepthMoves(int fullDepthMoves) {
+        if (fullDepthMoves < 1) {
+            throw new IllegalArgumentException("At least the first move must be searched at full depth: " + fullDepthMoves);
+        }
+        this.fullDepthMoves = fullDepthMoves;
+    }
+
+    public boolean isNullMovePruning() {
+        return nullMovePruning;
+    }
+
+    public void setNullMovePruning(boolean nullMovePruning) {
+        this.nullMovePruning = nullMovePruning;
+    }
+
+    public boolean isNullMoveVerification() {
+        return nullMoveVerification;
+    }
+
+    public void setNullMoveVerification(boolean nullMoveVerification) {
+        this.nullMoveVerification = nullMoveVerification;
+    }
+
+    public int getNullMoveVerificationDepth() {
+        return nullMoveVerificationDepth;
+    }
+
+    public void setNullMoveVerificationDepth(int nullMoveVerificationDepth) {
+        this.nullMoveVerificationDepth = nullMoveVerificationDepth;
+    }
+
+    public boolean isFutilityPruning() {
+        return futilityPruning;
+    }
+
+    public void setFutilityPruning(boolean futilityPruning) {
+        this.futilityPruning = futilityPruning;
+    }
+
+    public int getFutilityDepth() {
+        return futilityDepth;
+    }
+
+    public void setFutilityDepth(int futilityDepth) {
+        this.futilityDepth = futilityDepth;
+    }
+
+    public int getFutilityMargin() {
+        return futilityMargin;
+    }
+
+    public void setFutilityMargin(int futilityMargin) {
+        this.futilityMargin = futilityMargin;
+    }
+
+    public boolean isReverseFutilityPruning() {
+        return reverseFutilityPruning;
+    }
+
+    public void setReverseFutilityPruning(boolean reverseFutilityPruning) {
+        this.reverseFutilityPruning = reverseFutilityPruning;
+    }
+
+    public int getReverseFutilityDepth() {
+        return reverseFutilityDepth;
+    }
+
+    public void setReverseFutilityDepth(int reverseFutilityDepth) {
+        this.reverseFutilityDepth = reverseFutilityDepth;
+    }
+
+    public int getReverseFutilityMargin() {
+        return reverseFutilityMargin;
+    }
+
+    public void setReverseFutilityMargin(int reverseFutilityMargin) {
+        this.reverseFutilityMargin = reverseFutilityMargin;
+    }
+}
@@ -0,0 +1,749 @@
+package com.koleman.chess.engine;
+
+import com.koleman.chess.model.BitMove;
+import com.koleman.chess.model.Move;
+import com.koleman.chess.model.Position;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.koleman.chess.model.Definitions.*;
+
+/**
+ * One search thread's worth of state. The engine owns a main worker, and in parallel mode a helper worker for every
+ * extra thread. Helpers search the same position on their own copy of the board and share only the transposition
+ * table, so the main search finds their results there (Lazy SMP). Nothing in here is touched by more than one thread,
+ * except the stop flag and the node count, which the engine reads for reporting.
+ * Once the search is stopped every node returns 0 right away, and every caller checks isStopped() before it trusts a
+ * score, so none of those zeros gets into the transposition table or picks a root move.
+ */
+class SearchWorker {
+    /** Aspiration window: how far on either side of the last iteration's score the next one starts looking */
+    private static final int ASP_WINDOW = 10;
+    /** Once the window has been widened this far without the score landing in it, search the full window */
+    private static final int MAX_ASP_WINDOW = 1000;
+    /** The maximum depth at which to perform quiescent searches, to prevent a quiescent explosion */
+    private static final int MAX_QUIES = 10;
+    /**
+     * Delta pruning: a quiescent capture is skipped when the stand pat score plus the captured piece's value plus this
+     * margin (for whatever positional gain comes with it) still can't reach alpha.
+     */
+    private static final int DELTA_MARGIN = 200;
+    /** Null Move reduction constant, for the shallowest nodes. Deeper ones get a ply more for every four plies. */
+    private static final int R = 2;
+    /** The Checkmate constant. It's a very high score because, well, checkmates are good. */
+    static final int MATE = 150000;
+    /** Virtual Infinity */
+    static final int INFINITY = 300000;
+    /** The deepest ply the search can reach, quiescence included. Sizes the move buffers. */
+    static final int MAX_PLY = 128;
+    /** The main worker checks the clock once every this many nodes. A power of two. */
+    private static final int TIME_CHECK_NODES = 1024;
+    /** When a history score passes this, every score of that side is halved, so they can't overflow */
+    private static final int MAX_HISTORY = 1 << 24;
+
+    private final EngineImpl engine;
+    private final boolean mainThread;
+    /** Only the main worker of a verbose engine prints its root moves */
+    private boolean printRootMoves;
+    private TranspositionTable transpositionTable;
+    private SearchConfig config;
+    /** Null unless this is the main worker and the engine has a view */
+    private KibitzView kibitzView;
+    private volatile boolean stopped = false;
+    private long nodesSearched = 0;
+    /** The score of the last completed root search, which centers the next one's aspiration window */
+    private int previousScore;
+    private boolean hasPreviousScore = false;
+    /** The best move found by the last call to searchRootWindow() */
+    private int rootBestMove;
+    /**
+     * Triangular principal variation table: row p holds the best line found from ply p, from column p to
+     * pvLength[p]. A node that raises alpha copies its child's row behind its own move.
+     */
+    private final int[][] pvTable = new int[MAX_PLY + 1][MAX_PLY + 1];
+    private final int[] pvLength = new int[MAX_PLY + 1];
+    /** The principal variation behind the last move searchRoot() returned */
+    private int[] rootPv = new int[0];
+    private int deepestPly = 0;
+    /** One move list per ply, so the search doesn't allocate a list at every node */
+    private final int[][] moveBuffers = new int[MAX_PLY][MAX_LEGAL_MOVES];
+    /** One move picker per ply, for the same reason */
+    private final MovePicker[] movePickers = new MovePicker[MAX_PLY];
+    /** The last two quiet moves to cause a beta cutoff at each ply, newest first */
+    private final int[][] killers = new int[MAX_PLY][2];
+    /**
+     * Butterfly history: how often (weighted by depth) each quiet move caused a beta cutoff, anywhere in the tree.
+     * [side][from << 7 | to], with 0x88 squares, where side is 0 for white and 1 for black.
+     */
+    private final int[][] history = new int[2][128 * 128];
+
+    SearchWorker(EngineImpl engine, boolean mainThread) {
+        this.engine = engine;
+        this.mainThread = mainThread;
+        for (int i = 0; i < MAX_PLY; i++) {
+            movePickers[i] = new MovePicker();
+        }
+    }
+
+    /**
+     * Gets the worker ready for a new search.
+     * @param view Where to report progress, or null
+     */
+    void reset(KibitzView view) {
+        transpositionTable = engine.getTranspositionTable();
+        config = engine.getSearchConfig();
+        kibitzView = view;
+        printRootMoves = mainThread && engine.isVerbose();
+        stopped = false;
+        nodesSearched = 0;
+        deepestPly = 0;
+        for (int[] slots : killers) {
+            Arrays.fill(slots, 0);
+        }
+        // Older searches' history still says something about the position, just less
+        for (int[] scores : history) {
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] >>= 1;
+            }
+        }
+        hasPreviousScore = false;
+    }
+
+    void stop() {
+        stopped = true;
+    }
+
+    boolean isStopped() {
+        return stopped || engine.isTimedOut();
+    }
+
+    long getNodesSearched() {
+        return nodesSearched;
+    }
+
+    /**
+     * @return The line the search expects to be played after the last move searchRoot() returned, that move first
+     */
+    List<Move> getPrincipalVariation() {
+        List<Move> line = new ArrayList<Move>(rootPv.length);
+        for (int move : rootPv) {
+            line.add(BitMove.getMoveObject(move));
+        }
+        return line;
+    }
+
+    private void countNode() {
+        if ((++nodesSearched & (TIME_CHECK_NODES - 1)) == 0 && mainThread) {
+            engine.checkTime();
+        }
+    }
+
+    /**
+     * This search will return the best Move found, rather than simply an
+     * integer score. It calls Negamax WITH quiescent search, and is thus much
+     * more time-consuming, and much more thorough, at a given depth than
+     * searchRootNoQuies(). Call this once you are sure that you at least
+     * have one decent move to return, and can afford to try to find a better
+     * one.
+     *
+     * @param position The position to search
+     * @param depth The depth at which to search. Note: Quiescent evaluation
+     * will run much deeper than this depth at some points, but the complete
+     * search will not exceed this depth.
+     * @return The best move. If the search is stopped partway, the best move
+     * among the root moves it finished, as long as that one scored above the
+     * window's alpha, beating the move searched first (normally the last
+     * iteration's best). Otherwise null, and the last iteration's move stands.
+     */
+    Move searchRoot(Position position, int depth) {
+        int[] moves = moveBuffers[0];
+        int total = generateOrderedMoves(position, moves);
+        // The best move of the last iteration goes first
+        putHashMoveFirst(moves, total, TranspositionTable.getMove(transpositionTable.probe(position.getHashKey())));
+
+        // Look for the score near the last iteration's first. Whenever it falls outside, widen that side and search
+        // again, until the window is wide enough to just search everything.
+        int window = ASP_WINDOW;
+        int alpha = -INFINITY;
+        int beta = INFINITY;
+        if (hasPreviousScore) {
+            alpha = previousScore - window;
+            beta = previousScore + window;
+        }
+        int best;
+        while (true) {
+            best = searchRootWindow(position, depth, moves, total, alpha, beta);
+            if (isStopped()) {
+                if (rootBestMove == -1 || best <= alpha) {
+                    return null;
+                }
+                // A partial iteration, but every root move that counted was searched to the end
+                rootPv = Arrays.copyOf(pvTable[0], pvLength[0]);
+                return BitMove.getMoveObject(rootBestMove);
+            }
+            if (rootBestMove == -1) {
+                // There are no moves at all
+                return null;
+            }
+            if (best <= alpha && alpha > -INFINITY) {
+                window *= 4;
+                alpha = window > MAX_ASP_WINDOW ? -INFINITY : Math.max(-INFINITY, best - window);
+            } else if (best >= beta && beta < INFINITY) {
+                window *= 4;
+                beta = window > MAX_ASP_WINDOW ? INFINITY : Math.min(INFINITY, best + window);
+                // Try the move that failed high first
+                putHashMoveFirst(moves, total, BitMove.stripOrdering(rootBestMove));
+            } else {
+                break;
+            }
+        }
+        previousScore = best;
+        hasPreviousScore = true;
+        transpositionTable.store(position.getHashKey(), rootBestMove, scoreToHash(best, 0), depth, TranspositionTable.BOUND_EXACT);
+        rootPv = Arrays.copyOf(pvTable[0], pvLength[0]);
+        return BitMove.getMoveObject(rootBestMove);
+    }
+
+    /**
+     * Searches every root move inside the window, as a principal variation search: the first move gets the whole
+     * window, and the rest are only proven worse with a null window around alpha. The few that aren't get searched
+     * again with the whole window. Leaves the best move in rootBestMove and its line in the first row of the PV table.
+     * If the search is stopped, those are the best of the moves it finished, and rootBestMove is -1 if there weren't
+     * any.
+     * @return The best score, which is only a bound if it fell outside the window
+     */
+    private int searchRootWindow(Position position, int depth, int[] moves, int total, int alpha, int beta) {
+        int score;
+        int best = -INFINITY;
+        int progress = 0;
+        rootBestMove = -1;
+        pvLength[0] = 0;
+
+        for (int i = 0; i < total; i++) {
+            int move = moves[i];
+            if (Thread.currentThread().isInterrupted()) {
+                // Same as being stopped, so searchRoot() treats the iteration as partial
+                stopped = true;
+            }
+            if (isStopped()) {
+                return best;
+            }
+            position.makeMove(move);
+            if (i == 0) {
+                score = -NegamaxQuiescent(position, 1, depth - 1, -beta, -alpha, true);
+            } else {
+                score = -NegamaxQuiescent(position, 1, depth - 1, -alpha - 1, -alpha, true);
+                if (score > alpha && score < beta) {
+                    score = -NegamaxQuiescent(position, 1, depth - 1, -beta, -alpha, true);
+                }
+            }
+            if (kibitzView != null) {
+                kibitzView.setDisplayBoard(position.toString());
+                progress++;
+                kibitzView.setNodesSearched((int) engine.getNodesSearched());
+                kibitzView.setProgress(progress, total);
+                kibitzView.setDeepestPly(deepestPly);
+            }
+            position.unmakeMove(move);
+            if (isStopped()) {
+                // This move's score is garbage. The ones before it still stand.
+                return best;
+            }
+            if (printRootMoves) {
+                if (position.getTeamToMove() == WHITE_TEAM) {
+                    System.out.print(BitMove.getMoveObject(move).toSAN() + ": " + score);
+                } else {
+                    System.out.print(BitMove.getMoveObject(move).toSAN() + ": " + -score);
+                }
+            }
+            if (score > best) {
+                best = score;
+                rootBestMove = move;
+                updatePv(0, move);
+                if (kibitzView != null) kibitzView.setEvaluation((score/100.0)*(position.getTeamToMove()));
+                if (printRootMoves) System.out.println(" *(New Best)");
+            } else if (printRootMoves) {
+                System.out.println();
+            }
+            if (score >= beta) {
+                // Fail high. The caller widens the window and searches again.
+                return best;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * This search will return the best MOVE found, rather than simply an
+     * integer score. This search calls Negamax without quiescent evaluation. As
+     * such, it is subject to the horizon effect. A good use of this function is
+     * to call it with a depth of 1 or 0, just to ensure that you have a decent
+     * move to return when the time runs out. (useful for short calculation
+     * times, like 1 second)
+     *
+     * @param position The board to search
+     * @param depth The depth at which to search
+     * @param alpha Alpha value. Use -infinity
+     * @param beta Beta value. Use infinity.
+     * @return The best move found.
+     */
+    Move searchRootNoQuies(Position position, int depth, int alpha, int beta) {
+        int score;
+        int bestMove = -1;
+        int best = -INFINITY;
+        int[] moves = moveBuffers[0];
+        int count = generateOrderedMoves(position, moves);
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            if (isStopped()) {
+                break;
+            }
+            position.makeMove(move);
+            score = -Negamax(position, 1, depth - 1, alpha, beta);
+            position.unmakeMove(move);
+            if (isStopped()) {
+                break;
+            }
+            if (kibitzView != null) {
+                kibitzView.setNodesSearched((int) engine.getNodesSearched());
+            }
+            if (score > best) {
+                best = score;
+                bestMove = move;
+            }
+        }
+        return bestMove == -1 ? null : BitMove.getMoveObject(bestMove);
+    }
+
+    /**
+     * Fills the buffer with the legal moves of the position, in the same order getPossibleMoves() would return them.
+     * @return the number of moves
+     */
+    private int generateOrderedMoves(Position position, int[] buffer) {
+        int count = position.generateMoves(buffer, 0);
+        Arrays.sort(buffer, 0, count);
+        return count;
+    }
+
+    /**
+     * Moves the hash move to the front of the list, keeping the rest in order. Does nothing if it isn't in the list.
+     */
+    private static void putHashMoveFirst(int[] moves, int count, int hashMove) {
+        if (hashMove == 0) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            if (BitMove.stripOrdering(moves[i]) == hashMove) {
+                int move = moves[i];
+                System.arraycopy(moves, 0, moves, 1, i);
+                moves[0] = move;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Makes the move followed by the child's line the best line from this ply.
+     */
+    private void updatePv(int ply, int move) {
+        int[] row = pvTable[ply];
+        row[ply] = move;
+        int childLength = pvLength[ply + 1];
+        if (childLength > ply + 1) {
+            System.arraycopy(pvTable[ply + 1], ply + 1, row, ply + 1, childLength - ply - 1);
+            pvLength[ply] = childLength;
+        } else {
+            pvLength[ply] = ply + 1;
+        }
+    }
+
+    private void storeKiller(int ply, int move) {
+        move = BitMove.stripOrdering(move);
+        int[] slots = killers[ply];
+        if (slots[0] != move) {
+            slots[1] = slots[0];
+            slots[0] = move;
+        }
+    }
+
+    /**
+     * Credits a quiet move with a cutoff, and debits the quiet moves tried before it, which didn't cause one.
+     * Deeper cutoffs save more work, so they count for more.
+     */
+    private static void updateHistory(int[] sideHistory, int move, int depth, int[] failedQuiets, int failedCount) {
+        int bonus = depth * depth;
+        for (int i = 0; i < failedCount; i++) {
+            sideHistory[BitMove.getFromIndex(failedQuiets[i]) << 7 | BitMove.getToIndex(failedQuiets[i])] -= bonus;
+        }
+        int index = BitMove.getFromIndex(move) << 7 | BitMove.getToIndex(move);
+        sideHistory[index] += bonus;
+        if (Math.abs(sideHistory[index]) > MAX_HISTORY) {
+            for (int i = 0; i < sideHistory.length; i++) {
+                sideHistory[i] >>= 1;
+            }
+        }
+    }
+
+    /**
+     * Whether the move belongs with the quiet moves, which is where killers and history are kept. Promotions are left
+     * out, since a capturing one can't be told apart from a quiet one by its to-piece.
+     */
+    private static boolean isQuiet(int move) {
+        int type = BitMove.getType(move);
+        return BitMove.getToPiece(move) == EMPTY && (type < PROMOTION_KNIGHT || type > PROMOTION_QUEEN);
+    }
+
+    /**
+     * Mate scores count plies from the root, but a table entry can be reached at any ply. Stored mate scores
+     * count from the entry's own position instead.
+     */
+    private static int scoreToHash(int score, int ply) {
+        if (score > MATE - MAX_PLY) {
+            return score + ply;
+        }
+        if (score < -MATE + MAX_PLY) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    private static int scoreFromHash(int score, int ply) {
+        if (score > MATE - MAX_PLY) {
+            return score - ply;
+        }
+        if (score < -MATE + MAX_PLY) {
+            return score + ply;
+        }
+        return score;
+    }
+
+    /**
+     * A Negamax search which uses Quiescent evaluation. This means that once
+     * the depth parameter is reached, it will run a quiescent search, which
+     * evaluates all possible nodes until there are no captures available, and
+     * the position is "quiet".
+     *
+     * @param board The board to search
+     * @param ply the current ply. If this isn't a recursive call, this should
+     * be set to 0.
+     * @param depth The depth to search. Anything more than 6 with a quiescent
+     * search is asking for a long wait.
+     * @param alpha The alpha value. If this isn't a recursive call, alpha
+     * should be set to negative Infinity
+     * @param beta The beta value. If this isn't a recursive call, beta should
+     * be set to positive infinity
+     * @param allowNull Whether or not to use null move forward pruning. This
+     * improves search speed, but can mess up the evaluation in late game
+     * scenarios when Zugzwangs are more common. So it's skipped when the side
+     * to move has only pawns, and deep null move cutoffs are verified with a
+     * real (reduced) search.
+     * @return The score of the best continuation.
+     */
+    public int NegamaxQuiescent(Position board, int ply, int depth, int alpha, int beta, boolean allowNull) {
+        countNode();
+        if (ply >= MAX_PLY) {
+            // Every ply-indexed table ends here, the PV table's included
+            return engine.evaluatePosition(board);
+        }
+        // Until a move raises alpha, there's no line to show from here
+        pvLength[ply] = ply;
+        if (isStopped()) {
+            return 0;
+        }
+        if (board.isRepetition()) {
+            // Going back to a position is never better than a draw, and the opponent can always go back too
+            return 0;
+        }
+        long key = board.getHashKey();
+        long entry = transpositionTable.probe(key);
+        int hashMove = TranspositionTable.getMove(entry);
+        if (entry != TranspositionTable.MISS && TranspositionTable.getDepth(entry) >= depth) {
+            int score = scoreFromHash(TranspositionTable.getScore(entry), ply);
+            switch (TranspositionTable.getBound(entry)) {
+                case TranspositionTable.BOUND_EXACT:
+                    return Math.max(alpha, Math.min(beta, score));
+                case TranspositionTable.BOUND_LOWER:
+                    if (score >= beta) {
+                        return beta;
+                    }
+                    break;
+                case TranspositionTable.BOUND_UPPER:
+                    if (score <= alpha) {
+                        return alpha;
+                    }
+                    break;
+            }
+        }
+        int val;
+        boolean inCheck = board.inCheck();
+        // Null window nodes only have to prove a bound, so they are the ones it's safe to prune
+        boolean pvNode = beta - alpha > 1;
+        boolean nearHorizon = !pvNode && !inCheck && depth > 0
+                && (depth <= config.getFutilityDepth() || depth <= config.getReverseFutilityDepth());
+        int staticEval = nearHorizon ? engine.evaluatePosition(board) : 0;
+        if (nearHorizon && config.isReverseFutilityPruning() && depth <= config.getReverseFutilityDepth()
+                && Math.abs(beta) < MATE - MAX_PLY && staticEval - config.getReverseFutilityMargin() * depth >= beta) {
+            // So far ahead that the opponent won't get back under beta this close to the horizon
+            return staticEval - config.getReverseFutilityMargin() * depth;
+        }
+        if (allowNull && config.isNullMovePruning() && !inCheck && !pvNode && depth >= 2
+                && board.hasNonPawnMaterial(board.getTeamToMove())) {
+            int reduction = R + depth / 4;
+            board.makeNullMove(); // Making a null-move
+            val = -NegamaxQuiescent(board, ply + 1, depth - 1 - reduction, -beta, -beta + 1, false); // Evaluating the position.
+            board.unmakeNullMove(); // Unmaking a null-move
+            if (isStopped()) {
+                return 0;
+            }
+
+            if (val >= beta) {
+                if (val >= MATE - MAX_PLY) {
+                    // A mate found by passing proves nothing
+                    val = beta;
+                }
+                if (!config.isNullMoveVerification() || depth < config.getNullMoveVerificationDepth()) {
+                    return val; // Cutoff
+                }
+                // Make sure with a real search, null moves off, at the depth the null move search used
+                if (NegamaxQuiescent(board, ply, depth - reduction, beta - 1, beta, false) >= beta) {
+                    return val;
+                }
+            }
+        }
+        if (depth <= 0) {
+            return Quies(board, ply + 1, alpha, beta);
+        }
+        // Too far behind for a quiet move to make up the difference this close to the horizon
+        boolean futile = nearHorizon && config.isFutilityPruning() && depth <= config.getFutilityDepth()
+                && Math.abs(alpha) < MATE - MAX_PLY && staticEval + config.getFutilityMargin() * depth <= alpha;
+        boolean reduce = config.isLateMoveReductions() && depth >= config.getReductionMinDepth() && !inCheck;
+        MovePicker picker = movePickers[ply];
+        int[] sideHistory = history[board.getTeamToMove() == WHITE_TEAM ? 0 : 1];
+        picker.init(board, hashMove, killers[ply][0], killers[ply][1], sideHistory);
+        int bestMove = 0;
+        int bound = TranspositionTable.BOUND_UPPER;
+        int movesSearched = 0;
+        // The picker has its own list, so this ply's buffer is free to remember the quiet moves that didn't cut off
+        int[] failedQuiets = moveBuffers[ply];
+        int failedCount = 0;
+        int move;
+        while ((move = picker.next()) != 0) {
+            movesSearched++;
+            board.makeMove(move);
+            boolean quiet = movesSearched > 1 && isQuiet(move);
+            if (futile && quiet && !board.inCheck()) {
+                board.unmakeMove(move);
+                continue;
+            }
+            if (movesSearched == 1) {
+                val = -NegamaxQuiescent(board, ply + 1, depth - 1, -beta, -alpha, true); // Note the minus sign here.
+            } else {
+                int reduction = 0;
+                if (reduce && quiet && movesSearched > config.getFullDepthMoves() && !board.inCheck()) {
+                    // Late move reduction. The latest moves in a long list get reduced a second ply.
+                    reduction = depth >= 6 && movesSearched > 12 ? 2 : 1;
+                }
+                // Principal variation search: prove the move is no better than alpha with a null window, and only
+                // search it properly if it turns out to be.
+                val = -NegamaxQuiescent(board, ply + 1, depth - 1 - reduction, -alpha - 1, -alpha, true);
+                if (val > alpha && reduction > 0) {
+                    val = -NegamaxQuiescent(board, ply + 1, depth - 1, -alpha - 1, -alpha, true);
+                }
+                if (val > alpha && val < beta) {
+                    val = -NegamaxQuiescent(board, ply + 1, depth - 1, -beta, -alpha, true);
+                }
+            }
+            board.unmakeMove(move);
+            if (isStopped()) {
+                // The score is garbage, don't let it into the table
+                return 0;
+            }
+
+            if (val >= beta) {
+                if (isQuiet(move)) {
+                    storeKiller(ply, move);
+                    updateHistory(sideHistory, move, depth, failedQuiets, failedCount);
+                }
+                transpositionTable.store(key, move, scoreToHash(beta, ply), depth, TranspositionTable.BOUND_LOWER);
+                return beta;
+            }
+            if (isQuiet(move)) {
+                failedQuiets[failedCount++] = move;
+            }
+            if (val > alpha) {
+                alpha = val;
+                bestMove = move;
+                bound = TranspositionTable.BOUND_EXACT;
+                updatePv(ply, move);
+            }
+        }
+        if (movesSearched == 0) {
+            // It's a checkmate!
+            if (board.inCheck()) {
+                return -MATE + ply;
+            } else {
+                // It's a stalemate!
+                return 0;
+            }
+        }
+        transpositionTable.store(key, bestMove, scoreToHash(alpha, ply), depth, bound);
+        return alpha;
+
+    }
+
+    /**
+     * A quiescent search. This function searches the board parameter until no
+     * more captures can be made, and returns the score of the 'quiet' position.
+     * This solves the 'horizon' problem.
+     * Captures that lose material by static exchange are never searched, and
+     * neither are captures that can't get the score back up to alpha (delta
+     * pruning), which keeps the search from exploding in sharp positions.
+     *
+     * @param position The board to analyze
+     * @param ply the current ply (again, if this isn't a recursive call, set it
+     * to 0)
+     * @param alpha If non-recursive call, set to negative infinity.
+     * @param beta If non-recursive call, set to positive infinity.
+     * @return The score of the quiet position.
+     */
+    public int Quies(Position position, int ply, int alpha, int beta) {
+        countNode();
+
+        if (ply > deepestPly) {
+            deepestPly = ply;
+        }
+        if (isStopped()) {
+            return 0;
+        }
+        if (position.inCheck()) {
+            if (position.isCheckmate()) {
+                return -MATE + ply;
+            }
+            return Negamax(position, ply + 1, 1, alpha, beta);
+        }
+        int standPat = engine.evaluatePosition(position, alpha, beta);
+
+        if (standPat >= beta) {
+            return beta;
+        }
+        int bestGain = VAL_QUEEN + (canPromote(position) ? VAL_QUEEN - VAL_PAWN : 0);
+        if (standPat + bestGain + DELTA_MARGIN <= alpha) {
+            // Not even winning the queen (and promoting on the way) would help
+            return alpha;
+        }
+        if (standPat > alpha) {
+            alpha = standPat;
+        }
+        if (ply >= MAX_QUIES) {
+            return alpha;
+        }
+
+        MovePicker picker = movePickers[ply];
+        picker.initCaptures(position);
+        int val;
+        int move;
+        while ((move = picker.next()) != 0) {
+            if (standPat + captureGain(position, move) + DELTA_MARGIN <= alpha) {
+                continue;
+            }
+            position.makeMove(move);
+            val = -Quies(position, ply + 1, -beta, -alpha);
+            position.unmakeMove(move);
+            if (isStopped()) {
+                return 0;
+            }
+            if (val >= beta) {
+                return beta;
+            }
+            if (val > alpha) {
+                alpha = val;
+            }
+        }
+        return alpha;
+    }
+
+    /**
+     * What a capture wins outright: the piece taken, read off the board since promotions never carry a to-piece, and
+     * for a promotion the new piece in place of the pawn.
+     */
+    private static int captureGain(Position position, int move) {
+        int gain = PIECE_VALUES[position.getPiece(BitMove.getToIndex(move))];
+        int type = BitMove.getType(move);
+        if (type >= PROMOTION_KNIGHT && type <= PROMOTION_QUEEN) {
+            gain += PIECE_VALUES[WHITE_KNIGHT + type - PROMOTION_KNIGHT] - VAL_PAWN;
+        }
+        return gain;
+    }
+
+    /**
+     * Whether the side to move has a pawn one step from promoting.
+     */
+    private static boolean canPromote(Position position) {
+        boolean white = position.getTeamToMove() == WHITE_TEAM;
+        int rank = white ? 0x60 : 0x10;
+        int pawn = white ? WHITE_PAWN : BLACK_PAWN;
+        for (int file = 0; file < 8; file++) {
+            if (position.getPiece(rank + file) == pawn) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A negamax search without quiescent evaluation. Subject to the limits of
+     * the horizon effect.
+     *
+     * @param board The board to search.
+     * @param ply The current ply (0 if this is a root call, recursive calls
+     * will be ply + 1.
+     * @param depth The depth to search ( can go much deeper than
+     * negamaxQuiescent because quiescent searched take a lot of time )
+     * @param alpha The alpha value. If not recursive call, set to negative
+     * Infinity
+     * @param beta The beta value. If not recursive call, set to positive
+     * Infinity.
+     * @return
+     */
+    public int Negamax(Position board, int ply, int depth, int alpha, int beta) {
+        countNode();
+        int val;
+        if (isStopped()) {
+            return 0;
+        }
+        if (depth <= 0 || ply >= MAX_PLY) {
+            return engine.evaluatePosition(board);
+        }
+        int[] legalMoves = moveBuffers[ply];
+        int count = generateOrderedMoves(board, legalMoves);
+        int best = -INFINITY;
+        if (count == 0) {
+            // It's a checkmate!
+            if (board.inCheck()) {
+                return -MATE + ply;
+            } else {
+                // It's a stalemate!
+                return 0;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            int move = legalMoves[i];
+            board.makeMove(move);
+            val = -Negamax(board, ply + 1, depth - 1, -beta, -alpha); // Note the minus sign here.
+            board.unmakeMove(move);
+
+            if (val >= beta) {
+                return beta;
+            }
+            if (val > alpha) {
+                alpha = val;
+            }
+        }
+        return alpha;
+    }
+}
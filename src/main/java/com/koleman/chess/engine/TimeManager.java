@@ -0,0 +1,93 @@
+package com.koleman.chess.engine;
+
+/**
+ * Decides how long a timed search may run. There are two limits, both measured with System.nanoTime() from start():
+ * the soft limit is what the search is meant to use, and a new iteration isn't started past it, or when the last
+ * iteration's time says the next one won't finish before it. The hard limit stops the search in the middle of an
+ * iteration. The search checks it every thousand nodes or so, so it's overshot by a few milliseconds at most.
+ */
+public class TimeManager {
+    /** Moves left in the game when the clock doesn't say */
+    public static final int DEFAULT_MOVES_TO_GO = 30;
+    /** About how much longer each iteration takes than the one before it */
+    private static final int BRANCHING_FACTOR = 2;
+    /** The hard limit lets a move run this many times over its share... */
+    private static final int HARD_FACTOR = 4;
+    /** ...but never past this fraction of the clock, in quarters */
+    private static final int HARD_QUARTERS = 3;
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final long softNanos;
+    private final long hardNanos;
+    private long startNanos;
+
+    private TimeManager(long softMillis, long hardMillis) {
+        softNanos = softMillis * NANOS_PER_MILLI;
+        hardNanos = hardMillis * NANOS_PER_MILLI;
+        start();
+    }
+
+    /**
+     * A fixed time per move, like UCI's "movetime". Both limits are the same.
+     */
+    public static TimeManager forMoveTime(int millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("Move time must be at least 1 ms: " + millis);
+        }
+        return new TimeManager(millis, millis);
+    }
+
+    /**
+     * Shares out what's left on the clock. The soft limit is an even share of it over the moves to go, plus most of
+     * the increment. The hard limit gives a move that's going badly several times that, short of flagging.
+     * @param timeLeft What's left on the side to move's clock, in milliseconds
+     * @param increment What the clock gets back after each move, in milliseconds
+     * @param movesToGo Moves until the next time control, or 0 if the rest of the game has to be played on this time
+     * @param overhead Kept back from every limit, for the time lost between the GUI and the engine
+     */
+    public static TimeManager forClock(int timeLeft, int increment, int movesToGo, int overhead) {
+        if (timeLeft < 0 || increment < 0 || movesToGo < 0 || overhead < 0) {
+            throw new IllegalArgumentException("Clock times can't be negative");
+        }
+        long available = Math.max(1, (long) timeLeft - overhead);
+        long moves = movesToGo > 0 ? movesToGo : DEFAULT_MOVES_TO_GO;
+        long hard = Math.max(1, Math.min(available * HARD_QUARTERS / 4,
+                (available / moves + increment) * HARD_FACTOR));
+        long soft = Math.max(1, Math.min(available / moves + increment * 3 / 4, hard));
+        return new TimeManager(soft, hard);
+    }
+
+    /**
+     * Starts the clock over. Called by the engine when the search starts.
+     */
+    public void start() {
+        startNanos = System.nanoTime();
+    }
+
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    public long getSoftLimitMillis() {
+        return softNanos / NANOS_PER_MILLI;
+    }
+
+    public long getHardLimitMillis() {
+        return hardNanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return Whether the search has to stop right now
+     */
+    public boolean hardLimitReached() {
+        return getElapsedNanos() >= hardNanos;
+    }
+
+    /**
+     * @param lastIterationNanos How long the last iteration took
+     * @return Whether there's time to start another iteration and expect it to finish
+     */
+    public boolean canStartIteration(long lastIterationNanos) {
+        return getElapsedNanos() + lastIterationNanos * BRANCHING_FACTOR <= softNanos;
+    }
+}
@@ -0,0 +1,155 @@
+package com.koleman.chess.engine;
+
+import com.koleman.chess.model.BitMove;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed size hash table of search results, keyed by Zobrist hash. Every entry is two longs in one preallocated
+ * array: the key XORed with the data, then the data itself. There are no locks. If two threads write the same slot
+ * at once, the key check fails for the torn entry and it reads as a miss, so several searches can share one table.
+ *
+ * The data long is packed like this (low bits first):
+ *   move   26 bits  (a BitMove without its ordering score)
+ *   score  20 bits  (signed)
+ *   depth   8 bits
+ *   bound   2 bits
+ *   age     6 bits
+ */
+public class TranspositionTable {
+    /** The score is exact */
+    public static final int BOUND_EXACT = 1;
+    /** The score is a lower bound (the search failed high) */
+    public static final int BOUND_LOWER = 2;
+    /** The score is an upper bound (the search failed low) */
+    public static final int BOUND_UPPER = 3;
+    /** What probe() returns when the position isn't in the table. Real entries are never 0, since their bound isn't. */
+    public static final long MISS = 0;
+
+    private static final int SCORE_SHIFT = 26;
+    private static final int DEPTH_SHIFT = 46;
+    private static final int BOUND_SHIFT = 54;
+    private static final int AGE_SHIFT = 56;
+    private static final long SCORE_MASK = (1L << 20) - 1;
+    private static final int DEPTH_MASK = 255;
+    private static final int BOUND_MASK = 3;
+    private static final int AGE_MASK = 63;
+    /** Two longs per entry */
+    private static final int ENTRY_BYTES = 16;
+
+    private final long[] table;
+    private final int mask;
+    private volatile int age;
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * @param megabytes The most memory the table may use. The entry count is rounded down to a power of two.
+     */
+    public TranspositionTable(int megabytes) {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException("Transposition table size must be at least 1 MB: " + megabytes);
+        }
+        int entries = (int) Long.highestOneBit(Math.min((long) megabytes * 1024 * 1024 / ENTRY_BYTES, 1 << 29));
+        table = new long[entries * 2];
+        mask = entries - 1;
+    }
+
+    /**
+     * Looks up a position.
+     * @return The packed data for the position, or MISS. Read it with the static getters.
+     */
+    public long probe(long key) {
+        probes.increment();
+        int index = ((int) key & mask) << 1;
+        long data = table[index + 1];
+        if ((table[index] ^ data) != key || data == MISS) {
+            return MISS;
+        }
+        hits.increment();
+        return data;
+    }
+
+    /**
+     * Stores a search result. An entry from the current search is only replaced by one searched at least as deep,
+     * unless the new one is exact. Entries from earlier searches are always replaced.
+     * @param move The best move found, or 0 if there isn't one. A 0 keeps the move already stored for this position.
+     */
+    public void store(long key, int move, int score, int depth, int bound) {
+        int index = ((int) key & mask) << 1;
+        long oldData = table[index + 1];
+        boolean samePosition = (table[index] ^ oldData) == key;
+        if (oldData != MISS && getAge(oldData) == age && bound != BOUND_EXACT && depth < getDepth(oldData)) {
+            return;
+        }
+        if (move == 0 && samePosition) {
+            move = getMove(oldData);
+        }
+        long data = BitMove.stripOrdering(move)
+                | ((score & SCORE_MASK) << SCORE_SHIFT)
+                | ((long) Math.max(0, Math.min(depth, DEPTH_MASK)) << DEPTH_SHIFT)
+                | ((long) bound << BOUND_SHIFT)
+                | ((long) age << AGE_SHIFT);
+        table[index] = key ^ data;
+        table[index + 1] = data;
+    }
+
+    /**
+     * Call at the start of every search, so entries left over from old searches get replaced first.
+     */
+    public void newSearch() {
+        age = (age + 1) & AGE_MASK;
+    }
+
+    /**
+     * Empties the table and resets the counters.
+     */
+    public void clear() {
+        Arrays.fill(table, 0);
+        age = 0;
+        probes.reset();
+        hits.reset();
+    }
+
+    public int getEntryCount() {
+        return mask + 1;
+    }
+
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The fraction of probes that found their position, from 0 to 1
+     */
+    public double getHitRate() {
+        long total = probes.sum();
+        return total == 0 ? 0 : (double) hits.sum() / total;
+    }
+
+    public static int getMove(long data) {
+        return (int) data & BitMove.MOVE_MASK;
+    }
+
+    public static int getScore(long data) {
+        // Shift the 20 score bits to the top, then back down to sign extend them
+        return (int) ((data << (64 - SCORE_SHIFT - 20)) >> 44);
+    }
+
+    public static int getDepth(long data) {
+        return (int) (data >>> DEPTH_SHIFT) & DEPTH_MASK;
+    }
+
+    public static int getBound(long data) {
+        return (int) (data >>> BOUND_SHIFT) & BOUND_MASK;
+    }
+
+    private static int getAge(long data) {
+        return (int) (data >>> AGE_SHIFT) & AGE_MASK;
+    }
+}
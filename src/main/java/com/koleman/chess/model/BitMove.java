@@ -25,6 +25,8 @@ public class BitMove {
     public static final int PIECE_MASK = 15;
     public static final int TYPE_MASK = 15;
     public static final int ORDERING_MASK = 63;
+    /** Everything but the ordering score. Two moves with the same bits under this mask are the same move. */
+    public static final int MOVE_MASK = (1 << ORDERING_SHIFT) - 1;
 
     public static int createMove(int fromIndex, int toIndex, int fromPiece, int toPiece, int moveType, int orderingScore) {
         return fromIndex | (toIndex << TO_INDEX_SHIFT) |
@@ -49,6 +51,9 @@ public class BitMove {
     public static int getOrderingScore(int move) {
         return ((move >> ORDERING_SHIFT) & ORDERING_MASK);
     }
+    public static int stripOrdering(int move) {
+        return move & MOVE_MASK;
+    }
 
     /**
      * Returns a string in the form of "e2e4" (not a Standard Algebraic Notation string) representing the
@@ -0,0 +1,919 @@
+package com.koleman.chess.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.koleman.chess.model.Bitboards.*;
+import static com.koleman.chess.model.Definitions.*;
+import static com.koleman.chess.model.TestData.*;
+
+/**
+ * A Position backed by one 64-bit board per piece type and color, instead of PositionImpl's 0x88 matrix.
+ * Internally squares are numbered 0-63, but everything that leaves this class (BitMoves, getPiece(), the
+ * en passant square in FEN strings) still speaks 0x88, so the two implementations are interchangeable.
+ */
+public class BitboardPosition implements Position {
+    /** One bitboard per piece constant. Index 0, 7 and 8 are unused. */
+    private long[] pieces;
+    /** [0] holds every white piece, [1] every black piece */
+    private long[] colors;
+    private long occupied;
+    /** Mailbox copy of the board, so piece lookups by square don't have to search twelve bitboards */
+    private int[] board;
+    private int sideToMove;
+    private int fullMoveCount;
+    private int halfMoveCount;
+    private int halfMoveClock;
+    /** 0-63 square, or -1 */
+    private int enPassantSquare;
+    private boolean whiteCastleShort, whiteCastleLong, blackCastleShort, blackCastleLong;
+    /** Zobrist key, using the same 0x88 tables as PositionImpl so both backends agree */
+    private long hashKey;
+    /** The pawns' share of the key */
+    private long pawnKey;
+    /** Material and piece-square totals (see PieceSquareTables), kept up to date along with the key */
+    private int midgameScore;
+    private int endgameScore;
+    private int phase;
+    /** Null unless an evaluator is following the position */
+    private PieceObserver pieceObserver;
+
+    // Scratch buffer for the List based methods. Allocated on first use, since most clones never generate moves.
+    private int[] moveBuffer;
+    // staticExchange()'s swap list
+    private final int[] exchangeGain = new int[34];
+
+    // Undo stack for unmakeMove(), packed the same way as PositionImpl's (with a 0-63 en passant square)
+    private static final int UNDO_CASTLE_SHIFT = 4;
+    private static final int UNDO_EN_PASSANT_SHIFT = 8;
+    private int[] undoStack;
+    private int[] clockStack;
+    private long[] hashStack;
+    private int undoCount;
+
+    public BitboardPosition() {
+        pieces = new long[15];
+        colors = new long[2];
+        board = new int[64];
+        undoStack = new int[128];
+        clockStack = new int[128];
+        hashStack = new long[128];
+        sideToMove = WHITE_TEAM;
+        enPassantSquare = -1;
+    }
+
+    @Override
+    public int getTeamToMove() {
+        return sideToMove;
+    }
+
+    @Override
+    public int getFullMoveCount() {
+        return fullMoveCount;
+    }
+
+    @Override
+    public int getHalfMoveCount() {
+        return halfMoveCount;
+    }
+
+    @Override
+    public List<Integer> getPossibleMoves() {
+        return toSortedList(generate(moveBuffer(), 0, true, true));
+    }
+
+    @Override
+    public List<Integer> getCaptureMoves() {
+        return toSortedList(generate(moveBuffer(), 0, true, false));
+    }
+
+    @Override
+    public int generateMoves(int[] buffer, int offset) {
+        return generate(buffer, offset, true, true) - offset;
+    }
+
+    @Override
+    public int generateCaptures(int[] buffer, int offset) {
+        return generate(buffer, offset, true, false) - offset;
+    }
+
+    @Override
+    public int generateQuiets(int[] buffer, int offset) {
+        return generate(buffer, offset, false, true) - offset;
+    }
+
+    @Override
+    public boolean isLegalMove(int move) {
+        int from = X88_TO_SQUARE[BitMove.getFromIndex(move)];
+        if (from < 0 || board[from] == EMPTY || board[from] != BitMove.getFromPiece(move)) {
+            return false;
+        }
+        int count = generate(moveBuffer(), 0, true, true);
+        move = BitMove.stripOrdering(move);
+        for (int i = 0; i < count; i++) {
+            if (BitMove.stripOrdering(moveBuffer[i]) == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int[] moveBuffer() {
+        if (moveBuffer == null) {
+            moveBuffer = new int[MAX_LEGAL_MOVES];
+        }
+        return moveBuffer;
+    }
+
+    private List<Integer> toSortedList(int count) {
+        // Same order as PositionImpl, which sorts its boxed moves by their raw integer value
+        Arrays.sort(moveBuffer, 0, count);
+        List<Integer> resultList = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; i++) {
+            resultList.add(moveBuffer[i]);
+        }
+        return resultList;
+    }
+
+    /**
+     * Writes the legal captures, the legal quiet moves, or both into the array, starting at the given offset. The split
+     * is the same as PositionImpl's: en passant and non-capturing promotions are quiet.
+     * Pseudo-legal moves are only checked for legality when they could possibly expose the king: king moves,
+     * en passant captures, moves of pinned pieces, and everything while in check.
+     * @return the offset just past the last move written
+     */
+    private int generate(int[] moves, int count, boolean captures, boolean quiets) {
+        int us = sideToMove == WHITE_TEAM ? 0 : 1;
+        int them = us ^ 1;
+        int offset = us << 3;
+        long own = colors[us];
+        long enemy = colors[them];
+        long empty = ~occupied;
+        long targets = (captures ? enemy : 0) | (quiets ? empty : 0);
+        int kingSquare = Long.numberOfTrailingZeros(pieces[WHITE_KING + offset]);
+        boolean inCheck = attackersTo(kingSquare, occupied, them) != 0;
+        long pinned = pinnedPieces(kingSquare, us);
+
+        // Pawns
+        long pawns = pieces[WHITE_PAWN + offset];
+        int forward = us == 0 ? 8 : -8;
+        long promotionRank = us == 0 ? RANK_8 : RANK_1;
+        if (quiets) {
+            long singles = (us == 0 ? pawns << 8 : pawns >>> 8) & empty;
+            long doubles = us == 0 ? ((singles & (RANK_2 << 8)) << 8) & empty : ((singles & (RANK_7 >>> 8)) >>> 8) & empty;
+            while (singles != 0) {
+                int to = Long.numberOfTrailingZeros(singles);
+                singles &= singles - 1;
+                int from = to - forward;
+                count = addPawnMove(moves, count, from, to, EMPTY, ((1L << to) & promotionRank) != 0, inCheck || (pinned & (1L << from)) != 0, kingSquare, them);
+            }
+            while (doubles != 0) {
+                int to = Long.numberOfTrailingZeros(doubles);
+                doubles &= doubles - 1;
+                int from = to - 2 * forward;
+                count = addMove(moves, count, from, to, WHITE_PAWN + offset, EMPTY, ORDINARY, inCheck || (pinned & (1L << from)) != 0, kingSquare, them);
+            }
+        }
+        // A null move leaves the en passant square behind for the wrong side, so make sure there's a pawn to take
+        long epBit = enPassantSquare == -1 || board[enPassantSquare - forward] != BLACK_PAWN - offset ? 0 : 1L << enPassantSquare;
+        while (pawns != 0) {
+            int from = Long.numberOfTrailingZeros(pawns);
+            pawns &= pawns - 1;
+            long attacks = PAWN_ATTACKS[us][from];
+            long victims = captures ? attacks & enemy : 0;
+            boolean verify = inCheck || (pinned & (1L << from)) != 0;
+            while (victims != 0) {
+                int to = Long.numberOfTrailingZeros(victims);
+                victims &= victims - 1;
+                count = addPawnMove(moves, count, from, to, board[to], ((1L << to) & promotionRank) != 0, verify, kingSquare, them);
+            }
+            if (quiets && (attacks & epBit) != 0) {
+                count = addMove(moves, count, from, enPassantSquare, WHITE_PAWN + offset, EMPTY, EN_PASSANT, true, kingSquare, them);
+            }
+        }
+
+        // Knights, bishops, rooks and queens
+        for (int piece = WHITE_KNIGHT + offset; piece <= WHITE_QUEEN + offset; piece++) {
+            long bits = pieces[piece];
+            while (bits != 0) {
+                int from = Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                long attacks;
+                switch (piece - offset) {
+                    case WHITE_KNIGHT: attacks = KNIGHT_ATTACKS[from]; break;
+                    case WHITE_BISHOP: attacks = bishopAttacks(from, occupied); break;
+                    case WHITE_ROOK: attacks = rookAttacks(from, occupied); break;
+                    default: attacks = queenAttacks(from, occupied); break;
+                }
+                attacks &= targets;
+                boolean verify = inCheck || (pinned & (1L << from)) != 0;
+                while (attacks != 0) {
+                    int to = Long.numberOfTrailingZeros(attacks);
+                    attacks &= attacks - 1;
+                    count = addMove(moves, count, from, to, piece, board[to], ORDINARY, verify, kingSquare, them);
+                }
+            }
+        }
+
+        // King
+        long attacks = KING_ATTACKS[kingSquare] & targets;
+        while (attacks != 0) {
+            int to = Long.numberOfTrailingZeros(attacks);
+            attacks &= attacks - 1;
+            count = addMove(moves, count, kingSquare, to, WHITE_KING + offset, board[to], ORDINARY, true, kingSquare, them);
+        }
+        if (quiets && !inCheck) {
+            // Like PositionImpl, the rook itself isn't checked for; the rights disappear as soon as it moves or is captured
+            if (us == 0 && kingSquare == 4) {
+                if (whiteCastleShort && board[5] == EMPTY && board[6] == EMPTY
+                        && attackersTo(5, occupied, them) == 0 && attackersTo(6, occupied, them) == 0) {
+                    moves[count++] = BitMove.createMove(4, 6, WHITE_KING, EMPTY, WHITE_SHORT_CASTLE, ORDERING_DEFAULT);
+                }
+                if (whiteCastleLong && board[1] == EMPTY && board[2] == EMPTY && board[3] == EMPTY
+                        && attackersTo(2, occupied, them) == 0 && attackersTo(3, occupied, them) == 0) {
+                    moves[count++] = BitMove.createMove(4, 2, WHITE_KING, EMPTY, WHITE_LONG_CASTLE, ORDERING_DEFAULT);
+                }
+            } else if (us == 1 && kingSquare == 60) {
+                if (blackCastleShort && board[61] == EMPTY && board[62] == EMPTY
+                        && attackersTo(61, occupied, them) == 0 && attackersTo(62, occupied, them) == 0) {
+                    moves[count++] = BitMove.createMove(116, 118, BLACK_KING, EMPTY, BLACK_SHORT_CASTLE, ORDERING_DEFAULT);
+                }
+                if (blackCastleLong && board[57] == EMPTY && board[58] == EMPTY && board[59] == EMPTY
+                        && attackersTo(58, occupied, them) == 0 && attackersTo(59, occupied, them) == 0) {
+                    moves[count++] = BitMove.createMove(116, 114, BLACK_KING, EMPTY, BLACK_LONG_CASTLE, ORDERING_DEFAULT);
+                }
+            }
+        }
+        return count;
+    }
+
+    private int addPawnMove(int[] moves, int count, int from, int to, int captured, boolean promotion, boolean verify, int kingSquare, int them) {
+        int pawn = board[from];
+        if (!promotion) {
+            return addMove(moves, count, from, to, pawn, captured, ORDINARY, verify, kingSquare, them);
+        }
+        if (verify && !isLegal(from, to, pawn, ORDINARY, kingSquare, them)) {
+            return count;
+        }
+        // PositionImpl leaves the captured piece out of promotion moves, and so do we
+        int start = SQUARE_TO_0X88[from];
+        int end = SQUARE_TO_0X88[to];
+        moves[count++] = BitMove.createMove(start, end, pawn, EMPTY, PROMOTION_KNIGHT, ORDERING_PROMOTION);
+        moves[count++] = BitMove.createMove(start, end, pawn, EMPTY, PROMOTION_BISHOP, ORDERING_PROMOTION);
+        moves[count++] = BitMove.createMove(start, end, pawn, EMPTY, PROMOTION_ROOK, ORDERING_PROMOTION);
+        moves[count++] = BitMove.createMove(start, end, pawn, EMPTY, PROMOTION_QUEEN, ORDERING_PROMOTION);
+        return count;
+    }
+
+    private int addMove(int[] moves, int count, int from, int to, int piece, int captured, int type, boolean verify, int kingSquare, int them) {
+        if (verify && !isLegal(from, to, piece, type, kingSquare, them)) {
+            return count;
+        }
+        moves[count++] = BitMove.createMove(SQUARE_TO_0X88[from], SQUARE_TO_0X88[to], piece, captured, type, ordering(piece, captured));
+        return count;
+    }
+
+    /**
+     * The same (coarse) MVV/LVA score PositionImpl.checkMoveInternal() gives a move, so both backends
+     * hand the engine identically ordered move lists.
+     */
+    private int ordering(int startPiece, int endPiece) {
+        if (endPiece == EMPTY) {
+            return ORDERING_DEFAULT;
+        }
+        if (sideToMove == WHITE_TEAM) {
+            return endPiece / (startPiece + 8) + 32;
+        }
+        return (endPiece + 8) / startPiece + 32;
+    }
+
+    /**
+     * Plays the move on the occupancy bitboard only and asks whether the king would be attacked afterwards.
+     */
+    private boolean isLegal(int from, int to, int piece, int type, int kingSquare, int them) {
+        long toBit = 1L << to;
+        long occ = (occupied ^ (1L << from)) | toBit;
+        long survivors = ~toBit;
+        if (type == EN_PASSANT) {
+            long capturedBit = 1L << (them == 1 ? to - 8 : to + 8);
+            occ ^= capturedBit;
+            survivors &= ~capturedBit;
+        }
+        int king = (piece == WHITE_KING || piece == BLACK_KING) ? to : kingSquare;
+        return (attackersTo(king, occ, them) & survivors) == 0;
+    }
+
+    /**
+     * Every piece of side 'them' (0 white, 1 black) attacking the square, given the occupancy.
+     */
+    private long attackersTo(int square, long occ, int them) {
+        int offset = them << 3;
+        long queens = pieces[WHITE_QUEEN + offset];
+        return (KNIGHT_ATTACKS[square] & pieces[WHITE_KNIGHT + offset])
+                | (KING_ATTACKS[square] & pieces[WHITE_KING + offset])
+                | (PAWN_ATTACKS[them ^ 1][square] & pieces[WHITE_PAWN + offset])
+                | (bishopAttacks(square, occ) & (pieces[WHITE_BISHOP + offset] | queens))
+                | (rookAttacks(square, occ) & (pieces[WHITE_ROOK + offset] | queens));
+    }
+
+    /**
+     * Pieces of side 'us' that are the only thing standing between their king and an enemy slider.
+     */
+    private long pinnedPieces(int kingSquare, int us) {
+        int offset = (us ^ 1) << 3;
+        long queens = pieces[WHITE_QUEEN + offset];
+        long snipers = (rookAttacks(kingSquare, 0) & (pieces[WHITE_ROOK + offset] | queens))
+                | (bishopAttacks(kingSquare, 0) & (pieces[WHITE_BISHOP + offset] | queens));
+        long pinned = 0;
+        while (snipers != 0) {
+            int sniper = Long.numberOfTrailingZeros(snipers);
+            snipers &= snipers - 1;
+            long blockers = BETWEEN[kingSquare][sniper] & occupied;
+            if (blockers != 0 && (blockers & (blockers - 1)) == 0) {
+                pinned |= blockers & colors[us];
+            }
+        }
+        return pinned;
+    }
+
+    private void addPiece(int square, int piece) {
+        long bit = 1L << square;
+        pieces[piece] |= bit;
+        colors[piece >> 3] |= bit;
+        occupied |= bit;
+        board[square] = piece;
+        int index = SQUARE_TO_0X88[square];
+        hashKey ^= Zobrist.PIECE_SQUARE[piece][index];
+        if ((piece & 7) == WHITE_PAWN) {
+            pawnKey ^= Zobrist.PIECE_SQUARE[piece][index];
+        }
+        midgameScore += PieceSquareTables.MIDGAME[piece][index];
+        endgameScore += PieceSquareTables.ENDGAME[piece][index];
+        phase += PieceSquareTables.PHASE[piece];
+        if (pieceObserver != null) {
+            pieceObserver.pieceAdded(piece, index);
+        }
+    }
+
+    private void removePiece(int square) {
+        int piece = board[square];
+        long bit = ~(1L << square);
+        pieces[piece] &= bit;
+        colors[piece >> 3] &= bit;
+        occupied &= bit;
+        board[square] = EMPTY;
+        int index = SQUARE_TO_0X88[square];
+        hashKey ^= Zobrist.PIECE_SQUARE[piece][index];
+        if ((piece & 7) == WHITE_PAWN) {
+            pawnKey ^= Zobrist.PIECE_SQUARE[piece][index];
+        }
+        midgameScore -= PieceSquareTables.MIDGAME[piece][index];
+        endgameScore -= PieceSquareTables.ENDGAME[piece][index];
+        phase -= PieceSquareTables.PHASE[piece];
+        if (pieceObserver != null) {
+            pieceObserver.pieceRemoved(piece, index);
+        }
+    }
+
+    private void movePiece(int from, int to) {
+        int piece = board[from];
+        removePiece(from);
+        addPiece(to, piece);
+    }
+
+    @Override
+    public void makeMove(int move) {
+        int from = X88_TO_SQUARE[BitMove.getFromIndex(move)];
+        int to = X88_TO_SQUARE[BitMove.getToIndex(move)];
+        int startPiece = board[from];
+        int captured = board[to];
+        int colorOffset = startPiece & 8;
+
+        if (undoCount == undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, undoCount * 2);
+            clockStack = Arrays.copyOf(clockStack, undoCount * 2);
+            hashStack = Arrays.copyOf(hashStack, undoCount * 2);
+        }
+        undoStack[undoCount] = captured | (castlingBits() << UNDO_CASTLE_SHIFT) | ((enPassantSquare + 1) << UNDO_EN_PASSANT_SHIFT);
+        clockStack[undoCount] = halfMoveClock;
+        hashStack[undoCount] = hashKey;
+        undoCount++;
+        if (captured != EMPTY || startPiece == WHITE_PAWN || startPiece == BLACK_PAWN) {
+            halfMoveClock = 0;
+        } else {
+            halfMoveClock++;
+        }
+
+        // The pieces hash themselves in add/removePiece(); castling and en passant are swapped out around the move
+        hashKey ^= stateKey();
+        enPassantSquare = -1;
+        if (captured != EMPTY) {
+            removePiece(to);
+        }
+        movePiece(from, to);
+        switch (BitMove.getType(move)) {
+            case ORDINARY:
+                if ((startPiece == WHITE_PAWN || startPiece == BLACK_PAWN) && Math.abs(from - to) == 16) {
+                    enPassantSquare = (from + to) / 2;
+                }
+                break;
+            case EN_PASSANT:
+                removePiece(startPiece == WHITE_PAWN ? to - 8 : to + 8);
+                break;
+            case WHITE_SHORT_CASTLE:
+                movePiece(7, 5);
+                break;
+            case WHITE_LONG_CASTLE:
+                movePiece(0, 3);
+                break;
+            case BLACK_SHORT_CASTLE:
+                movePiece(63, 61);
+                break;
+            case BLACK_LONG_CASTLE:
+                movePiece(56, 59);
+                break;
+            case PROMOTION_QUEEN:
+                removePiece(to);
+                addPiece(to, WHITE_QUEEN + colorOffset);
+                break;
+            case PROMOTION_ROOK:
+                removePiece(to);
+                addPiece(to, WHITE_ROOK + colorOffset);
+                break;
+            case PROMOTION_BISHOP:
+                removePiece(to);
+                addPiece(to, WHITE_BISHOP + colorOffset);
+                break;
+            case PROMOTION_KNIGHT:
+                removePiece(to);
+                addPiece(to, WHITE_KNIGHT + colorOffset);
+                break;
+        }
+        switch (startPiece) {
+            case WHITE_ROOK:
+                if (from == 0) whiteCastleLong = false;
+                if (from == 7) whiteCastleShort = false;
+                break;
+            case BLACK_ROOK:
+                if (from == 56) blackCastleLong = false;
+                if (from == 63) blackCastleShort = false;
+                break;
+            case WHITE_KING:
+                whiteCastleShort = false;
+                whiteCastleLong = false;
+                break;
+            case BLACK_KING:
+                blackCastleShort = false;
+                blackCastleLong = false;
+                break;
+        }
+        // A capture on a rook's home square kills that castle
+        switch (to) {
+            case 7: whiteCastleShort = false; break;
+            case 0: whiteCastleLong = false; break;
+            case 56: blackCastleLong = false; break;
+            case 63: blackCastleShort = false; break;
+        }
+        hashKey ^= stateKey() ^ Zobrist.SIDE;
+        if (sideToMove == BLACK_TEAM) {
+            fullMoveCount++;
+        }
+        sideToMove = -sideToMove;
+        halfMoveCount++;
+    }
+
+    @Override
+    public void unmakeMove(int move) {
+        undoCount--;
+        int undo = undoStack[undoCount];
+        int from = X88_TO_SQUARE[BitMove.getFromIndex(move)];
+        int to = X88_TO_SQUARE[BitMove.getToIndex(move)];
+
+        sideToMove = -sideToMove;
+        halfMoveCount--;
+        if (sideToMove == BLACK_TEAM) {
+            fullMoveCount--;
+        }
+        int colorOffset = sideToMove == WHITE_TEAM ? 0 : 8;
+        switch (BitMove.getType(move)) {
+            case EN_PASSANT:
+                addPiece(sideToMove == WHITE_TEAM ? to - 8 : to + 8, BLACK_PAWN - colorOffset);
+                break;
+            case WHITE_SHORT_CASTLE:
+                movePiece(5, 7);
+                break;
+            case WHITE_LONG_CASTLE:
+                movePiece(3, 0);
+                break;
+            case BLACK_SHORT_CASTLE:
+                movePiece(61, 63);
+                break;
+            case BLACK_LONG_CASTLE:
+                movePiece(59, 56);
+                break;
+            case PROMOTION_QUEEN:
+            case PROMOTION_ROOK:
+            case PROMOTION_BISHOP:
+            case PROMOTION_KNIGHT:
+                removePiece(to);
+                addPiece(to, WHITE_PAWN + colorOffset);
+                break;
+        }
+        movePiece(to, from);
+        int captured = undo & 15;
+        if (captured != EMPTY) {
+            addPiece(to, captured);
+        }
+        setCastlingBits((undo >> UNDO_CASTLE_SHIFT) & 15);
+        enPassantSquare = (undo >> UNDO_EN_PASSANT_SHIFT) - 1;
+        halfMoveClock = clockStack[undoCount];
+        hashKey = hashStack[undoCount];
+    }
+
+    /** The castling rights and en passant file part of the hash key */
+    private long stateKey() {
+        long key = Zobrist.CASTLING[castlingBits()];
+        if (enPassantSquare != -1) {
+            key ^= Zobrist.EN_PASSANT[enPassantSquare & 7];
+        }
+        return key;
+    }
+
+    private int castlingBits() {
+        return (whiteCastleShort ? 1 : 0) | (whiteCastleLong ? 2 : 0) | (blackCastleShort ? 4 : 0) | (blackCastleLong ? 8 : 0);
+    }
+
+    private void setCastlingBits(int bits) {
+        whiteCastleShort = (bits & 1) != 0;
+        whiteCastleLong = (bits & 2) != 0;
+        blackCastleShort = (bits & 4) != 0;
+        blackCastleLong = (bits & 8) != 0;
+    }
+
+    @Override
+    public void makeMove(Move move) {
+        makeMove(BitMove.createMove(move.start, move.end, move.startPiece, move.endPiece, move.type, move.ordering));
+    }
+
+    @Override
+    public int getPiece(int index) {
+        if ((index & 0x88) != 0) {
+            return EMPTY;
+        }
+        return board[X88_TO_SQUARE[index]];
+    }
+
+    @Override
+    public int checkMove(int start, int end) {
+        int count = generate(moveBuffer(), 0, true, true);
+        int result = INVALID_MOVE;
+        for (int i = 0; i < count; i++) {
+            int move = moveBuffer[i];
+            if (BitMove.getFromIndex(move) == start && BitMove.getToIndex(move) == end) {
+                // There are four promotion moves to the same square. Assume the user wants a queen.
+                if (result == INVALID_MOVE || BitMove.getType(move) == PROMOTION_QUEEN) {
+                    result = move;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean inCheck() {
+        int us = sideToMove == WHITE_TEAM ? 0 : 1;
+        int kingSquare = Long.numberOfTrailingZeros(pieces[WHITE_KING + (us << 3)]);
+        return attackersTo(kingSquare, occupied, us ^ 1) != 0;
+    }
+
+    @Override
+    public boolean isCheckmate() {
+        return inCheck() && generate(moveBuffer(), 0, true, true) == 0;
+    }
+
+    @Override
+    public void makeNullMove() {
+        if (undoCount == undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, undoCount * 2);
+            clockStack = Arrays.copyOf(clockStack, undoCount * 2);
+            hashStack = Arrays.copyOf(hashStack, undoCount * 2);
+        }
+        undoStack[undoCount] = (castlingBits() << UNDO_CASTLE_SHIFT) | ((enPassantSquare + 1) << UNDO_EN_PASSANT_SHIFT);
+        clockStack[undoCount] = halfMoveClock;
+        hashStack[undoCount] = hashKey;
+        undoCount++;
+        // Passing gives up the right to take en passant
+        hashKey ^= stateKey();
+        enPassantSquare = -1;
+        hashKey ^= stateKey() ^ Zobrist.SIDE;
+        // Nothing before a null move counts for repetitions after it
+        halfMoveClock = 0;
+        sideToMove = -sideToMove;
+    }
+
+    @Override
+    public void unmakeNullMove() {
+        undoCount--;
+        enPassantSquare = (undoStack[undoCount] >> UNDO_EN_PASSANT_SHIFT) - 1;
+        halfMoveClock = clockStack[undoCount];
+        hashKey = hashStack[undoCount];
+        sideToMove = -sideToMove;
+    }
+
+    @Override
+    public boolean isRepetition() {
+        // Only positions since the last capture, pawn move or null move can come back. Every other ply has the
+        // other side to move, so those are skipped.
+        int limit = Math.min(halfMoveClock, undoCount);
+        for (int i = 4; i <= limit; i += 2) {
+            if (hashStack[undoCount - i] == hashKey) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasNonPawnMaterial(int team) {
+        int offset = team == WHITE_TEAM ? 0 : 8;
+        return (pieces[WHITE_KNIGHT + offset] | pieces[WHITE_BISHOP + offset] | pieces[WHITE_ROOK + offset]
+                | pieces[WHITE_QUEEN + offset]) != 0;
+    }
+
+    @Override
+    public int staticExchange(int move) {
+        int from = X88_TO_SQUARE[BitMove.getFromIndex(move)];
+        int to = X88_TO_SQUARE[BitMove.getToIndex(move)];
+        int type = BitMove.getType(move);
+        int piece = board[from];
+        int side = piece >> 3;
+
+        int gain = PIECE_VALUES[board[to]];
+        // The value of whatever stands on the to square, for the next capture to take
+        int onSquare = PIECE_VALUES[piece];
+        // Taking the pieces out of the occupancy as they capture lets the sliders behind them through
+        long occ = occupied ^ (1L << from);
+        if (type == EN_PASSANT) {
+            occ ^= 1L << (side == 0 ? to - 8 : to + 8);
+            gain = VAL_PAWN;
+        } else if (type >= PROMOTION_KNIGHT && type <= PROMOTION_QUEEN) {
+            onSquare = PIECE_VALUES[WHITE_KNIGHT + type - PROMOTION_KNIGHT];
+            gain += onSquare - VAL_PAWN;
+        }
+
+        int[] swap = exchangeGain;
+        swap[0] = gain;
+        int depth = 0;
+        int them = side ^ 1;
+        while (true) {
+            long attackers = attackersTo(to, occ, them) & occ;
+            if (attackers == 0) {
+                break;
+            }
+            // The cheapest attacker, and between two of a kind the one on the highest square, the same choice
+            // PositionImpl makes
+            int attacker = -1;
+            int offset = them << 3;
+            for (int cheapest = WHITE_PAWN; cheapest <= WHITE_KING; cheapest++) {
+                long candidates = attackers & pieces[cheapest + offset];
+                if (candidates != 0) {
+                    attacker = 63 - Long.numberOfLeadingZeros(candidates);
+                    break;
+                }
+            }
+            depth++;
+            swap[depth] = onSquare - swap[depth - 1];
+            // Neither side can come out ahead by going on
+            if (Math.max(-swap[depth - 1], swap[depth]) < 0) {
+                break;
+            }
+            onSquare = PIECE_VALUES[board[attacker]];
+            occ ^= 1L << attacker;
+            them ^= 1;
+        }
+        // Each side stops capturing as soon as going on would lose
+        for (; depth > 0; depth--) {
+            swap[depth - 1] = -Math.max(-swap[depth - 1], swap[depth]);
+        }
+        return swap[0];
+    }
+
+    @Override
+    public Position deepClone() {
+        BitboardPosition clone = new BitboardPosition();
+        System.arraycopy(pieces, 0, clone.pieces, 0, pieces.length);
+        System.arraycopy(board, 0, clone.board, 0, 64);
+        clone.colors[0] = colors[0];
+        clone.colors[1] = colors[1];
+        clone.occupied = occupied;
+        clone.whiteCastleShort = whiteCastleShort;
+        clone.whiteCastleLong = whiteCastleLong;
+        clone.blackCastleShort = blackCastleShort;
+        clone.blackCastleLong = blackCastleLong;
+        clone.enPassantSquare = enPassantSquare;
+        clone.fullMoveCount = fullMoveCount;
+        clone.halfMoveCount = halfMoveCount;
+        clone.halfMoveClock = halfMoveClock;
+        clone.sideToMove = sideToMove;
+        clone.hashKey = hashKey;
+        clone.pawnKey = pawnKey;
+        clone.midgameScore = midgameScore;
+        clone.endgameScore = endgameScore;
+        clone.phase = phase;
+        // The history goes along, so the clone can still spot repetitions of positions played before it was made
+        clone.undoStack = Arrays.copyOf(undoStack, undoStack.length);
+        clone.clockStack = Arrays.copyOf(clockStack, clockStack.length);
+        clone.hashStack = Arrays.copyOf(hashStack, hashStack.length);
+        clone.undoCount = undoCount;
+        return clone;
+    }
+
+    @Override
+    public boolean testMoveGen() {
+        Position instance = PositionUtil.createFromFENString(STARTING_FEN, PositionUtil.Backend.BITBOARD);
+        if (STARTING_PERFT_5 != PositionUtil.perft(instance, 5)) {
+            return false;
+        }
+        instance = PositionUtil.createFromFENString(COMPLICATED_FEN, PositionUtil.Backend.BITBOARD);
+        if (COMPLICATED_PERFT_5 != PositionUtil.perft(instance, 5)) {
+            return false;
+        }
+        instance = PositionUtil.createFromFENString(PROMOTION_FEN, PositionUtil.Backend.BITBOARD);
+        if (PROMOTION_PERFT_5 != PositionUtil.perft(instance, 5)) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String writeToFEN() {
+        return FENManager.write(this);
+    }
+
+    @Override
+    public boolean equals(Object that) {
+        if (that instanceof Position) {
+            return ((Position) that).getHashKey() == hashKey;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hashKey ^ (hashKey >>> 32));
+    }
+
+    @Override
+    public int getMidgameScore() {
+        return midgameScore;
+    }
+
+    @Override
+    public int getEndgameScore() {
+        return endgameScore;
+    }
+
+    @Override
+    public int getPhase() {
+        return phase;
+    }
+
+    @Override
+    public void setPieceObserver(PieceObserver observer) {
+        pieceObserver = observer;
+    }
+
+    @Override
+    public PieceObserver getPieceObserver() {
+        return pieceObserver;
+    }
+
+    @Override
+    public long getPawnKey() {
+        return pawnKey;
+    }
+
+    @Override
+    public int getKingSquare(int team) {
+        long king = pieces[team == WHITE_TEAM ? WHITE_KING : BLACK_KING];
+        return king == 0 ? -1 : SQUARE_TO_0X88[Long.numberOfTrailingZeros(king)];
+    }
+
+    @Override
+    public long getHashKey() {
+        return hashKey;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(" ---------------------------------\n");
+        for (int rank = 7; rank >= 0; rank--) {
+            sb.append(" |");
+            for (int file = 0; file < 8; file++) {
+                sb.append(' ').append(FENManager.pieceChar(board[rank * 8 + file], ' ')).append(" |");
+            }
+            sb.append("\n ---------------------------------\n");
+        }
+        return sb.toString().trim();
+    }
+
+    public static class FENManager {
+
+        private static final String PIECE_CHARS = " PNBRQK  pnbrqk";
+
+        private static char pieceChar(int piece, char empty) {
+            return piece == EMPTY ? empty : PIECE_CHARS.charAt(piece);
+        }
+
+        public static String write(BitboardPosition position) {
+            StringBuilder sb = new StringBuilder();
+            for (int rank = 7; rank >= 0; rank--) {
+                int blanks = 0;
+                for (int file = 0; file < 8; file++) {
+                    int piece = position.board[rank * 8 + file];
+                    if (piece == EMPTY) {
+                        blanks++;
+                        continue;
+                    }
+                    if (blanks > 0) {
+                        sb.append(blanks);
+                        blanks = 0;
+                    }
+                    sb.append(pieceChar(piece, ' '));
+                }
+                if (blanks > 0) {
+                    sb.append(blanks);
+                }
+                if (rank != 0) {
+                    sb.append('/');
+                }
+            }
+            sb.append(position.sideToMove == WHITE_TEAM ? " w " : " b ");
+            int lengthBefore = sb.length();
+            if (position.whiteCastleShort) sb.append('K');
+            if (position.whiteCastleLong) sb.append('Q');
+            if (position.blackCastleShort) sb.append('k');
+            if (position.blackCastleLong) sb.append('q');
+            if (sb.length() == lengthBefore) {
+                sb.append('-');
+            }
+            sb.append(' ');
+            if (position.enPassantSquare == -1) {
+                sb.append('-');
+            } else {
+                sb.append(CoordinateUtility.convert0x88ToSAN(SQUARE_TO_0X88[position.enPassantSquare]));
+            }
+            sb.append(' ').append(position.halfMoveClock);
+            sb.append(' ').append(position.fullMoveCount);
+            return sb.toString();
+        }
+
+        public static Position read(String input) {
+            BitboardPosition p = new BitboardPosition();
+            String[] fields = input.trim().split("\\s+");
+            int rank = 7;
+            int file = 0;
+            for (char c : fields[0].toCharArray()) {
+                if (c == '/') {
+                    rank--;
+                    file = 0;
+                } else if (Character.isDigit(c)) {
+                    file += c - '0';
+                } else {
+                    int piece = PIECE_CHARS.indexOf(c);
+                    if (piece <= 0) {
+                        throw new IllegalArgumentException("Invalid FEN piece: " + c);
+                    }
+                    p.addPiece(rank * 8 + file, piece);
+                    file++;
+                }
+            }
+            if (fields.length > 1) {
+                p.sideToMove = fields[1].equals("b") ? BLACK_TEAM : WHITE_TEAM;
+            }
+            if (fields.length > 2) {
+                p.whiteCastleShort = fields[2].indexOf('K') != -1;
+                p.whiteCastleLong = fields[2].indexOf('Q') != -1;
+                p.blackCastleShort = fields[2].indexOf('k') != -1;
+                p.blackCastleLong = fields[2].indexOf('q') != -1;
+            }
+            if (fields.length > 3 && !fields[3].equals("-")) {
+                p.enPassantSquare = X88_TO_SQUARE[CoordinateUtility.convertSANTo0x88(fields[3])];
+            }
+            if (fields.length > 4) {
+                p.halfMoveClock = Integer.parseInt(fields[4]);
+            }
+            if (fields.length > 5) {
+                p.fullMoveCount = Integer.parseInt(fields[5]);
+                p.halfMoveCount = p.fullMoveCount * 2;
+            }
+            // addPiece() has already hashed the pieces
+            p.hashKey ^= p.stateKey();
+            if (p.sideToMove == BLACK_TEAM) {
+                p.hashKey ^= Zobrist.SIDE;
+            }
+            return p;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.koleman.chess.model;
+
+/**
+ * Static attack tables for the bitboard backend. Squares are numbered 0 (a1) through 63 (h8), rank by rank.
+ * Sliding attacks are looked up through "fancy" magic bitboards. The magic numbers below were found by a
+ * brute force search with a seeded random number generator; the tables are filled (and the magics double-checked)
+ * when the class loads.
+ */
+public final class Bitboards {
+
+    private Bitboards() {}
+
+    public static final long RANK_1 = 0xFFL;
+    public static final long RANK_2 = RANK_1 << 8;
+    public static final long RANK_7 = RANK_1 << 48;
+    public static final long RANK_8 = RANK_1 << 56;
+
+    /** Converts a 0-63 square to its 0x88 index */
+    public static final int[] SQUARE_TO_0X88 = new int[64];
+    /** Converts a 0x88 index to its 0-63 square, or -1 if the index is off the board */
+    public static final int[] X88_TO_SQUARE = new int[128];
+
+    public static final long[] KNIGHT_ATTACKS = new long[64];
+    public static final long[] KING_ATTACKS = new long[64];
+    /** Squares attacked by a pawn standing on the square. [0] is white, [1] is black. */
+    public static final long[][] PAWN_ATTACKS = new long[2][64];
+    /** The squares strictly between two squares sharing a line, or 0 if they don't share one */
+    public static final long[][] BETWEEN = new long[64][64];
+
+    private static final long[] ROOK_MASKS = new long[64];
+    private static final long[] ROOK_MAGICS = {
+            0x1080004008801020L, 0x0840092002C03000L, 0x1900200010400900L, 0x0880100008000480L,
+            0x4200100420080200L, 0x8100020100080400L, 0x0200040110886200L, 0x0200008040220411L,
+            0x0404800084400220L, 0x0000401000402000L, 0x0086001081220440L, 0x0408800800100280L,
+            0x000A001201040820L, 0x8848800200840080L, 0x4001000100040200L, 0x0442000102105084L,
+            0x9080010020804100L, 0x0040404000201009L, 0x0000808010002009L, 0x2200090021D00100L,
+            0x0008008008040080L, 0x0004004002010040L, 0x0011040008015042L, 0x00000A0001768104L,
+            0x0000800080204009L, 0x2010004140002001L, 0x9800200280100080L, 0x1000100080080080L,
+            0x0050500500080100L, 0x0000020080040080L, 0x0C10010400420810L, 0x1040008200005104L,
+            0x01808240088004A0L, 0x0882804004802000L, 0x0880402001001100L, 0x2000210409001000L,
+            0x2000480131001500L, 0x0000800400800200L, 0x000002380C001003L, 0x4600084882000431L,
+            0x0080002000504000L, 0x0300500020004002L, 0x0040408200220011L, 0x0010040008004040L,
+            0x0000080004008080L, 0x0010040002008080L, 0x2012004881020004L, 0x8300842444820011L,
+            0x0088403882010200L, 0x0820400080210100L, 0x0110910040A00300L, 0x0801100280080480L,
+            0x0242009008200600L, 0x1002000489500200L, 0x0040800200010080L, 0x0091800041000080L,
+            0x0000209300488001L, 0x04C1002414824001L, 0x020020000B001041L, 0x7000100004200901L,
+            0x8002002004100802L, 0x30010002084C0007L, 0x0888221800813004L, 0x4000002840840112L
+    };
+    private static final int[] ROOK_SHIFTS = new int[64];
+    private static final long[][] ROOK_TABLE = new long[64][];
+    private static final long[] BISHOP_MASKS = new long[64];
+    private static final long[] BISHOP_MAGICS = {
+            0x20C0090901061081L, 0x0024040094030104L, 0x8210810200290200L, 0x0011040484620000L,
+            0x0081104002221000L, 0x0009012011001350L, 0x0081010802400380L, 0x0000420210010408L,
+            0x0008105002280050L, 0x0001028484040044L, 0x2A00880810408804L, 0x7020022282000100L,
+            0x0084040420100A50L, 0x000401010840E000L, 0x2020020210420888L, 0x0008084202012010L,
+            0x2010400810018800L, 0x0445122008020840L, 0x0804100808002008L, 0x0008002104110100L,
+            0x0061005820080800L, 0x2001000200820100L, 0x480C210084010800L, 0x3004442500480420L,
+            0x1010102240048100L, 0x00182009084220A3L, 0x8803090A10004205L, 0x0208080040202020L,
+            0x000C044084010040L, 0x00A1010002004106L, 0x6008210020640202L, 0x1600902112860801L,
+            0x00042008C1220200L, 0x010C042002440140L, 0x5022080200040820L, 0x0402004042940100L,
+            0x0860108400008020L, 0x000C080022021000L, 0x0264080652822100L, 0x4005031221010401L,
+            0x0004502410008400L, 0x000500B010A20400L, 0x0415094050080800L, 0x080000201800A104L,
+            0x4022A80304000110L, 0x4012140802028020L, 0x40200104010100A0L, 0x12810806008B0C41L,
+            0x0020441008080000L, 0x2002120084045420L, 0x0704020062080002L, 0x0000001084040001L,
+            0x0322200891240200L, 0xF040200210024800L, 0x0140824832008042L, 0x000210020A004602L,
+            0x0083042805141020L, 0x002C12009A011000L, 0x0041A00044140400L, 0x00004004020A0202L,
+            0x0000140010020210L, 0x2864160811012200L, 0x2060080841082A17L, 0xA010041108003100L
+    };
+    private static final int[] BISHOP_SHIFTS = new int[64];
+    private static final long[][] BISHOP_TABLE = new long[64][];
+
+    private static final int[][] ROOK_DIRECTIONS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+    private static final int[][] BISHOP_DIRECTIONS = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+
+    static {
+        for (int i = 0; i < 128; i++) {
+            X88_TO_SQUARE[i] = -1;
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            int index = (sq >> 3) * 16 + (sq & 7);
+            SQUARE_TO_0X88[sq] = index;
+            X88_TO_SQUARE[index] = sq;
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            int file = sq & 7;
+            int rank = sq >> 3;
+            KNIGHT_ATTACKS[sq] = leaperAttacks(file, rank, new int[][]{{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1}, {-1, 2}});
+            KING_ATTACKS[sq] = leaperAttacks(file, rank, new int[][]{{1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1}, {1, -1}});
+            PAWN_ATTACKS[0][sq] = leaperAttacks(file, rank, new int[][]{{-1, 1}, {1, 1}});
+            PAWN_ATTACKS[1][sq] = leaperAttacks(file, rank, new int[][]{{-1, -1}, {1, -1}});
+        }
+        for (int from = 0; from < 64; from++) {
+            for (int[] direction : new int[][]{{1, 0}, {-1, 0}, {0, 1}, {0, -1}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1}}) {
+                long ray = 0;
+                int file = (from & 7) + direction[0];
+                int rank = (from >> 3) + direction[1];
+                while (file >= 0 && file < 8 && rank >= 0 && rank < 8) {
+                    int to = rank * 8 + file;
+                    BETWEEN[from][to] = ray;
+                    ray |= 1L << to;
+                    file += direction[0];
+                    rank += direction[1];
+                }
+            }
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            ROOK_MASKS[sq] = relevantMask(sq, ROOK_DIRECTIONS);
+            ROOK_SHIFTS[sq] = 64 - Long.bitCount(ROOK_MASKS[sq]);
+            ROOK_TABLE[sq] = new long[1 << Long.bitCount(ROOK_MASKS[sq])];
+            fillTable(sq, ROOK_MASKS[sq], ROOK_MAGICS[sq], ROOK_SHIFTS[sq], ROOK_TABLE[sq], ROOK_DIRECTIONS);
+
+            BISHOP_MASKS[sq] = relevantMask(sq, BISHOP_DIRECTIONS);
+            BISHOP_SHIFTS[sq] = 64 - Long.bitCount(BISHOP_MASKS[sq]);
+            BISHOP_TABLE[sq] = new long[1 << Long.bitCount(BISHOP_MASKS[sq])];
+            fillTable(sq, BISHOP_MASKS[sq], BISHOP_MAGICS[sq], BISHOP_SHIFTS[sq], BISHOP_TABLE[sq], BISHOP_DIRECTIONS);
+        }
+    }
+
+    public static long rookAttacks(int square, long occupied) {
+        return ROOK_TABLE[square][(int) (((occupied & ROOK_MASKS[square]) * ROOK_MAGICS[square]) >>> ROOK_SHIFTS[square])];
+    }
+
+    public static long bishopAttacks(int square, long occupied) {
+        return BISHOP_TABLE[square][(int) (((occupied & BISHOP_MASKS[square]) * BISHOP_MAGICS[square]) >>> BISHOP_SHIFTS[square])];
+    }
+
+    public static long queenAttacks(int square, long occupied) {
+        return rookAttacks(square, occupied) | bishopAttacks(square, occupied);
+    }
+
+    private static long leaperAttacks(int file, int rank, int[][] offsets) {
+        long attacks = 0;
+        for (int[] offset : offsets) {
+            int f = file + offset[0];
+            int r = rank + offset[1];
+            if (f >= 0 && f < 8 && r >= 0 && r < 8) {
+                attacks |= 1L << (r * 8 + f);
+            }
+        }
+        return attacks;
+    }
+
+    /**
+     * The occupancy bits that can change a slider's attacks from the given square. The last square of each ray
+     * is left out, since a blocker there doesn't hide anything.
+     */
+    private static long relevantMask(int square, int[][] directions) {
+        long mask = 0;
+        for (int[] direction : directions) {
+            int file = (square & 7) + direction[0];
+            int rank = (square >> 3) + direction[1];
+            while (file + direction[0] >= 0 && file + direction[0] < 8 && rank + direction[1] >= 0 && rank + direction[1] < 8) {
+                mask |= 1L << (rank * 8 + file);
+                file += direction[0];
+                rank += direction[1];
+            }
+        }
+        return mask;
+    }
+
+    /** The slow way: walks each ray until it runs into a piece or off the board. Only used to build the tables. */
+    private static long slidingAttacks(int square, long occupied, int[][] directions) {
+        long attacks = 0;
+        for (int[] direction : directions) {
+            int file = (square & 7) + direction[0];
+            int rank = (square >> 3) + direction[1];
+            while (file >= 0 && file < 8 && rank >= 0 && rank < 8) {
+                long bit = 1L << (rank * 8 + file);
+                attacks |= bit;
+                if ((occupied & bit) != 0) {
+                    break;
+                }
+                file += direction[0];
+                rank += direction[1];
+            }
+        }
+        return attacks;
+    }
+
+    private static void fillTable(int square, long mask, long magic, int shift, long[] table, int[][] directions) {
+        boolean[] used = new boolean[table.length];
+        // Enumerate every subset of the mask (the Carry-Rippler trick)
+        long subset = 0;
+        do {
+            long attacks = slidingAttacks(square, subset, directions);
+            int index = (int) ((subset * magic) >>> shift);
+            if (used[index] && table[index] != attacks) {
+                throw new IllegalStateException("Bad magic number for square " + square);
+            }
+            used[index] = true;
+            table[index] = attacks;
+            subset = (subset - mask) & mask;
+        } while (subset != 0);
+    }
+}
@@ -71,6 +71,9 @@ public final class Definitions {
     public static final int VAL_ROOK = 500;
     public static final int VAL_QUEEN = 900;
     public static final int VAL_KING = 10000;
+    /** The values above, indexed by piece (either team), for the static exchange evaluator */
+    public static final int[] PIECE_VALUES = {0, VAL_PAWN, VAL_KNIGHT, VAL_BISHOP, VAL_ROOK, VAL_QUEEN, VAL_KING, 0,
+            0, VAL_PAWN, VAL_KNIGHT, VAL_BISHOP, VAL_ROOK, VAL_QUEEN, VAL_KING};
 
     public static final int[] DELTA_KNIGHT = {18, 14, 33, 31, -18, -14, -33, -31};
     public static final int[] DELTA_BISHOP = {17, 15, -17, -15};
@@ -79,6 +82,8 @@ public final class Definitions {
     public static final int[] DELTA_KING = {1, 15, 16, 17, -1, -15, -16, -17};
 
     public static final int MAX_MOVES = 100;
+    /** No legal chess position has more than 218 moves, so a buffer this size always fits a full move list */
+    public static final int MAX_LEGAL_MOVES = 256;
 
     public static final int INVALID_MOVE = -1;
     public static final int ORDINARY = 0;
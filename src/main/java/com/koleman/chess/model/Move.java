@@ -35,6 +35,19 @@ public class Move implements Comparable{
 
         return start + "" + end;
     }
+
+    /**
+     * The shorthand with the promotion piece after it, like "e7e8q". This is the notation UCI uses.
+     */
+    public String toLongAlgebraic() {
+        switch (type) {
+            case PROMOTION_QUEEN: return toShorthand() + "q";
+            case PROMOTION_ROOK: return toShorthand() + "r";
+            case PROMOTION_BISHOP: return toShorthand() + "b";
+            case PROMOTION_KNIGHT: return toShorthand() + "n";
+            default: return toShorthand();
+        }
+    }
     public String toSAN() {
         StringBuilder sb = new StringBuilder();
 
@@ -0,0 +1,51 @@
+package com.koleman.chess.model;
+
+/**
+ * Remembers perft counts of subtrees, keyed by Zobrist hash and depth. Transpositions are everywhere in a perft tree,
+ * so a deep count ends up reusing most of its subtrees. Each entry is two longs, the key XORed with the data and then
+ * the data (count << 8 | depth). There are no locks: a torn write just reads as a miss, so parallel perft tasks can
+ * share one table.
+ */
+public class PerftTable {
+    private static final int DEPTH_BITS = 8;
+    private static final long DEPTH_MASK = (1L << DEPTH_BITS) - 1;
+
+    private final long[] table;
+    private final int mask;
+
+    /**
+     * @param megabytes The most memory the table may use. The entry count is rounded down to a power of two.
+     */
+    public PerftTable(int megabytes) {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException("Perft table size must be at least 1 MB: " + megabytes);
+        }
+        int entries = (int) Long.highestOneBit(Math.min((long) megabytes * 1024 * 1024 / 16, 1 << 29));
+        table = new long[entries * 2];
+        mask = entries - 1;
+    }
+
+    /**
+     * @return The number of leaves depth plies below the position, or -1 if it isn't in the table
+     */
+    public long probe(long key, int depth) {
+        int index = index(key, depth);
+        long data = table[index + 1];
+        if ((table[index] ^ data) != key || (data & DEPTH_MASK) != depth) {
+            return -1;
+        }
+        return data >>> DEPTH_BITS;
+    }
+
+    public void store(long key, int depth, long nodes) {
+        int index = index(key, depth);
+        long data = (nodes << DEPTH_BITS) | depth;
+        table[index] = key ^ data;
+        table[index + 1] = data;
+    }
+
+    private int index(long key, int depth) {
+        // The same position shows up at several depths, so give each depth its own slot
+        return (((int) key + depth) & mask) << 1;
+    }
+}
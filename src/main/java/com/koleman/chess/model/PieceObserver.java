@@ -0,0 +1,11 @@
+package com.koleman.chess.model;
+
+/**
+ * Told about every piece a position puts on or takes off the board, by makeMove() and unmakeMove() alike, so an
+ * evaluator can keep its own incremental state in step with the position. A move is a removal and an addition.
+ * Squares are 0x88.
+ */
+public interface PieceObserver {
+    public void pieceAdded(int piece, int square);
+    public void pieceRemoved(int piece, int square);
+}
@@ -0,0 +1,134 @@
+package com.koleman.chess.model;
+
+import static com.koleman.chess.model.Definitions.*;
+
+/**
+ * Material plus piece-square bonuses, in centipawns, once for the middlegame and once for the endgame. Both
+ * positions add a piece's entries to their running totals when it lands on a square and take them out when it
+ * leaves, so the evaluation never has to look at the board. The two totals are blended by the game phase, which
+ * counts down from MAX_PHASE as the pieces come off.
+ * The tables are written the way a board is printed, a8 first, from white's point of view, and mirrored for black.
+ * Black's entries are negative, so a total is always white's score.
+ */
+public final class PieceSquareTables {
+    /** The phase with every piece still on the board */
+    public static final int MAX_PHASE = 24;
+    /** [piece][0x88 square] */
+    public static final int[][] MIDGAME = new int[15][128];
+    public static final int[][] ENDGAME = new int[15][128];
+    /** How much each piece counts toward the phase. Pawns and kings don't. */
+    public static final int[] PHASE = {0, 0, 1, 1, 2, 4, 0, 0, 0, 0, 1, 1, 2, 4, 0};
+
+    private static final int[] MIDGAME_VALUES = {0, VAL_PAWN, VAL_KNIGHT, VAL_BISHOP, VAL_ROOK, VAL_QUEEN, 0};
+    private static final int[] ENDGAME_VALUES = {0, 120, 260, 300, 520, 920, 0};
+
+    private static final int[] PAWN_MIDGAME = {
+              0,   0,   0,   0,   0,   0,   0,   0,
+             50,  50,  50,  50,  50,  50,  50,  50,
+             10,  10,  20,  30,  30,  20,  10,  10,
+              5,   5,  10,  25,  25,  10,   5,   5,
+              0,   0,   0,  25,  25,   0,   0,   0,
+              5,  -5, -10,   0,   0, -10,  -5,   5,
+              5,  10,  10, -20, -20,  10,  10,   5,
+              0,   0,   0,   0,   0,   0,   0,   0};
+    private static final int[] PAWN_ENDGAME = {
+              0,   0,   0,   0,   0,   0,   0,   0,
+             80,  80,  80,  80,  80,  80,  80,  80,
+             50,  50,  50,  50,  50,  50,  50,  50,
+             30,  30,  30,  30,  30,  30,  30,  30,
+             15,  15,  15,  15,  15,  15,  15,  15,
+              5,   5,   5,   5,   5,   5,   5,   5,
+              0,   0,   0,   0,   0,   0,   0,   0,
+              0,   0,   0,   0,   0,   0,   0,   0};
+    private static final int[] KNIGHT = {
+            -50, -40, -30, -30, -30, -30, -40, -50,
+            -40, -20,   0,   0,   0,   0, -20, -40,
+            -30,   0,  10,  15,  15,  10,   0, -30,
+            -30,   5,  15,  20,  20,  15,   5, -30,
+            -30,   0,  15,  20,  20,  15,   0, -30,
+            -30,   5,  10,  15,  15,  10,   5, -30,
+            -40, -20,   0,   5,   5,   0, -20, -40,
+            -50, -30, -30, -30, -30, -30, -30, -50};
+    private static final int[] BISHOP = {
+            -20, -10, -10, -10, -10, -10, -10, -20,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -10,   0,   5,  10,  10,   5,   0, -10,
+            -10,   5,   5,  10,  10,   5,   5, -10,
+            -10,   0,  10,  10,  10,  10,   0, -10,
+            -10,  10,  10,  10,  10,  10,  10, -10,
+            -10,   5,   0,   0,   0,   0,   5, -10,
+            -20, -10, -15, -10, -10, -15, -10, -20};
+    private static final int[] ROOK = {
+              0,   0,   0,   0,   0,   0,   0,   0,
+             20,  25,  25,  25,  25,  25,  25,  20,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+              0,   0,   0,   5,   5,   0,   0,   0};
+    private static final int[] QUEEN = {
+            -20, -10, -10,  -5,  -5, -10, -10, -20,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -10,   0,   5,   5,   5,   5,   0, -10,
+             -5,   0,   5,   5,   5,   5,   0,  -5,
+              0,   0,   5,   5,   5,   5,   0,  -5,
+            -10,   5,   5,   5,   5,   5,   0, -10,
+            -10,   0,   5,   0,   0,   0,   0, -10,
+            -20, -10, -10,  -5,  -5, -10, -10, -20};
+    private static final int[] KING_MIDGAME = {
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -20, -30, -30, -40, -40, -30, -30, -20,
+            -10, -20, -20, -20, -20, -20, -20, -10,
+             20,  20,   0,   0,   0,   0,  20,  20,
+             20,  30,  10,   0,   0,  10,  30,  20};
+    private static final int[] KING_ENDGAME = {
+            -50, -40, -30, -20, -20, -30, -40, -50,
+            -30, -20, -10,   0,   0, -10, -20, -30,
+            -30, -10,  20,  30,  30,  20, -10, -30,
+            -30, -10,  30,  40,  40,  30, -10, -30,
+            -30, -10,  30,  40,  40,  30, -10, -30,
+            -30, -10,  20,  30,  30,  20, -10, -30,
+            -30, -30,   0,   0,   0,   0, -30, -30,
+            -50, -30, -30, -30, -30, -30, -30, -50};
+
+    static {
+        fill(WHITE_PAWN, PAWN_MIDGAME, PAWN_ENDGAME);
+        fill(WHITE_KNIGHT, KNIGHT, KNIGHT);
+        fill(WHITE_BISHOP, BISHOP, BISHOP);
+        fill(WHITE_ROOK, ROOK, ROOK);
+        fill(WHITE_QUEEN, QUEEN, QUEEN);
+        fill(WHITE_KING, KING_MIDGAME, KING_ENDGAME);
+    }
+
+    private PieceSquareTables() {
+    }
+
+    /**
+     * Blends a middlegame and an endgame score by the phase.
+     */
+    public static int taper(int midgame, int endgame, int phase) {
+        if (phase > MAX_PHASE) {
+            // Early promotions
+            phase = MAX_PHASE;
+        }
+        return (midgame * phase + endgame * (MAX_PHASE - phase)) / MAX_PHASE;
+    }
+
+    private static void fill(int piece, int[] midgame, int[] endgame) {
+        for (int rank = 0; rank < 8; rank++) {
+            for (int file = 0; file < 8; file++) {
+                int printed = (7 - rank) * 8 + file;
+                int mirrored = rank * 8 + file;
+                int square = rank * 16 + file;
+                MIDGAME[piece][square] = MIDGAME_VALUES[piece] + midgame[printed];
+                ENDGAME[piece][square] = ENDGAME_VALUES[piece] + endgame[printed];
+                MIDGAME[piece + 8][square] = -(MIDGAME_VALUES[piece] + midgame[mirrored]);
+                ENDGAME[piece + 8][square] = -(ENDGAME_VALUES[piece] + endgame[mirrored]);
+            }
+        }
+    }
+}
@@ -12,14 +12,95 @@ public interface Position {
     public int getHalfMoveCount();
     public List<Integer> getPossibleMoves();
     public List<Integer> getCaptureMoves();
+    /**
+     * Writes every legal move into the buffer, starting at offset, in no particular order. Nothing is allocated,
+     * so searches should prefer this (with a buffer per ply) over getPossibleMoves().
+     * @return the number of moves written
+     */
+    public int generateMoves(int[] buffer, int offset);
+    /**
+     * Same as generateMoves(), but only writes the moves getCaptureMoves() would return.
+     * @return the number of moves written
+     */
+    public int generateCaptures(int[] buffer, int offset);
+    /**
+     * Same as generateMoves(), but only writes the moves generateCaptures() leaves out. Between them the two write
+     * every legal move exactly once, so a search can generate the quiet moves only if the captures didn't cut off.
+     * @return the number of moves written
+     */
+    public int generateQuiets(int[] buffer, int offset);
+    /**
+     * Checks a move that came from somewhere other than this position's own generator, such as a hash table or a
+     * sibling node. The ordering bits are ignored.
+     */
+    public boolean isLegalMove(int move);
     public void makeMove(int move);
     public void makeMove(Move move);
+    /**
+     * Takes back the given move, which must be the last one made on this position.
+     */
+    public void unmakeMove(int move);
     public int getPiece(int index);
     public int checkMove(int start, int end);
     public boolean inCheck();
     public boolean isCheckmate();
+    /**
+     * Passes the turn to the other side. The en passant square is cleared, and the key updated to match.
+     * Take it back with unmakeNullMove().
+     */
     public void makeNullMove();
+    public void unmakeNullMove();
+    /**
+     * Whether the position already occurred earlier in the game (or the search), with the same side to move and no
+     * capture, pawn move or null move since. Searches score these as draws.
+     */
+    public boolean isRepetition();
+    /**
+     * Whether the team has anything besides pawns and its king. Without any, zugzwang is common, and null move
+     * pruning can't be trusted.
+     * @param team WHITE_TEAM or BLACK_TEAM
+     */
+    public boolean hasNonPawnMaterial(int team);
+    /**
+     * Static exchange evaluation: the material the side to move comes out ahead (or behind, if negative) after making
+     * the move and letting both sides keep recapturing on its square with their least valuable piece, each side
+     * free to stop whenever going on would lose more. Pins and checks are ignored, so it's an estimate, but it takes
+     * no make or unmake. A quiet move scores minus whatever the moving piece loses standing there.
+     */
+    public int staticExchange(int move);
     public Position deepClone();
     public boolean testMoveGen();
     public String writeToFEN();
+    /**
+     * The 64-bit Zobrist key of the position. Maintained incrementally, so it is cheap enough to call at every node.
+     */
+    public long getHashKey();
+    /**
+     * A Zobrist key of the pawns alone, maintained the same way. Pawn structure evaluations are cached under it.
+     */
+    public long getPawnKey();
+    /**
+     * @param team WHITE_TEAM or BLACK_TEAM
+     * @return The 0x88 square of the team's king
+     */
+    public int getKingSquare(int team);
+    /**
+     * Material plus piece-square bonuses for the middlegame, from white's point of view. Maintained incrementally, like
+     * the key. See PieceSquareTables.
+     */
+    public int getMidgameScore();
+    /**
+     * The same for the endgame.
+     */
+    public int getEndgameScore();
+    /**
+     * How much non-pawn material is left, from PieceSquareTables.MAX_PHASE in the starting position down to 0.
+     */
+    public int getPhase();
+    /**
+     * Attaches an observer to be told about every piece added or removed from now on, or detaches it with null.
+     * Copies made by deepClone() start without one.
+     */
+    public void setPieceObserver(PieceObserver observer);
+    public PieceObserver getPieceObserver();
 }
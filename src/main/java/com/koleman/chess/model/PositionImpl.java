@@ -19,11 +19,63 @@ public class PositionImpl implements Position {
     private int halfMoveClock;
     private int enPassantSquare;
     private boolean whiteCastleShort, whiteCastleLong, blackCastleShort, blackCastleLong;
+    /** Zobrist key of the position, kept up to date by makeMove() and makeNullMove() */
+    private long hashKey;
+    /** The pawns' share of the key */
+    private long pawnKey;
+    /** Material and piece-square totals (see PieceSquareTables), kept up to date along with the key */
+    private int midgameScore;
+    private int endgameScore;
+    private int phase;
+    /** Null unless an evaluator is following the position */
+    private PieceObserver pieceObserver;
 
     // To keep track of the kings' locations. (Saves a lot of iterations)
     private int whiteKing;
     private int blackKing;
 
+    /*
+     * Piece lists, so the attack checks only look at squares that have the attacker's pieces on them.
+     * pieceList[0] holds the squares of white's pieces and pieceList[1] black's, pawns and kings included, in no
+     * particular order. listIndex[square] is where the piece on that square sits in its list.
+     */
+    private final int[][] pieceList = new int[2][32];
+    private final int[] pieceCount = new int[2];
+    private final int[] listIndex = new int[128];
+
+    /*
+     * Undo stack for unmakeMove(). Everything makeMove() throws away is packed into one int per move:
+     * 00000000000000001111111122223333, where 1 = en passant square + 1, 2 = castling rights, 3 = captured piece.
+     * The half move clock and the hash key go in their own stacks.
+     */
+    private static final int UNDO_CASTLE_SHIFT = 4;
+    private static final int UNDO_EN_PASSANT_SHIFT = 8;
+    private int[] undoStack;
+    private int[] clockStack;
+    private long[] hashStack;
+    private int undoCount;
+
+    // Scratch space for move generation. A queen sees at most 27 squares, a king 8 plus two castles.
+    private final int[] destinations = new int[32];
+    // Scratch move list for checkMove() and isCheckmate(), allocated on first use
+    private int[] moveBuffer;
+
+    /*
+     * Filled in by findPinsAndChecks() at the start of every generation. pinDelta[square] is the direction from the
+     * king to the pinner for a pinned piece, and 0 for a free one. evasions holds the checker's square and the
+     * squares between it and the king, which are the only places a non-king move can go in single check.
+     */
+    private final int[] pinDelta = new int[128];
+    private final int[] pinnedSquares = new int[8];
+    private int pinnedCount;
+    private final int[] evasions = new int[8];
+    /** staticExchange()'s swap list, and the squares it emptied so it can put their pieces back */
+    private final int[] exchangeGain = new int[34];
+    private final int[] exchangeSquares = new int[34];
+    private final int[] exchangePieces = new int[34];
+    private int evasionCount;
+    private int checkCount;
+
     public PositionImpl() {
         matrix = new int[128];
         for (int x = 0; x < 128; x++) {
@@ -37,6 +89,10 @@ public class PositionImpl implements Position {
         enPassantSquare = -1;
         whiteKing = -1;
         blackKing = -1;
+        undoStack = new int[128];
+        clockStack = new int[128];
+        hashStack = new long[128];
+        undoCount = 0;
 
         whiteCastleShort = false;
         whiteCastleLong = false;
@@ -61,102 +117,312 @@ public class PositionImpl implements Position {
 
     @Override
     public List<Integer> getPossibleMoves() {
-        List<Integer> resultList = new ArrayList<Integer>();
-        for (int i = 0; i < 128; i++) {
-            if ((i & 0x88) == 0) {
-                int piece = matrix[i];
-                if (piece != 0) {
-                    if (sideToMove == 1) {
-                        if (!checkTeamBit(piece)) {
-                            resultList.addAll(generateLegalMoves(i));
-                        }
-                    } else {
-                        if (checkTeamBit(piece)) {
-                            resultList.addAll(generateLegalMoves(i));
-                        }
-                    }
-                }
-            }
-        }
+        int[] moves = new int[MAX_LEGAL_MOVES];
+        int count = generateMoves(moves, 0);
         // If the move ordering bits were the first six, the following line would make no sense. But since the move ordering values
         // are stored in the greatest (leftmost) 6 bits of the move integer, the move with the highest move ordering score will also
         // happen to be a greater integer (who cares about the first 26 bits?) than any other move with a lower score.
-        Collections.sort(resultList);
-        return resultList;
+        Arrays.sort(moves, 0, count);
+        return toList(moves, count);
     }
 
     @Override
     public List<Integer> getCaptureMoves() {
-        List<Integer> resultList = new ArrayList<Integer>();
-        for (int i = 0; i < 128; i++) {
-            if ((i & 0x88) == 0) {
-                int piece = matrix[i];
-                if (piece != 0) {
-                    if (sideToMove == 1) {
-                        if (!checkTeamBit(piece)) {
-                            resultList.addAll(generateCaptureMoves(i));
-                        }
-                    } else {
-                        if (checkTeamBit(piece)) {
-                            resultList.addAll(generateCaptureMoves(i));
-                        }
+        int[] moves = new int[MAX_LEGAL_MOVES];
+        int count = generateCaptures(moves, 0);
+        Arrays.sort(moves, 0, count);
+        return toList(moves, count);
+    }
+
+    private static List<Integer> toList(int[] moves, int count) {
+        List<Integer> resultList = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; i++) {
+            resultList.add(moves[i]);
+        }
+        return resultList;
+    }
+
+    @Override
+    public int generateMoves(int[] buffer, int offset) {
+        return generate(buffer, offset, true, true) - offset;
+    }
+
+    @Override
+    public int generateCaptures(int[] buffer, int offset) {
+        return generate(buffer, offset, true, false) - offset;
+    }
+
+    @Override
+    public int generateQuiets(int[] buffer, int offset) {
+        return generate(buffer, offset, false, true) - offset;
+    }
+
+    @Override
+    public boolean isLegalMove(int move) {
+        int start = BitMove.getFromIndex(move);
+        int piece = matrix[start];
+        if (piece == EMPTY || piece != BitMove.getFromPiece(move) || checkTeamBit(piece) != (sideToMove != WHITE_TEAM)) {
+            return false;
+        }
+        // Only the moving piece's moves have to be generated
+        int side = sideToMove == WHITE_TEAM ? 0 : 1;
+        int king = side == 0 ? whiteKing : blackKing;
+        findPinsAndChecks(king, side);
+        int[] moves = moveBuffer();
+        int count = 0;
+        if (start == king) {
+            count = generateKingMoves(start, moves, 0, true, true);
+        } else if (checkCount < 2) {
+            count = generateLegalMoves(start, king, moves, 0, true, true);
+        }
+        clearPins();
+        move = BitMove.stripOrdering(move);
+        for (int i = 0; i < count; i++) {
+            if (BitMove.stripOrdering(moves[i]) == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Generates the legal captures, the legal quiet moves, or both. A move counts as a capture if its to-piece isn't
+     * EMPTY, which leaves en passant (and promotions, which never carry a to-piece) with the quiet moves.
+     */
+    private int generate(int[] buffer, int count, boolean captures, boolean quiets) {
+        int side = sideToMove == WHITE_TEAM ? 0 : 1;
+        int king = side == 0 ? whiteKing : blackKing;
+        findPinsAndChecks(king, side);
+        int[] squares = pieceList[side];
+        for (int n = 0; n < pieceCount[side]; n++) {
+            int start = squares[n];
+            if (start == king) {
+                count = generateKingMoves(start, buffer, count, captures, quiets);
+            } else if (checkCount < 2) {
+                // In double check only the king can move
+                count = generateLegalMoves(start, king, buffer, count, captures, quiets);
+            }
+        }
+        clearPins();
+        return count;
+    }
+
+    /**
+     * Unpins everything findPinsAndChecks() pinned, so the next call starts clean.
+     */
+    private void clearPins() {
+        for (int n = 0; n < pinnedCount; n++) {
+            pinDelta[pinnedSquares[n]] = 0;
+        }
+        pinnedCount = 0;
+    }
+
+    /**
+     * Finds the enemy pieces giving check and the friendly pieces pinned to the king, before any moves are generated.
+     * Fills in checkCount, the squares that stop a single check (evasions) and pinDelta, the direction from the
+     * king along which each pinned piece may still move.
+     */
+    private void findPinsAndChecks(int king, int side) {
+        checkCount = 0;
+        evasionCount = 0;
+        pinnedCount = 0;
+        if (king < 0) {
+            return;
+        }
+        int enemy = side ^ 1;
+        // Pawns, only two possible squares
+        int pawn = side == 0 ? BLACK_PAWN : WHITE_PAWN;
+        int forward = side == 0 ? 16 : -16;
+        if (((king + forward - 1) & 0x88) == 0 && matrix[king + forward - 1] == pawn) {
+            addChecker(king + forward - 1);
+        }
+        if (((king + forward + 1) & 0x88) == 0 && matrix[king + forward + 1] == pawn) {
+            addChecker(king + forward + 1);
+        }
+        int[] squares = pieceList[enemy];
+        for (int n = 0; n < pieceCount[enemy]; n++) {
+            int i = squares[n];
+            int pieceAttack = ATTACK_ARRAY[king - i + 128];
+            if (pieceAttack == ATTACK_NONE) {
+                continue;
+            }
+            switch (matrix[i] & 7) {
+                case WHITE_KNIGHT:
+                    if (pieceAttack == ATTACK_N) {
+                        addChecker(i);
+                    }
+                    break;
+                case WHITE_BISHOP:
+                    if (pieceAttack == ATTACK_KQBwP || pieceAttack == ATTACK_KQBbP || pieceAttack == ATTACK_QB) {
+                        traceRay(king, i, side);
+                    }
+                    break;
+                case WHITE_ROOK:
+                    if (pieceAttack == ATTACK_QR || pieceAttack == ATTACK_KQR) {
+                        traceRay(king, i, side);
                     }
+                    break;
+                case WHITE_QUEEN:
+                    if (pieceAttack != ATTACK_N) {
+                        traceRay(king, i, side);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Walks from the king toward a slider that lines up with it. No pieces in between means check, and exactly one
+     * of our own means that piece is pinned.
+     */
+    private void traceRay(int king, int slider, int side) {
+        int delta = DELTA_ARRAY[slider - king + 128];
+        int blocker = -1;
+        for (int i = king + delta; i != slider; i += delta) {
+            if (matrix[i] != 0) {
+                if (blocker >= 0 || matrix[i] >> 3 != side) {
+                    // Two blockers, or one of the slider's own pieces
+                    return;
                 }
+                blocker = i;
             }
         }
-        Collections.sort(resultList);
-        return resultList;
+        if (blocker < 0) {
+            if (addChecker(slider)) {
+                for (int i = king + delta; i != slider; i += delta) {
+                    evasions[evasionCount++] = i;
+                }
+            }
+        } else {
+            pinDelta[blocker] = delta;
+            pinnedSquares[pinnedCount++] = blocker;
+        }
     }
-    private List<Integer> generateCaptureMoves(int start) {
-        List<Integer> possibleDestinations = getPseudoLegalMoves(start);
-        List<Integer> resultList = new ArrayList<Integer>();
-        for (Integer dest : possibleDestinations) {
-            int move = checkMoveInternal(start, dest);
-            if (BitMove.getToPiece(move) != EMPTY) {
-                if (move != -1) {
-                    if ((matrix[start] == WHITE_PAWN) && ((dest >= 112) && (dest <= 119))) {
-                        resultList.add(BitMove.createMove(start, dest, WHITE_PAWN, 0, PROMOTION_KNIGHT, ORDERING_PROMOTION));
-                        resultList.add(BitMove.createMove(start, dest, WHITE_PAWN, 0, PROMOTION_BISHOP, ORDERING_PROMOTION));
-                        resultList.add(BitMove.createMove(start, dest, WHITE_PAWN, 0, PROMOTION_ROOK, ORDERING_PROMOTION));
-                        resultList.add(BitMove.createMove(start, dest, WHITE_PAWN, 0, PROMOTION_QUEEN, ORDERING_PROMOTION));
-                    } else if ((matrix[start] == BLACK_PAWN) && ((dest >= 0) && (dest <= 7))) {
-                        resultList.add(BitMove.createMove(start, dest, BLACK_PAWN, 0, PROMOTION_KNIGHT, ORDERING_PROMOTION));
-                        resultList.add(BitMove.createMove(start, dest, BLACK_PAWN, 0, PROMOTION_BISHOP, ORDERING_PROMOTION));
-                        resultList.add(BitMove.createMove(start, dest, BLACK_PAWN, 0, PROMOTION_ROOK, ORDERING_PROMOTION));
-                        resultList.add(BitMove.createMove(start, dest, BLACK_PAWN, 0, PROMOTION_QUEEN, ORDERING_PROMOTION));
-                    } else {
-                        resultList.add(move);
-                    }
+
+    /**
+     * @return true if this is the only checker so far, so the squares that block it are worth recording
+     */
+    private boolean addChecker(int square) {
+        if (++checkCount > 1) {
+            return false;
+        }
+        evasions[evasionCount++] = square;
+        return true;
+    }
+
+    private boolean isEvasion(int square) {
+        for (int n = 0; n < evasionCount; n++) {
+            if (evasions[n] == square) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Appends the legal moves of the piece on start to the buffer. Uses the pins and checks from findPinsAndChecks(),
+     * so only en passant captures have to be tried on the board.
+     * @return the offset just past the last move written
+     */
+    private int generateLegalMoves(int start, int king, int[] buffer, int count, boolean captures, boolean quiets) {
+        int pin = pinDelta[start];
+        int destinationCount = getPseudoLegalMoves(start, destinations);
+        for (int i = 0; i < destinationCount; i++) {
+            int dest = destinations[i];
+            int move = createMove(start, dest);
+            if (move == -1) {
+                continue;
+            }
+            if (BitMove.getToPiece(move) == EMPTY ? !quiets : !captures) {
+                continue;
+            }
+            if (BitMove.getType(move) == EN_PASSANT) {
+                // Two pawns leave the rank at once, which can uncover an attack no pin would show
+                if (!isLegalEnPassant(start, dest, king)) {
+                    continue;
+                }
+            } else {
+                // A pinned piece has to stay on the line between its king and the pinner
+                if (pin != 0 && DELTA_ARRAY[dest - king + 128] != pin) {
+                    continue;
+                }
+                if (checkCount == 1 && !isEvasion(dest)) {
+                    continue;
                 }
             }
+            count = addMove(start, dest, move, buffer, count);
         }
-        return resultList;
+        return count;
     }
-    private List<Integer> generateLegalMoves(int start) {
-        List<Integer> possibleDestinations = getPseudoLegalMoves(start);
-        List<Integer> resultList = new ArrayList<Integer>();
-        for (Integer dest : possibleDestinations) {
-            int move = checkMoveInternal(start, dest);
-            if (move != -1) {
-                if ((matrix[start] == WHITE_PAWN) && ((dest >= 112) && (dest <= 119))) {
-                    resultList.add(BitMove.createMove(start, dest, WHITE_PAWN, 0, PROMOTION_KNIGHT, ORDERING_PROMOTION));
-                    resultList.add(BitMove.createMove(start, dest, WHITE_PAWN, 0, PROMOTION_BISHOP, ORDERING_PROMOTION));
-                    resultList.add(BitMove.createMove(start, dest, WHITE_PAWN, 0, PROMOTION_ROOK, ORDERING_PROMOTION));
-                    resultList.add(BitMove.createMove(start, dest, WHITE_PAWN, 0, PROMOTION_QUEEN, ORDERING_PROMOTION));
-                } else if ((matrix[start] == BLACK_PAWN) && ((dest >= 0) && (dest <= 7))) {
-                    resultList.add(BitMove.createMove(start, dest, BLACK_PAWN, 0, PROMOTION_KNIGHT, ORDERING_PROMOTION));
-                    resultList.add(BitMove.createMove(start, dest, BLACK_PAWN, 0, PROMOTION_BISHOP, ORDERING_PROMOTION));
-                    resultList.add(BitMove.createMove(start, dest, BLACK_PAWN, 0, PROMOTION_ROOK, ORDERING_PROMOTION));
-                    resultList.add(BitMove.createMove(start, dest, BLACK_PAWN, 0, PROMOTION_QUEEN, ORDERING_PROMOTION));
-                } else {
-                    resultList.add(move);
+
+    private int generateKingMoves(int start, int[] buffer, int count, boolean captures, boolean quiets) {
+        int destinationCount = getPseudoLegalMoves(start, destinations);
+        for (int i = 0; i < destinationCount; i++) {
+            int dest = destinations[i];
+            int move = createMove(start, dest);
+            if (move == -1) {
+                continue;
+            }
+            if (BitMove.getToPiece(move) == EMPTY ? !quiets : !captures) {
+                continue;
+            }
+            int type = BitMove.getType(move);
+            if (type < WHITE_SHORT_CASTLE || type > BLACK_LONG_CASTLE) {
+                // createMove() already checked the castling squares. For the rest, lift the king off the board first,
+                // so a slider checking it also covers the square behind it.
+                int king = matrix[start];
+                matrix[start] = 0;
+                boolean attacked = isAttacked(dest, -sideToMove);
+                matrix[start] = king;
+                if (attacked) {
+                    continue;
                 }
             }
+            buffer[count++] = move;
         }
-        return resultList;
+        return count;
+    }
+
+    private boolean isLegalEnPassant(int start, int dest, int king) {
+        int captured = sideToMove == WHITE_TEAM ? dest - 16 : dest + 16;
+        int pawn = matrix[start];
+        int capturedPawn = matrix[captured];
+        matrix[dest] = pawn;
+        matrix[start] = 0;
+        matrix[captured] = 0;
+        boolean legal = !isAttacked(king, -sideToMove);
+        matrix[captured] = capturedPawn;
+        matrix[start] = pawn;
+        matrix[dest] = 0;
+        return legal;
+    }
+
+    /**
+     * Appends the move, or all four promotions if it's a pawn reaching the last rank.
+     */
+    private int addMove(int start, int dest, int move, int[] buffer, int count) {
+        if ((matrix[start] == WHITE_PAWN) && ((dest >= 112) && (dest <= 119))) {
+            buffer[count++] = BitMove.createMove(start, dest, WHITE_PAWN, 0, PROMOTION_KNIGHT, ORDERING_PROMOTION);
+            buffer[count++] = BitMove.createMove(start, dest, WHITE_PAWN, 0, PROMOTION_BISHOP, ORDERING_PROMOTION);
+            buffer[count++] = BitMove.createMove(start, dest, WHITE_PAWN, 0, PROMOTION_ROOK, ORDERING_PROMOTION);
+            buffer[count++] = BitMove.createMove(start, dest, WHITE_PAWN, 0, PROMOTION_QUEEN, ORDERING_PROMOTION);
+        } else if ((matrix[start] == BLACK_PAWN) && ((dest >= 0) && (dest <= 7))) {
+            buffer[count++] = BitMove.createMove(start, dest, BLACK_PAWN, 0, PROMOTION_KNIGHT, ORDERING_PROMOTION);
+            buffer[count++] = BitMove.createMove(start, dest, BLACK_PAWN, 0, PROMOTION_BISHOP, ORDERING_PROMOTION);
+            buffer[count++] = BitMove.createMove(start, dest, BLACK_PAWN, 0, PROMOTION_ROOK, ORDERING_PROMOTION);
+            buffer[count++] = BitMove.createMove(start, dest, BLACK_PAWN, 0, PROMOTION_QUEEN, ORDERING_PROMOTION);
+        } else {
+            buffer[count++] = move;
+        }
+        return count;
     }
-    private List<Integer> getPseudoLegalMoves(int start) {
-        List<Integer> resultSet = new ArrayList<Integer>();
+
+    /**
+     * Writes every square the piece on start could move to, ignoring checks, into the destinations array.
+     * @return the number of destinations written
+     */
+    private int getPseudoLegalMoves(int start, int[] destinations) {
+        int count = 0;
         int index;
 
         switch (matrix[start]) {
@@ -164,57 +430,57 @@ public class PositionImpl implements Position {
                 if (((start+16) & 0x88) == 0) {
                     // If there's nothing directly in front, add that move
                     if (matrix[start+16] == 0) {
-                        resultSet.add(start + 16);
+                        destinations[count++] = start + 16;
                         // If there's nothing two squares in front, and we are on our starting rank, add that move
                         if ((start >= 16 && start <= 24) &&
                                 matrix[start+32] == 0) {
-                            resultSet.add(start + 32);
+                            destinations[count++] = start + 32;
                         }
                     }
                 }
                 if (((start+15) & 0x88) == 0) {
-                    resultSet.add(start+15);
+                    destinations[count++] = start+15;
                 }
                 if (((start+17) & 0x88) == 0) {
-                    resultSet.add(start+17);
+                    destinations[count++] = start+17;
                 }
-                return resultSet;
+                return count;
             case BLACK_PAWN:
                 if (((start-16) & 0x88) == 0) {
                     if (matrix[start-16] == 0) {
-                        resultSet.add(start-16);
+                        destinations[count++] = start-16;
                         if ((start >= 96 && start <= 103) &&
                                 matrix[start-32] == 0) {
-                            resultSet.add(start-32);
+                            destinations[count++] = start-32;
                         }
                     }
                 }
                 if (((start-15) & 0x88) == 0) {
-                    resultSet.add(start-15);
+                    destinations[count++] = start-15;
                 }
                 if (((start-17) & 0x88) == 0) {
-                    resultSet.add(start-17);
+                    destinations[count++] = start-17;
                 }
-                return resultSet;
+                return count;
             case WHITE_KNIGHT:
                 for (int delta : DELTA_KNIGHT) {
                     if (((start + delta) & 0x88) == 0) {
-                        resultSet.add(start + delta);
+                        destinations[count++] = start + delta;
                     }
                 }
-                return resultSet;
+                return count;
             case BLACK_KNIGHT:
                 for (int delta : DELTA_KNIGHT) {
                     if (((start + delta) & 0x88) == 0) {
-                        resultSet.add(start + delta);
+                        destinations[count++] = start + delta;
                     }
                 }
-                return resultSet;
+                return count;
             case WHITE_BISHOP:
                 for (int delta : DELTA_BISHOP) {
                     index = start + delta;
                     while ((index & 0x88) == 0) {
-                        resultSet.add(index);
+                        destinations[count++] = index;
                         if (matrix[index] != 0) {
                             // Break, we've run into a piece.
                             break;
@@ -222,12 +488,12 @@ public class PositionImpl implements Position {
                         index += delta;
                     }
                 }
-                return resultSet;
+                return count;
             case BLACK_BISHOP:
                 for (int delta : DELTA_BISHOP) {
                     index = start + delta;
                     while ((index & 0x88) == 0) {
-                        resultSet.add(index);
+                        destinations[count++] = index;
                         if (matrix[index] != 0) {
                             // Break, we've run into a piece.
                             break;
@@ -235,12 +501,12 @@ public class PositionImpl implements Position {
                         index += delta;
                     }
                 }
-                return resultSet;
+                return count;
             case WHITE_ROOK:
                 for (int delta : DELTA_ROOK) {
                     index = start + delta;
                     while ((index & 0x88) == 0) {
-                        resultSet.add(index);
+                        destinations[count++] = index;
                         if (matrix[index] != 0) {
                             // Break, we've run into a piece.
                             break;
@@ -248,12 +514,12 @@ public class PositionImpl implements Position {
                         index += delta;
                     }
                 }
-                return resultSet;
+                return count;
             case BLACK_ROOK:
                 for (int delta : DELTA_ROOK) {
                     index = start + delta;
                     while ((index & 0x88) == 0) {
-                        resultSet.add(index);
+                        destinations[count++] = index;
                         if (matrix[index] != 0) {
                             // Break, we've run into a piece.
                             break;
@@ -261,12 +527,12 @@ public class PositionImpl implements Position {
                         index += delta;
                     }
                 }
-                return resultSet;
+                return count;
             case WHITE_QUEEN:
                 for (int delta : DELTA_QUEEN) {
                     index = start + delta;
                     while ((index & 0x88) == 0) {
-                        resultSet.add(index);
+                        destinations[count++] = index;
                         if (matrix[index] != 0) {
                             // Break, we've run into a piece.
                             break;
@@ -274,12 +540,12 @@ public class PositionImpl implements Position {
                         index += delta;
                     }
                 }
-                return resultSet;
+                return count;
             case BLACK_QUEEN:
                 for (int delta : DELTA_QUEEN) {
                     index = start + delta;
                     while ((index & 0x88) == 0) {
-                        resultSet.add(index);
+                        destinations[count++] = index;
                         if (matrix[index] != 0) {
                             // Break, we've run into a piece.
                             break;
@@ -287,25 +553,25 @@ public class PositionImpl implements Position {
                         index += delta;
                     }
                 }
-                return resultSet;
+                return count;
             case WHITE_KING:
                 for (int delta : DELTA_KING) {
                     if (((start + delta) & 0x88) == 0) {
-                        resultSet.add(start + delta);
+                        destinations[count++] = start + delta;
                     }
                 }
-                if (whiteCastleShort) resultSet.add(6);
-                if (whiteCastleLong)resultSet.add(2);
-                return resultSet;
+                if (whiteCastleShort) destinations[count++] = 6;
+                if (whiteCastleLong)destinations[count++] = 2;
+                return count;
             case BLACK_KING:
                 for (int delta : DELTA_KING) {
                     if (((start + delta) & 0x88) == 0) {
-                        resultSet.add(start + delta);
+                        destinations[count++] = start + delta;
                     }
                 }
-                if (blackCastleShort) resultSet.add(118);
-                if (blackCastleLong)resultSet.add(114);
-                return resultSet;
+                if (blackCastleShort) destinations[count++] = 118;
+                if (blackCastleLong)destinations[count++] = 114;
+                return count;
         }
         throw new IllegalArgumentException("Start coordinate must have a piece on it");
     }
@@ -318,6 +584,61 @@ public class PositionImpl implements Position {
      * @return a Move object if legal, null if illegal
      */
     private int checkMoveInternal(int start, int end) {
+        int move = createMove(start, end);
+        if (move == -1) {
+            return -1;
+        }
+        int startPiece = matrix[start];
+        int endPiece = matrix[end];
+        // Check for Pins
+        matrix[end] = matrix[start];
+        matrix[start] = 0;
+        if (sideToMove == WHITE_TEAM) {
+            // The blackKing and whiteKing Coordinates will not be updated... we have to make a separate
+            // sanity check to be sure the king isn't the one moving.
+            if (startPiece == WHITE_KING) {
+                // The piece trying to move happens to be the king.
+                if (isAttacked(end, -sideToMove)) {
+                    // He's trying to move into check. Fix things and return Illegal
+                    matrix[start] = matrix[end];
+                    matrix[end] = endPiece;
+                    return INVALID_MOVE;
+                }
+            } else if (isAttacked(whiteKing, -sideToMove)) {
+                // The piece trying to move is pinned
+                // Fix things, then exit
+                matrix[start] = matrix[end];
+                matrix[end] = endPiece;
+                return INVALID_MOVE;
+            }
+        } else {
+            if (startPiece == BLACK_KING) {
+                // The piece trying to move happens to be the king.
+                if (isAttacked(end, -sideToMove)) {
+                    // He's trying to move into check. Fix things and return Illegal
+                    matrix[start] = matrix[end];
+                    matrix[end] = endPiece;
+                    return INVALID_MOVE;
+                }
+            } else if (isAttacked(blackKing, -sideToMove)) {
+                // The piece trying to move is pinned
+                // Fix things, then exit
+                matrix[start] = matrix[end];
+                matrix[end] = endPiece;
+                return INVALID_MOVE;
+            }
+        }
+        matrix[start] = matrix[end];
+        matrix[end] = endPiece;
+        return move;
+    }
+
+    /**
+     * Builds the move from start to end, with its type and ordering score, without looking at whether it leaves the
+     * king in check. Castling is fully checked here, since its rules are all about attacked squares.
+     * @return The move, or -1 if it can't be played even ignoring checks
+     */
+    private int createMove(int start, int end) {
         int type = ORDINARY;
         int startPiece = matrix[start];
         int endPiece = matrix[end];
@@ -333,11 +654,12 @@ public class PositionImpl implements Position {
             }
         }
         // En Passant and Pawn Capture Garbage
+        // (A null move leaves the en passant square behind for the wrong side, so make sure there's a pawn to take)
         switch (startPiece) {
             case WHITE_PAWN:
                 if (end == start+15) {
                     if (matrix[end] == 0) {
-                        if (end == enPassantSquare) {
+                        if (end == enPassantSquare && matrix[end - 16] == BLACK_PAWN) {
                             type = EN_PASSANT;
                         } else {
                             return -1;
@@ -346,7 +668,7 @@ public class PositionImpl implements Position {
                 }
                 if (end == start+17) {
                     if (endPiece == 0) {
-                        if (end == enPassantSquare) {
+                        if (end == enPassantSquare && matrix[end - 16] == BLACK_PAWN) {
                             type = EN_PASSANT;
                         } else {
                             return -1;
@@ -357,7 +679,7 @@ public class PositionImpl implements Position {
             case BLACK_PAWN:
                 if (end == start-15) {
                     if (matrix[end] == 0) {
-                        if (end == enPassantSquare) {
+                        if (end == enPassantSquare && matrix[end + 16] == WHITE_PAWN) {
                             type = EN_PASSANT;
                         } else {
                             return -1;
@@ -366,7 +688,7 @@ public class PositionImpl implements Position {
                 }
                 if (end == start-17) {
                     if (endPiece == 0) {
-                        if (end == enPassantSquare) {
+                        if (end == enPassantSquare && matrix[end + 16] == WHITE_PAWN) {
                             type = EN_PASSANT;
                         } else {
                             return -1;
@@ -453,79 +775,131 @@ public class PositionImpl implements Position {
         if (endPiece != 0) {
             ordering += 32;
         }
-        // Check for Pins
-        matrix[end] = matrix[start];
-        matrix[start] = 0;
-        if (sideToMove == WHITE_TEAM) {
-            // The blackKing and whiteKing Coordinates will not be updated... we have to make a separate
-            // sanity check to be sure the king isn't the one moving.
-            if (startPiece == WHITE_KING) {
-                // The piece trying to move happens to be the king.
-                if (isAttacked(end, -sideToMove)) {
-                    // He's trying to move into check. Fix things and return Illegal
-                    matrix[start] = matrix[end];
-                    matrix[end] = endPiece;
-                    return INVALID_MOVE;
-                }
-            } else if (isAttacked(whiteKing, -sideToMove)) {
-                // The piece trying to move is pinned
-                // Fix things, then exit
-                matrix[start] = matrix[end];
-                matrix[end] = endPiece;
-                return INVALID_MOVE;
-            }
-        } else {
-            if (startPiece == BLACK_KING) {
-                // The piece trying to move happens to be the king.
-                if (isAttacked(end, -sideToMove)) {
-                    // He's trying to move into check. Fix things and return Illegal
-                    matrix[start] = matrix[end];
-                    matrix[end] = endPiece;
-                    return INVALID_MOVE;
-                }
-            } else if (isAttacked(blackKing, -sideToMove)) {
-                // The piece trying to move is pinned
-                // Fix things, then exit
-                matrix[start] = matrix[end];
-                matrix[end] = endPiece;
-                return INVALID_MOVE;
-            }
-        }
-        matrix[start] = matrix[end];
-        matrix[end] = endPiece;
         return BitMove.createMove(start, end, startPiece, endPiece, type, ordering);
     }
     public void makeMove(Move move) {
         makeMove(BitMove.createMove(move.start, move.end, move.startPiece, move.endPiece, move.type, move.ordering));
     }
 
+    /**
+     * Two positions are equal when their Zobrist keys are: same pieces on the same squares, same side to move,
+     * same castling rights and en passant square. The move counters don't count.
+     */
     @Override
     public boolean equals(Object that) {
         if (that instanceof Position) {
-            if (((Position) that).writeToFEN().contentEquals(this.writeToFEN())) {
-                return true;
-            }
+            return ((Position) that).getHashKey() == hashKey;
         }
         return false;
     }
 
+    @Override
+    public int hashCode() {
+        return (int) (hashKey ^ (hashKey >>> 32));
+    }
+
+    @Override
+    public int getMidgameScore() {
+        return midgameScore;
+    }
+
+    @Override
+    public int getEndgameScore() {
+        return endgameScore;
+    }
+
+    @Override
+    public int getPhase() {
+        return phase;
+    }
+
+    @Override
+    public void setPieceObserver(PieceObserver observer) {
+        pieceObserver = observer;
+    }
+
+    @Override
+    public PieceObserver getPieceObserver() {
+        return pieceObserver;
+    }
+
+    @Override
+    public long getPawnKey() {
+        return pawnKey;
+    }
+
+    @Override
+    public int getKingSquare(int team) {
+        return team == WHITE_TEAM ? whiteKing : blackKing;
+    }
+
+    @Override
+    public long getHashKey() {
+        return hashKey;
+    }
+
+    /**
+     * Builds the Zobrist key from scratch. makeMove() keeps it up to date incrementally after that.
+     */
+    private long computeHashKey() {
+        long key = 0;
+        for (int i = 0; i < 128; i++) {
+            if ((i & 0x88) == 0 && matrix[i] != EMPTY) {
+                key ^= Zobrist.PIECE_SQUARE[matrix[i]][i];
+            }
+        }
+        key ^= Zobrist.CASTLING[castlingBits()];
+        if (enPassantSquare != -1) {
+            key ^= Zobrist.EN_PASSANT[enPassantSquare & 7];
+        }
+        if (sideToMove == BLACK_TEAM) {
+            key ^= Zobrist.SIDE;
+        }
+        return key;
+    }
+
     /**
      * Makes the specified move and toggles the side to move. Does not check legality.
      * @param move the *legal* move to make
      */
     @Override
     public void makeMove(int move) {
-
-        // Reset enPassant square
-        enPassantSquare = -1;
         int fromIndex = BitMove.getFromIndex(move);
         int toIndex = BitMove.getToIndex(move);
         // Save the start piece so EnPassant logic can check it
         int startPiece = matrix[fromIndex];
+        int captured = matrix[toIndex];
+
+        // Remember everything we can't recompute in unmakeMove()
+        if (undoCount == undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, undoCount * 2);
+            clockStack = Arrays.copyOf(clockStack, undoCount * 2);
+            hashStack = Arrays.copyOf(hashStack, undoCount * 2);
+        }
+        undoStack[undoCount] = captured | (castlingBits() << UNDO_CASTLE_SHIFT) | ((enPassantSquare + 1) << UNDO_EN_PASSANT_SHIFT);
+        clockStack[undoCount] = halfMoveClock;
+        hashStack[undoCount] = hashKey;
+        undoCount++;
+        // The fifty move rule counter starts over after any capture or pawn move
+        if (captured != EMPTY || startPiece == WHITE_PAWN || startPiece == BLACK_PAWN) {
+            halfMoveClock = 0;
+        } else {
+            halfMoveClock++;
+        }
+
+        // Take the old castling rights and en passant file out of the key; the new ones go back in at the end
+        hashKey ^= Zobrist.CASTLING[castlingBits()];
+        if (enPassantSquare != -1) {
+            hashKey ^= Zobrist.EN_PASSANT[enPassantSquare & 7];
+        }
+        // Reset enPassant square
+        enPassantSquare = -1;
 
         // Actually make the move
-        matrix[toIndex] = matrix[fromIndex];
-        matrix[fromIndex] = 0;
+        if (captured != EMPTY) {
+            removePiece(toIndex);
+        }
+        movePiece(fromIndex, toIndex);
         // Handle special move types
         switch (BitMove.getType(move)) {
             case ORDINARY:
@@ -545,42 +919,41 @@ public class PositionImpl implements Position {
                 }
                 break;
             case EN_PASSANT:
-                // Only one of these squares will be occupied. We can clear them both and save an if() statement.
-                matrix[toIndex + 16] = 0;
-                matrix[toIndex - 16] = 0;
+                // The captured pawn sits right behind the destination square
+                if (startPiece == WHITE_PAWN) {
+                    removePiece(toIndex - 16);
+                } else {
+                    removePiece(toIndex + 16);
+                }
                 break;
             case WHITE_SHORT_CASTLE:
                 // Move the rook from h1 to f1
-                matrix[5] = matrix[7];
-                matrix[7] = 0;
+                movePiece(7, 5);
                 break;
             case WHITE_LONG_CASTLE:
-                matrix[3] = matrix[0];
-                matrix[0] = 0;
+                movePiece(0, 3);
                 break;
             case BLACK_SHORT_CASTLE:
-                matrix[117] = matrix[119];
-                matrix[119] = 0;
+                movePiece(119, 117);
                 break;
             case BLACK_LONG_CASTLE:
-                matrix[115] = matrix[112];
-                matrix[112] = 0;
+                movePiece(112, 115);
                 break;
             case PROMOTION_QUEEN:
-                if (startPiece == WHITE_PAWN) matrix[toIndex] = WHITE_QUEEN;
-                else matrix[toIndex] = BLACK_QUEEN;
+                removePiece(toIndex);
+                addPiece(toIndex, startPiece == WHITE_PAWN ? WHITE_QUEEN : BLACK_QUEEN);
                 break;
             case PROMOTION_ROOK:
-                if (startPiece == WHITE_PAWN) matrix[toIndex] = WHITE_ROOK;
-                else matrix[toIndex] = BLACK_ROOK;
+                removePiece(toIndex);
+                addPiece(toIndex, startPiece == WHITE_PAWN ? WHITE_ROOK : BLACK_ROOK);
                 break;
             case PROMOTION_BISHOP:
-                if (startPiece == WHITE_PAWN) matrix[toIndex] = WHITE_BISHOP;
-                else matrix[toIndex] = BLACK_BISHOP;
+                removePiece(toIndex);
+                addPiece(toIndex, startPiece == WHITE_PAWN ? WHITE_BISHOP : BLACK_BISHOP);
                 break;
             case PROMOTION_KNIGHT:
-                if (startPiece == WHITE_PAWN) matrix[toIndex] = WHITE_KNIGHT;
-                else matrix[toIndex] = BLACK_KNIGHT;
+                removePiece(toIndex);
+                addPiece(toIndex, startPiece == WHITE_PAWN ? WHITE_KNIGHT : BLACK_KNIGHT);
                 break;
         }
         switch (startPiece) {
@@ -630,6 +1003,11 @@ public class PositionImpl implements Position {
                 blackCastleShort = false;
                 break;
         }
+        hashKey ^= Zobrist.CASTLING[castlingBits()];
+        if (enPassantSquare != -1) {
+            hashKey ^= Zobrist.EN_PASSANT[enPassantSquare & 7];
+        }
+        hashKey ^= Zobrist.SIDE;
         // Housekeeping
         if (sideToMove == -1) {
             // Every time black moves, increment the full turn count
@@ -639,6 +1017,162 @@ public class PositionImpl implements Position {
         halfMoveCount++;
     }
 
+    @Override
+    public void unmakeMove(int move) {
+        undoCount--;
+        int undo = undoStack[undoCount];
+        int fromIndex = BitMove.getFromIndex(move);
+        int toIndex = BitMove.getToIndex(move);
+        int piece = matrix[toIndex];
+
+        sideToMove *= -1;
+        halfMoveCount--;
+        if (sideToMove == -1) {
+            fullMoveCount--;
+        }
+        switch (BitMove.getType(move)) {
+            case EN_PASSANT:
+                // The captured pawn sat right behind the destination square
+                if (sideToMove == WHITE_TEAM) {
+                    addPiece(toIndex - 16, BLACK_PAWN);
+                } else {
+                    addPiece(toIndex + 16, WHITE_PAWN);
+                }
+                break;
+            case WHITE_SHORT_CASTLE:
+                movePiece(5, 7);
+                break;
+            case WHITE_LONG_CASTLE:
+                movePiece(3, 0);
+                break;
+            case BLACK_SHORT_CASTLE:
+                movePiece(117, 119);
+                break;
+            case BLACK_LONG_CASTLE:
+                movePiece(115, 112);
+                break;
+            case PROMOTION_QUEEN:
+            case PROMOTION_ROOK:
+            case PROMOTION_BISHOP:
+            case PROMOTION_KNIGHT:
+                piece = (sideToMove == WHITE_TEAM) ? WHITE_PAWN : BLACK_PAWN;
+                removePiece(toIndex);
+                addPiece(toIndex, piece);
+                break;
+        }
+        movePiece(toIndex, fromIndex);
+        int captured = undo & 15;
+        if (captured != EMPTY) {
+            addPiece(toIndex, captured);
+        }
+        if (piece == WHITE_KING) {
+            whiteKing = fromIndex;
+        } else if (piece == BLACK_KING) {
+            blackKing = fromIndex;
+        }
+        setCastlingBits((undo >> UNDO_CASTLE_SHIFT) & 15);
+        enPassantSquare = (undo >> UNDO_EN_PASSANT_SHIFT) - 1;
+        halfMoveClock = clockStack[undoCount];
+        hashKey = hashStack[undoCount];
+    }
+
+    /*
+     * Every change to the board in makeMove() and unmakeMove() goes through these three, which keep the piece lists
+     * and the hash key in step with the matrix.
+     */
+    private void addPiece(int index, int piece) {
+        int side = piece >> 3;
+        matrix[index] = piece;
+        listIndex[index] = pieceCount[side];
+        pieceList[side][pieceCount[side]++] = index;
+        hashKey ^= Zobrist.PIECE_SQUARE[piece][index];
+        if ((piece & 7) == WHITE_PAWN) {
+            pawnKey ^= Zobrist.PIECE_SQUARE[piece][index];
+        }
+        midgameScore += PieceSquareTables.MIDGAME[piece][index];
+        endgameScore += PieceSquareTables.ENDGAME[piece][index];
+        phase += PieceSquareTables.PHASE[piece];
+        if (pieceObserver != null) {
+            pieceObserver.pieceAdded(piece, index);
+        }
+    }
+
+    private void removePiece(int index) {
+        int piece = matrix[index];
+        int side = piece >> 3;
+        // Fill the hole with the last piece in the list
+        int last = pieceList[side][--pieceCount[side]];
+        pieceList[side][listIndex[index]] = last;
+        listIndex[last] = listIndex[index];
+        matrix[index] = EMPTY;
+        hashKey ^= Zobrist.PIECE_SQUARE[piece][index];
+        if ((piece & 7) == WHITE_PAWN) {
+            pawnKey ^= Zobrist.PIECE_SQUARE[piece][index];
+        }
+        midgameScore -= PieceSquareTables.MIDGAME[piece][index];
+        endgameScore -= PieceSquareTables.ENDGAME[piece][index];
+        phase -= PieceSquareTables.PHASE[piece];
+        if (pieceObserver != null) {
+            pieceObserver.pieceRemoved(piece, index);
+        }
+    }
+
+    private void movePiece(int from, int to) {
+        int piece = matrix[from];
+        matrix[to] = piece;
+        matrix[from] = EMPTY;
+        pieceList[piece >> 3][listIndex[from]] = to;
+        listIndex[to] = listIndex[from];
+        hashKey ^= Zobrist.PIECE_SQUARE[piece][from] ^ Zobrist.PIECE_SQUARE[piece][to];
+        if ((piece & 7) == WHITE_PAWN) {
+            pawnKey ^= Zobrist.PIECE_SQUARE[piece][from] ^ Zobrist.PIECE_SQUARE[piece][to];
+        }
+        midgameScore += PieceSquareTables.MIDGAME[piece][to] - PieceSquareTables.MIDGAME[piece][from];
+        endgameScore += PieceSquareTables.ENDGAME[piece][to] - PieceSquareTables.ENDGAME[piece][from];
+        if (pieceObserver != null) {
+            pieceObserver.pieceRemoved(piece, from);
+            pieceObserver.pieceAdded(piece, to);
+        }
+    }
+
+    /**
+     * Builds the piece lists, the pawn key and the piece-square totals from the matrix. For positions that were set up
+     * square by square, like a FEN.
+     */
+    private void buildPieceLists() {
+        pieceCount[0] = 0;
+        pieceCount[1] = 0;
+        pawnKey = 0;
+        midgameScore = 0;
+        endgameScore = 0;
+        phase = 0;
+        for (int i = 0; i < 128; i++) {
+            if ((i & 0x88) == 0 && matrix[i] != EMPTY) {
+                int piece = matrix[i];
+                int side = piece >> 3;
+                listIndex[i] = pieceCount[side];
+                pieceList[side][pieceCount[side]++] = i;
+                midgameScore += PieceSquareTables.MIDGAME[piece][i];
+                endgameScore += PieceSquareTables.ENDGAME[piece][i];
+                phase += PieceSquareTables.PHASE[piece];
+                if ((piece & 7) == WHITE_PAWN) {
+                    pawnKey ^= Zobrist.PIECE_SQUARE[piece][i];
+                }
+            }
+        }
+    }
+
+    private int castlingBits() {
+        return (whiteCastleShort ? 1 : 0) | (whiteCastleLong ? 2 : 0) | (blackCastleShort ? 4 : 0) | (blackCastleLong ? 8 : 0);
+    }
+
+    private void setCastlingBits(int bits) {
+        whiteCastleShort = (bits & 1) != 0;
+        whiteCastleLong = (bits & 2) != 0;
+        blackCastleShort = (bits & 4) != 0;
+        blackCastleLong = (bits & 8) != 0;
+    }
+
     @Override
     public int getPiece(int index) {
         return matrix[index];
@@ -650,9 +1184,11 @@ public class PositionImpl implements Position {
      * move was determined illegal, or a bitmove (just a primitive int) if the move was legal.
      */
     public int checkMove(int start, int end) {
-        List<Integer> possibleMoves = getPossibleMoves();
+        int[] possibleMoves = moveBuffer();
+        int count = generateMoves(possibleMoves, 0);
         boolean foundAMatch = false;
-        for (int i : possibleMoves) {
+        for (int n = 0; n < count; n++) {
+            int i = possibleMoves[n];
             if ((BitMove.getFromIndex(i) == start &&
                     BitMove.getToIndex(i) == end)) {
                 foundAMatch = true;
@@ -689,7 +1225,14 @@ public class PositionImpl implements Position {
     @Override
     public boolean isCheckmate() {
         // TODO I foresee this method being a major timesink. Optimize it.
-        return inCheck() && getPossibleMoves().isEmpty();
+        return inCheck() && generateMoves(moveBuffer(), 0) == 0;
+    }
+
+    private int[] moveBuffer() {
+        if (moveBuffer == null) {
+            moveBuffer = new int[MAX_LEGAL_MOVES];
+        }
+        return moveBuffer;
     }
 
     /**
@@ -700,10 +1243,10 @@ public class PositionImpl implements Position {
      * @return boolean True it can be attacked, false it can't
      */
     public final boolean isAttacked(int attacked, int sideToMove) {
-        int pieceAttack;
-        // White's turn
+        int side;
+        // Pawns, only two possible squares
         if (sideToMove == 1) {
-            // Pawns, only two possible squares
+            side = 0;
             if (((attacked - 17) & 0x88) == 0
                     && matrix[attacked - 17] == WHITE_PAWN) {
                 return true;
@@ -712,51 +1255,8 @@ public class PositionImpl implements Position {
                     && matrix[attacked - 15] == WHITE_PAWN) {
                 return true;
             }
-
-            for (int i = 0; i < 128; i++) {
-                if ((i & 0x88) == 0) {
-                    if (matrix[i] != 0) {
-                        if (matrix[i] == WHITE_KNIGHT) {
-                            if (ATTACK_ARRAY[attacked - i + 128] == ATTACK_N) {
-                                return true;
-                            }
-                        }
-                        if (matrix[i] == WHITE_BISHOP) {
-                            pieceAttack = ATTACK_ARRAY[attacked - i + 128];
-                            if (pieceAttack == ATTACK_KQBwP || pieceAttack == ATTACK_KQBbP
-                                    || pieceAttack == ATTACK_QB) {
-                                if (traverseDelta(i, attacked)) {
-                                    return true;
-                                }
-                            }
-                        }
-                        if (matrix[i] == WHITE_ROOK) {
-                            pieceAttack = ATTACK_ARRAY[attacked - i + 128];
-                            if (pieceAttack == ATTACK_QR || pieceAttack == ATTACK_KQR) {
-                                if (traverseDelta(i, attacked)) {
-                                    return true;
-                                }
-                            }
-                        }
-                        if (matrix[i] == WHITE_QUEEN) {
-                            pieceAttack = ATTACK_ARRAY[attacked - i + 128];
-                            if (pieceAttack != ATTACK_NONE && pieceAttack != ATTACK_N) {
-                                if (traverseDelta(i, attacked)) {
-                                    return true;
-                                }
-                            }
-                        }
-                        if (matrix[i] == WHITE_KING) {
-                            pieceAttack = ATTACK_ARRAY[attacked - i + 128];
-                            if (pieceAttack == ATTACK_KQBwP || pieceAttack == ATTACK_KQBbP
-                                    || pieceAttack == ATTACK_KQR) {
-                                return true;
-                            }
-                        }
-                    }
-                }
-            }
         } else {
+            side = 1;
             if (((attacked + 17) & 0x88) == 0
                     && matrix[attacked + 17] == BLACK_PAWN) {
                 return true;
@@ -765,52 +1265,59 @@ public class PositionImpl implements Position {
                     && matrix[attacked + 15] == BLACK_PAWN) {
                 return true;
             }
+        }
 
-            for (int i = 0; i < 128; i++) {
-                if ((i & 0x88) == 0) {
-                    if (matrix[i] != 0) {
-                        if (matrix[i] == BLACK_KNIGHT) {
-                            if (ATTACK_ARRAY[attacked - i + 128] == ATTACK_N) {
-                                return true;
-                            }
-                        }
-                        if (matrix[i] == BLACK_BISHOP) {
-                            pieceAttack = ATTACK_ARRAY[attacked - i + 128];
-                            if (pieceAttack == ATTACK_KQBwP || pieceAttack == ATTACK_KQBbP
-                                    || pieceAttack == ATTACK_QB) {
-                                if (traverseDelta(i, attacked)) {
-                                    return true;
-                                }
-                            }
-                        }
-                        if (matrix[i] == BLACK_ROOK) {
-                            pieceAttack = ATTACK_ARRAY[attacked - i + 128];
-                            if (pieceAttack == ATTACK_QR || pieceAttack == ATTACK_KQR) {
-                                if (traverseDelta(i, attacked)) {
-                                    return true;
-                                }
-                            }
+        // Only look at the squares the attacker's pieces are on
+        int[] squares = pieceList[side];
+        for (int n = pieceCount[side] - 1; n >= 0; n--) {
+            int i = squares[n];
+            int piece = matrix[i];
+            // checkMoveInternal() moves pieces around the matrix without telling the lists, so a square in the list
+            // can briefly hold one of the defender's pieces
+            if (piece >> 3 != side) {
+                continue;
+            }
+            int pieceAttack = ATTACK_ARRAY[attacked - i + 128];
+            if (pieceAttack == ATTACK_NONE) {
+                continue;
+            }
+            switch (piece & 7) {
+                case WHITE_KNIGHT:
+                    if (pieceAttack == ATTACK_N) {
+                        return true;
+                    }
+                    break;
+                case WHITE_BISHOP:
+                    if (pieceAttack == ATTACK_KQBwP || pieceAttack == ATTACK_KQBbP
+                            || pieceAttack == ATTACK_QB) {
+                        if (traverseDelta(i, attacked)) {
+                            return true;
                         }
-                        if (matrix[i] == BLACK_QUEEN) {
-                            pieceAttack = ATTACK_ARRAY[attacked - i + 128];
-                            if (pieceAttack != ATTACK_NONE && pieceAttack != ATTACK_N) {
-                                if (traverseDelta(i, attacked)) {
-                                    return true;
-                                }
-                            }
+                    }
+                    break;
+                case WHITE_ROOK:
+                    if (pieceAttack == ATTACK_QR || pieceAttack == ATTACK_KQR) {
+                        if (traverseDelta(i, attacked)) {
+                            return true;
                         }
-                        if (matrix[i] == BLACK_KING) {
-                            pieceAttack = ATTACK_ARRAY[attacked - i + 128];
-                            if (pieceAttack == ATTACK_KQBwP || pieceAttack == ATTACK_KQBbP
-                                    || pieceAttack == ATTACK_KQR) {
-                                return true;
-                            }
+                    }
+                    break;
+                case WHITE_QUEEN:
+                    if (pieceAttack != ATTACK_N) {
+                        if (traverseDelta(i, attacked)) {
+                            return true;
                         }
                     }
-                }
+                    break;
+                case WHITE_KING:
+                    if (pieceAttack == ATTACK_KQBwP || pieceAttack == ATTACK_KQBbP
+                            || pieceAttack == ATTACK_KQR) {
+                        return true;
+                    }
+                    break;
             }
         }
-        return false; // If the loops didn't return true, no piece can attack
+        return false; // If the loop didn't return true, no piece can attack
         // the square
     } // END isAttacked()
 
@@ -845,13 +1352,185 @@ public class PositionImpl implements Position {
     }
     @Override
     public void makeNullMove() {
+        if (undoCount == undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, undoCount * 2);
+            clockStack = Arrays.copyOf(clockStack, undoCount * 2);
+            hashStack = Arrays.copyOf(hashStack, undoCount * 2);
+        }
+        undoStack[undoCount] = (castlingBits() << UNDO_CASTLE_SHIFT) | ((enPassantSquare + 1) << UNDO_EN_PASSANT_SHIFT);
+        clockStack[undoCount] = halfMoveClock;
+        hashStack[undoCount] = hashKey;
+        undoCount++;
+        // Passing gives up the right to take en passant
+        if (enPassantSquare != -1) {
+            hashKey ^= Zobrist.EN_PASSANT[enPassantSquare & 7];
+            enPassantSquare = -1;
+        }
+        // Nothing before a null move counts for repetitions after it
+        halfMoveClock = 0;
         sideToMove *= -1;
+        hashKey ^= Zobrist.SIDE;
+    }
+
+    @Override
+    public void unmakeNullMove() {
+        undoCount--;
+        enPassantSquare = (undoStack[undoCount] >> UNDO_EN_PASSANT_SHIFT) - 1;
+        halfMoveClock = clockStack[undoCount];
+        hashKey = hashStack[undoCount];
+        sideToMove *= -1;
+    }
+
+    @Override
+    public boolean isRepetition() {
+        // Only positions since the last capture, pawn move or null move can come back. Every other ply has the
+        // other side to move, so those are skipped.
+        int limit = Math.min(halfMoveClock, undoCount);
+        for (int i = 4; i <= limit; i += 2) {
+            if (hashStack[undoCount - i] == hashKey) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasNonPawnMaterial(int team) {
+        int side = team == WHITE_TEAM ? 0 : 1;
+        for (int n = 0; n < pieceCount[side]; n++) {
+            int type = matrix[pieceList[side][n]] & 7;
+            if (type != WHITE_PAWN && type != WHITE_KING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int staticExchange(int move) {
+        int start = BitMove.getFromIndex(move);
+        int end = BitMove.getToIndex(move);
+        int type = BitMove.getType(move);
+        int piece = matrix[start];
+        int side = piece >> 3;
+        int cleared = 0;
+
+        int gain = PIECE_VALUES[matrix[end]];
+        // The value of whatever stands on the end square, for the next capture to take
+        int onSquare = PIECE_VALUES[piece];
+        if (type == EN_PASSANT) {
+            int victim = end + (side == 0 ? -16 : 16);
+            gain = VAL_PAWN;
+            exchangeSquares[cleared] = victim;
+            exchangePieces[cleared++] = matrix[victim];
+            matrix[victim] = EMPTY;
+        } else if (type >= PROMOTION_KNIGHT && type <= PROMOTION_QUEEN) {
+            onSquare = PIECE_VALUES[WHITE_KNIGHT + type - PROMOTION_KNIGHT];
+            gain += onSquare - VAL_PAWN;
+        }
+        // Taking the pieces off the matrix as they capture lets the sliders behind them through
+        exchangeSquares[cleared] = start;
+        exchangePieces[cleared++] = piece;
+        matrix[start] = EMPTY;
+
+        exchangeGain[0] = gain;
+        int depth = 0;
+        side ^= 1;
+        while (true) {
+            int attacker = leastValuableAttacker(end, side);
+            if (attacker == -1) {
+                break;
+            }
+            depth++;
+            exchangeGain[depth] = onSquare - exchangeGain[depth - 1];
+            // Neither side can come out ahead by going on
+            if (Math.max(-exchangeGain[depth - 1], exchangeGain[depth]) < 0) {
+                break;
+            }
+            onSquare = PIECE_VALUES[matrix[attacker]];
+            exchangeSquares[cleared] = attacker;
+            exchangePieces[cleared++] = matrix[attacker];
+            matrix[attacker] = EMPTY;
+            side ^= 1;
+        }
+        // Each side stops capturing as soon as going on would lose
+        for (; depth > 0; depth--) {
+            exchangeGain[depth - 1] = -Math.max(-exchangeGain[depth - 1], exchangeGain[depth]);
+        }
+        while (cleared > 0) {
+            cleared--;
+            matrix[exchangeSquares[cleared]] = exchangePieces[cleared];
+        }
+        return exchangeGain[0];
+    }
+
+    /**
+     * Used by staticExchange(). Finds the cheapest piece of side (0 white, 1 black) attacking the square. Between
+     * pieces of the same value, the one on the highest square goes first, which is the order BitboardPosition uses too,
+     * so both backends play out the same exchange.
+     * @return Its square, or -1 if there is none
+     */
+    private int leastValuableAttacker(int attacked, int side) {
+        // Pawns, only two possible squares, and always the cheapest
+        int pawn = side == 0 ? WHITE_PAWN : BLACK_PAWN;
+        int behind = side == 0 ? -16 : 16;
+        if (((attacked + behind + 1) & 0x88) == 0 && matrix[attacked + behind + 1] == pawn) {
+            return attacked + behind + 1;
+        }
+        if (((attacked + behind - 1) & 0x88) == 0 && matrix[attacked + behind - 1] == pawn) {
+            return attacked + behind - 1;
+        }
+
+        int best = -1;
+        int bestValue = Integer.MAX_VALUE;
+        int[] squares = pieceList[side];
+        for (int n = pieceCount[side] - 1; n >= 0; n--) {
+            int i = squares[n];
+            int piece = matrix[i];
+            // Pieces staticExchange() has taken off the matrix are still in the lists
+            if (piece == EMPTY || piece >> 3 != side || PIECE_VALUES[piece] > bestValue
+                    || (PIECE_VALUES[piece] == bestValue && i < best)) {
+                continue;
+            }
+            int pieceAttack = ATTACK_ARRAY[attacked - i + 128];
+            boolean attacks;
+            switch (piece & 7) {
+                case WHITE_KNIGHT:
+                    attacks = pieceAttack == ATTACK_N;
+                    break;
+                case WHITE_BISHOP:
+                    attacks = (pieceAttack == ATTACK_KQBwP || pieceAttack == ATTACK_KQBbP || pieceAttack == ATTACK_QB)
+                            && traverseDelta(i, attacked);
+                    break;
+                case WHITE_ROOK:
+                    attacks = (pieceAttack == ATTACK_QR || pieceAttack == ATTACK_KQR) && traverseDelta(i, attacked);
+                    break;
+                case WHITE_QUEEN:
+                    attacks = pieceAttack != ATTACK_NONE && pieceAttack != ATTACK_N && traverseDelta(i, attacked);
+                    break;
+                case WHITE_KING:
+                    attacks = pieceAttack == ATTACK_KQBwP || pieceAttack == ATTACK_KQBbP || pieceAttack == ATTACK_KQR;
+                    break;
+                default:
+                    attacks = false;
+            }
+            if (attacks) {
+                best = i;
+                bestValue = PIECE_VALUES[piece];
+            }
+        }
+        return best;
     }
 
     @Override
     public Position deepClone() {
         PositionImpl clone = new PositionImpl();
         System.arraycopy(this.matrix, 0, clone.matrix, 0, 128);
+        System.arraycopy(pieceList[0], 0, clone.pieceList[0], 0, pieceCount[0]);
+        System.arraycopy(pieceList[1], 0, clone.pieceList[1], 0, pieceCount[1]);
+        System.arraycopy(listIndex, 0, clone.listIndex, 0, 128);
+        clone.pieceCount[0] = pieceCount[0];
+        clone.pieceCount[1] = pieceCount[1];
         clone.whiteCastleShort = whiteCastleShort;
         clone.whiteCastleLong = whiteCastleLong;
         clone.blackCastleShort = blackCastleShort;
@@ -863,6 +1542,16 @@ public class PositionImpl implements Position {
         clone.sideToMove = sideToMove;
         clone.whiteKing = whiteKing;
         clone.blackKing = blackKing;
+        clone.hashKey = hashKey;
+        clone.pawnKey = pawnKey;
+        clone.midgameScore = midgameScore;
+        clone.endgameScore = endgameScore;
+        clone.phase = phase;
+        // The history goes along, so the clone can still spot repetitions of positions played before it was made
+        clone.undoStack = Arrays.copyOf(undoStack, undoStack.length);
+        clone.clockStack = Arrays.copyOf(clockStack, clockStack.length);
+        clone.hashStack = Arrays.copyOf(hashStack, hashStack.length);
+        clone.undoCount = undoCount;
         return clone;
     }
 
@@ -1167,6 +1856,8 @@ public class PositionImpl implements Position {
                 }
             }
             p.matrix = matrix;
+            p.buildPieceLists();
+            p.hashKey = p.computeHashKey();
             return p;
         }
     }
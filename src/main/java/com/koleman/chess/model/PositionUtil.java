@@ -1,8 +1,13 @@
 package com.koleman.chess.model;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static com.koleman.chess.model.Definitions.MAX_LEGAL_MOVES;
 
 /**
  * Author Koleman Nix
@@ -13,12 +18,35 @@ public final class PositionUtil {
     private PositionUtil() {};
 
     private static final String STARTING_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    /** Parallel perft stops splitting subtrees at this depth and counts the rest on one thread */
+    private static final int SEQUENTIAL_PERFT_DEPTH = 3;
+
+    /**
+     * The board representations a Position can be backed by.
+     */
+    public enum Backend {
+        /** PositionImpl, the original 0x88 board */
+        MAILBOX_0X88,
+        /** BitboardPosition, with magic bitboard move generation */
+        BITBOARD
+    }
 
     public static Position createStartingPosition() {
         return createFromFENString(STARTING_FEN);
     }
 
+    public static Position createStartingPosition(Backend backend) {
+        return createFromFENString(STARTING_FEN, backend);
+    }
+
     public static Position createFromFENString(String fen) {
+        return createFromFENString(fen, Backend.MAILBOX_0X88);
+    }
+
+    public static Position createFromFENString(String fen, Backend backend) {
+        if (backend == Backend.BITBOARD) {
+            return BitboardPosition.FENManager.read(fen);
+        }
         return PositionImpl.FENManager.read(fen);
     }
     public static Position createEmptyPosition() {
@@ -32,55 +60,165 @@ public final class PositionUtil {
      * @return The number of nodes found.
      */
     public static long perft(Position position, int depth) {
-        return miniMaxRoot(position, depth);
+        return perft(position, depth, null);
+    }
+
+    /**
+     * Returns the perft score for the given position, reusing the counts of subtrees already in the table.
+     * @param table Where subtree counts are cached, or null to count everything
+     */
+    public static long perft(Position position, int depth, PerftTable table) {
+        if (depth == 0) {
+            return 1;
+        }
+        return miniMax(position, depth, new int[depth + 1][MAX_LEGAL_MOVES], table);
     }
     /**
      * Basic minimax function that returns not an evaluation but the number of nodes at the given depth.
+     * The last ply is bulk counted: the moves are generated and counted, but never made.
      * @param depth
      * @param position The position to search
+     * @param moveBuffers One move list per remaining depth, so the recursion never allocates
+     * @param table Cache of subtree counts, or null
      * @return a long primitive representing the perft score at that depth.
      */
-    private static long miniMax(Position position, int depth) {
-        long nodes = 0;
+    private static long miniMax(Position position, int depth, int[][] moveBuffers, PerftTable table) {
         if (depth == 0) {
             return 1;
         }
-        List<Integer> moves = position.getPossibleMoves();
-        Position copy;
-        for (Integer move : moves) {
-            copy = position.deepClone();
-            copy.makeMove(move);
-            nodes += miniMax(copy, depth-1);
+        int[] moves = moveBuffers[depth];
+        if (depth == 1) {
+            return position.generateMoves(moves, 0);
+        }
+        long key = 0;
+        if (table != null) {
+            key = position.getHashKey();
+            long cached = table.probe(key, depth);
+            if (cached >= 0) {
+                return cached;
+            }
         }
-        return nodes;
-    }
-    private static long miniMaxRoot(Position position, int depth) {
         long nodes = 0;
-        if (depth == 0) {
-            return 1;
+        int count = position.generateMoves(moves, 0);
+        for (int i = 0; i < count; i++) {
+            position.makeMove(moves[i]);
+            nodes += miniMax(position, depth-1, moveBuffers, table);
+            position.unmakeMove(moves[i]);
         }
-        List<Integer> moves = position.getPossibleMoves();
-        int progress = 0;
-        Position copy;
-        for (Integer move : moves) {
-            progress++;
-            System.out.println("Progress: " + progress + "/" + moves.size());
-            copy = position.deepClone();
-            copy.makeMove(move);
-            nodes += miniMax(copy, depth-1);
+        if (table != null) {
+            table.store(key, depth, nodes);
         }
         return nodes;
     }
     public static Map<String, Long> divide(Position position, int depth) {
         Map<String, Long> map = new HashMap<String, Long>();
+        int[][] moveBuffers = new int[Math.max(depth, 1)][MAX_LEGAL_MOVES];
         List<Integer> moves = position.getPossibleMoves();
-        Position copy;
         for (Integer move : moves) {
-            copy = position.deepClone();
-            copy.makeMove(move);
-            long newOnes = miniMax(copy, depth-1);
+            position.makeMove(move);
+            long newOnes = miniMax(position, depth-1, moveBuffers, null);
+            position.unmakeMove(move);
             map.put(BitMove.getMoveString(move), newOnes);
         }
         return map;
     }
+
+    /**
+     * Returns the perft score for the given position, counted on a fork/join pool. Every subtree above
+     * SEQUENTIAL_PERFT_DEPTH is split into one task per move, each on its own copy of the position.
+     * @param position The position to search. It is left untouched.
+     * @param depth The depth to search it at
+     * @param parallelism The number of threads to count with
+     * @return The number of nodes found, the same as perft(position, depth).
+     */
+    public static long perft(Position position, int depth, int parallelism) {
+        return perft(position, depth, parallelism, null);
+    }
+
+    /**
+     * The parallel perft, with every task sharing one table of subtree counts.
+     * @param table Where subtree counts are cached, or null to count everything
+     */
+    public static long perft(Position position, int depth, int parallelism, PerftTable table) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new PerftTask(position.deepClone(), depth, table));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * divide(), with each root move counted by perft(position, depth - 1, parallelism)'s tasks on one shared pool.
+     */
+    public static Map<String, Long> divide(Position position, int depth, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Integer> moves = position.getPossibleMoves();
+            List<PerftTask> tasks = new ArrayList<PerftTask>();
+            for (Integer move : moves) {
+                Position child = position.deepClone();
+                child.makeMove(move);
+                tasks.add(new PerftTask(child, depth - 1, null));
+            }
+            for (PerftTask task : tasks) {
+                pool.execute(task);
+            }
+            Map<String, Long> map = new HashMap<String, Long>();
+            for (int i = 0; i < moves.size(); i++) {
+                map.put(BitMove.getMoveString(moves.get(i)), tasks.get(i).join());
+            }
+            return map;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Counts the leaves below a position it owns. Above SEQUENTIAL_PERFT_DEPTH it forks a task per move;
+     * below it, it falls back to miniMax().
+     */
+    private static class PerftTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+        private final Position position;
+        private final int depth;
+        private final PerftTable table;
+
+        PerftTask(Position position, int depth, PerftTable table) {
+            this.position = position;
+            this.depth = depth;
+            this.table = table;
+        }
+
+        @Override
+        protected Long compute() {
+            if (depth <= SEQUENTIAL_PERFT_DEPTH) {
+                return miniMax(position, depth, new int[depth + 1][MAX_LEGAL_MOVES], table);
+            }
+            long key = position.getHashKey();
+            if (table != null) {
+                long cached = table.probe(key, depth);
+                if (cached >= 0) {
+                    return cached;
+                }
+            }
+            int[] moves = new int[MAX_LEGAL_MOVES];
+            int count = position.generateMoves(moves, 0);
+            List<PerftTask> tasks = new ArrayList<PerftTask>(count);
+            for (int i = 0; i < count; i++) {
+                Position child = position.deepClone();
+                child.makeMove(moves[i]);
+                tasks.add(new PerftTask(child, depth - 1, table));
+            }
+            invokeAll(tasks);
+            long nodes = 0;
+            for (PerftTask task : tasks) {
+                nodes += task.join();
+            }
+            if (table != null) {
+                table.store(key, depth, nodes);
+            }
+            return nodes;
+        }
+    }
 }
@@ -0,0 +1,59 @@
+package com.koleman.chess.model;
+
+import static com.koleman.chess.model.Definitions.*;
+
+/**
+ * Random keys for Zobrist hashing. A position's hash key is the XOR of the key of every piece on its square,
+ * the castling rights, the en passant file and (if black is to move) the side key. Making a move only has to
+ * XOR out what changed and XOR in what replaced it.
+ * Both Position implementations use these tables, with 0x88 indices, so equal positions get equal keys
+ * no matter which backend holds them.
+ */
+public final class Zobrist {
+
+    private Zobrist() {}
+
+    /** [piece][0x88 index] */
+    public static final long[][] PIECE_SQUARE = new long[15][128];
+    /** [castling bits], where white short = 1, white long = 2, black short = 4 and black long = 8 */
+    public static final long[] CASTLING = new long[16];
+    /** [file of the en passant square] */
+    public static final long[] EN_PASSANT = new long[8];
+    /** XORed in when black is to move */
+    public static final long SIDE;
+
+    private static long seed = 0x2545F4914F6CDD1DL;
+
+    static {
+        int[] pieces = {WHITE_PAWN, WHITE_KNIGHT, WHITE_BISHOP, WHITE_ROOK, WHITE_QUEEN, WHITE_KING,
+                BLACK_PAWN, BLACK_KNIGHT, BLACK_BISHOP, BLACK_ROOK, BLACK_QUEEN, BLACK_KING};
+        for (int piece : pieces) {
+            for (int i = 0; i < 128; i++) {
+                if ((i & 0x88) == 0) {
+                    PIECE_SQUARE[piece][i] = nextRandom();
+                }
+            }
+        }
+        // Each castling right gets its own key, and combinations are the XOR of their parts
+        long[] rights = {nextRandom(), nextRandom(), nextRandom(), nextRandom()};
+        for (int bits = 0; bits < 16; bits++) {
+            for (int right = 0; right < 4; right++) {
+                if ((bits & (1 << right)) != 0) {
+                    CASTLING[bits] ^= rights[right];
+                }
+            }
+        }
+        for (int file = 0; file < 8; file++) {
+            EN_PASSANT[file] = nextRandom();
+        }
+        SIDE = nextRandom();
+    }
+
+    private static long nextRandom() {
+        // xorshift64*, with a fixed seed so keys are the same from run to run
+        seed ^= seed >>> 12;
+        seed ^= seed << 25;
+        seed ^= seed >>> 27;
+        return seed * 2685821657736338717L;
+    }
+}
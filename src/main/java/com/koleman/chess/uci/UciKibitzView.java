@@ -0,0 +1,132 @@
+package com.koleman.chess.uci;
+
+import com.koleman.chess.engine.EngineImpl;
+import com.koleman.chess.engine.KibitzView;
+import com.koleman.chess.model.Move;
+
+/**
+ * Turns the engine's kibitz callbacks into UCI "info" lines. The engine calls these from the search thread.
+ * An info line goes out each time an iteration finishes, since that's when the numbers belong together.
+ */
+class UciKibitzView implements KibitzView {
+    private final UciProtocol protocol;
+    /** The side to move at the root. The engine evaluates from white's side, UCI wants the mover's. */
+    private final int rootTeam;
+    private final long startTime = System.currentTimeMillis();
+    private volatile Move bestMove;
+    private int depth;
+    private int selectiveDepth;
+    private int nodes;
+    private int centipawns;
+    private String pv;
+
+    UciKibitzView(UciProtocol protocol, int rootTeam) {
+        this.protocol = protocol;
+        this.rootTeam = rootTeam;
+    }
+
+    Move getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * Sends what the view knows so far as one info line.
+     */
+    void sendInfo() {
+        long elapsed = System.currentTimeMillis() - startTime;
+        StringBuilder sb = new StringBuilder("info");
+        if (depth > 0) {
+            sb.append(" depth ").append(depth);
+        }
+        if (selectiveDepth > 0) {
+            sb.append(" seldepth ").append(selectiveDepth);
+        }
+        sb.append(" score ").append(formatScore(centipawns));
+        sb.append(" nodes ").append(nodes);
+        sb.append(" time ").append(elapsed);
+        if (elapsed > 0) {
+            sb.append(" nps ").append(nodes * 1000L / elapsed);
+        }
+        if (pv != null) {
+            sb.append(" pv ").append(pv);
+        } else if (bestMove != null) {
+            sb.append(" pv ").append(UciProtocol.toUci(bestMove));
+        }
+        protocol.send(sb.toString());
+    }
+
+    /**
+     * UCI wants mates as "mate" and the number of moves (not plies) to it, negative when the engine is the one
+     * getting mated.
+     */
+    static String formatScore(int centipawns) {
+        int magnitude = Math.abs(centipawns);
+        if (magnitude <= EngineImpl.MATE - EngineImpl.MAX_PLY) {
+            return "cp " + centipawns;
+        }
+        int moves = (EngineImpl.MATE - magnitude + 1) / 2;
+        return "mate " + (centipawns > 0 ? moves : -moves);
+    }
+
+    @Override
+    public void setBestMove(Move em) {
+        if (em != null) {
+            bestMove = em;
+        }
+    }
+
+    @Override
+    public void setPV(String pv) {
+        this.pv = pv;
+    }
+
+    @Override
+    public void setCurrentPly(int ply) {
+        depth = ply;
+        sendInfo();
+    }
+
+    @Override
+    public void setNodesPerSecond(int nKps) {
+        // Worked out from the node count and the clock in sendInfo()
+    }
+
+    @Override
+    public void setNodesSearched(int totalNodes) {
+        nodes = totalNodes;
+    }
+
+    @Override
+    public void setEvaluation(double score) {
+        centipawns = (int) Math.round(score * 100) * rootTeam;
+    }
+
+    @Override
+    public void setProgress(int completed, int possible) {
+    }
+
+    @Override
+    public void setDeepestPly(int ply) {
+        selectiveDepth = ply;
+    }
+
+    @Override
+    public void clearDisplayBoard() {
+    }
+
+    @Override
+    public void clearAll() {
+    }
+
+    @Override
+    public void highlightMove(Move m) {
+    }
+
+    @Override
+    public void clearHighlightedMove() {
+    }
+
+    @Override
+    public void setDisplayBoard(String string) {
+    }
+}
@@ -0,0 +1,343 @@
+package com.koleman.chess.uci;
+
+import com.koleman.chess.engine.CompositeEvaluator;
+import com.koleman.chess.engine.EngineImpl;
+import com.koleman.chess.engine.Evaluator;
+import com.koleman.chess.engine.PawnStructureEvaluator;
+import com.koleman.chess.engine.PawnTable;
+import com.koleman.chess.engine.TimeManager;
+import com.koleman.chess.model.BitMove;
+import com.koleman.chess.model.CoordinateUtility;
+import com.koleman.chess.model.Move;
+import com.koleman.chess.model.Position;
+import com.koleman.chess.model.PositionUtil;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
+
+import static com.koleman.chess.model.Definitions.*;
+
+/**
+ * Speaks the Universal Chess Interface, so pablo can be run by chess GUIs and tournament managers.
+ * Commands are read on the caller's thread. Each "go" starts the search on its own thread, which reports
+ * through a UciKibitzView and prints "bestmove" when it's done, so "stop", "isready" and "quit" are always answered
+ * right away.
+ */
+public class UciProtocol {
+    /** Kept back from every time allotment, for the GUI's overhead */
+    private static final int MOVE_OVERHEAD = 50;
+    private static final int MAX_THREADS = 256;
+    private static final int MAX_HASH_MB = 4096;
+    /** How deep a "go" with no limits searches */
+    private static final int DEFAULT_DEPTH = 4;
+
+    private final BufferedReader in;
+    private final PrintStream out;
+    private final EngineImpl engine;
+    private Position position = PositionUtil.createStartingPosition();
+    private Thread searchThread;
+
+    public UciProtocol(BufferedReader in, PrintStream out) {
+        this.in = in;
+        this.out = out;
+        engine = new EngineImpl();
+        engine.setVerbose(false);
+    }
+
+    /**
+     * Reads and executes commands until "quit" or the end of the input.
+     */
+    public void run() throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (!execute(line)) {
+                return;
+            }
+        }
+        stopSearch();
+    }
+
+    /**
+     * Executes one command.
+     * @return false if the command was "quit"
+     */
+    public boolean execute(String line) {
+        String[] tokens = line.trim().split("\\s+");
+        String command = tokens[0];
+        if (command.equals("uci")) {
+            send("id name pablo");
+            send("id author Koleman Nix");
+            send("option name Hash type spin default " + EngineImpl.DEFAULT_HASH_MB + " min 1 max " + MAX_HASH_MB);
+            send("option name Threads type spin default 1 min 1 max " + MAX_THREADS);
+            send("option name EvalHash type spin default " + EngineImpl.DEFAULT_EVAL_HASH_MB + " min 1 max " + MAX_HASH_MB);
+            // The pruning switches, for strength versus speed matches
+            send("option name NullMovePruning type check default true");
+            send("option name NullMoveVerification type check default true");
+            send("option name LateMoveReductions type check default true");
+            send("option name FutilityPruning type check default true");
+            send("option name ReverseFutilityPruning type check default true");
+            send("uciok");
+        } else if (command.equals("isready")) {
+            send("readyok");
+        } else if (command.equals("ucinewgame")) {
+            stopSearch();
+            engine.getTranspositionTable().clear();
+            position = PositionUtil.createStartingPosition();
+        } else if (command.equals("setoption")) {
+            stopSearch();
+            executeSetOption(tokens);
+        } else if (command.equals("position")) {
+            stopSearch();
+            executePosition(tokens);
+        } else if (command.equals("go")) {
+            stopSearch();
+            executeGo(tokens);
+        } else if (command.equals("stop")) {
+            stopSearch();
+        } else if (command.equals("quit")) {
+            stopSearch();
+            return false;
+        }
+        // Unknown commands are ignored, as the protocol asks
+        return true;
+    }
+
+    /**
+     * Everything goes out through here, since the search thread and the command thread both write.
+     */
+    synchronized void send(String message) {
+        out.println(message);
+        out.flush();
+    }
+
+    private void executeSetOption(String[] tokens) {
+        // setoption name <id> value <x>
+        String name = null;
+        String value = null;
+        for (int i = 1; i < tokens.length - 1; i++) {
+            if (tokens[i].equals("name")) {
+                name = tokens[i + 1];
+            } else if (tokens[i].equals("value")) {
+                value = tokens[i + 1];
+            }
+        }
+        if (name == null || value == null) {
+            return;
+        }
+        try {
+            if (name.equalsIgnoreCase("Hash")) {
+                engine.setHashSize(Math.max(1, Math.min(MAX_HASH_MB, Integer.parseInt(value))));
+            } else if (name.equalsIgnoreCase("EvalHash")) {
+                engine.setEvalCacheSize(Math.max(1, Math.min(MAX_HASH_MB, Integer.parseInt(value))));
+            } else if (name.equalsIgnoreCase("Threads")) {
+                engine.setThreads(Math.max(1, Math.min(MAX_THREADS, Integer.parseInt(value))));
+            } else if (name.equalsIgnoreCase("NullMovePruning")) {
+                engine.getSearchConfig().setNullMovePruning(Boolean.parseBoolean(value));
+            } else if (name.equalsIgnoreCase("NullMoveVerification")) {
+                engine.getSearchConfig().setNullMoveVerification(Boolean.parseBoolean(value));
+            } else if (name.equalsIgnoreCase("LateMoveReductions")) {
+                engine.getSearchConfig().setLateMoveReductions(Boolean.parseBoolean(value));
+            } else if (name.equalsIgnoreCase("FutilityPruning")) {
+                engine.getSearchConfig().setFutilityPruning(Boolean.parseBoolean(value));
+            } else if (name.equalsIgnoreCase("ReverseFutilityPruning")) {
+                engine.getSearchConfig().setReverseFutilityPruning(Boolean.parseBoolean(value));
+            }
+        } catch (NumberFormatException e) {
+            send("info string Invalid value for " + name + ": " + value);
+        }
+    }
+
+    private void executePosition(String[] tokens) {
+        // position [fen <fenstring> | startpos] moves <move1> .... <movei>
+        int i = 1;
+        if (tokens.length > 1 && tokens[1].equals("startpos")) {
+            position = PositionUtil.createStartingPosition();
+            i = 2;
+        } else if (tokens.length > 1 && tokens[1].equals("fen")) {
+            StringBuilder fen = new StringBuilder();
+            i = 2;
+            while (i < tokens.length && !tokens[i].equals("moves")) {
+                fen.append(tokens[i++]).append(' ');
+            }
+            try {
+                position = PositionUtil.createFromFENString(fen.toString().trim());
+            } catch (RuntimeException e) {
+                send("info string Invalid FEN: " + fen.toString().trim());
+                return;
+            }
+        }
+        if (i < tokens.length && tokens[i].equals("moves")) {
+            for (i++; i < tokens.length; i++) {
+                int move = parseMove(position, tokens[i]);
+                if (move == INVALID_MOVE) {
+                    send("info string Illegal move: " + tokens[i]);
+                    return;
+                }
+                position.makeMove(move);
+            }
+        }
+    }
+
+    private void executeGo(String[] tokens) {
+        int depth = -1;
+        int moveTime = -1;
+        int whiteTime = -1, blackTime = -1, whiteIncrement = 0, blackIncrement = 0;
+        int movesToGo = 0;
+        boolean infinite = false;
+        for (int i = 1; i < tokens.length; i++) {
+            String token = tokens[i];
+            if (token.equals("infinite")) {
+                infinite = true;
+            } else if (i + 1 < tokens.length) {
+                int value;
+                try {
+                    value = Integer.parseInt(tokens[i + 1]);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (token.equals("depth")) depth = value;
+                else if (token.equals("movetime")) moveTime = value;
+                else if (token.equals("wtime")) whiteTime = value;
+                else if (token.equals("btime")) blackTime = value;
+                else if (token.equals("winc")) whiteIncrement = value;
+                else if (token.equals("binc")) blackIncrement = value;
+                else if (token.equals("movestogo") && value > 0) movesToGo = value;
+                else continue;
+                i++;
+            }
+        }
+        int timeLeft = position.getTeamToMove() == WHITE_TEAM ? whiteTime : blackTime;
+        int increment = position.getTeamToMove() == WHITE_TEAM ? whiteIncrement : blackIncrement;
+        TimeManager time = null;
+        if (moveTime >= 0) {
+            time = TimeManager.forMoveTime(Math.max(moveTime - MOVE_OVERHEAD, 1));
+        } else if (timeLeft >= 0) {
+            time = TimeManager.forClock(timeLeft, Math.max(increment, 0), movesToGo, MOVE_OVERHEAD);
+        }
+        startSearch(position.deepClone(), depth, time, infinite);
+    }
+
+    /**
+     * @param time The search's time limits, or null if it isn't timed
+     */
+    private void startSearch(final Position root, final int depth, final TimeManager time, final boolean infinite) {
+        final UciKibitzView view = new UciKibitzView(this, root.getTeamToMove());
+        engine.setKibitzView(view);
+        engine.setPosition(root);
+        searchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Move best = null;
+                try {
+                    if (infinite) {
+                        engine.computeMoveIndefinitely();
+                    } else if (time != null && depth < 0) {
+                        best = engine.computeMoveTimed(time);
+                    } else {
+                        best = engine.computeMoveAtDepth(depth > 0 ? depth : DEFAULT_DEPTH);
+                    }
+                } catch (InterruptedException e) {
+                    // Stopped. Whatever the view has seen is the answer.
+                }
+                if (best == null) {
+                    best = view.getBestMove();
+                }
+                view.sendInfo();
+                sendHitRates();
+                send("bestmove " + (best == null ? fallbackMove(root) : toUci(best)));
+            }
+        }, "UCI Search");
+        searchThread.start();
+    }
+
+    /**
+     * Reports how well the engine's caches are doing, the pawn table's too if the evaluator has one.
+     */
+    private void sendHitRates() {
+        StringBuilder sb = new StringBuilder("info string");
+        sb.append(String.format(Locale.ROOT, " hash hits %.1f%%", engine.getTranspositionTable().getHitRate() * 100));
+        sb.append(String.format(Locale.ROOT, " eval hash hits %.1f%%", engine.getEvalCache().getHitRate() * 100));
+        Evaluator evaluator = engine.getEvaluator();
+        if (evaluator instanceof CompositeEvaluator) {
+            CompositeEvaluator composite = (CompositeEvaluator) evaluator;
+            for (int i = 0; i < composite.getTermCount(); i++) {
+                if (composite.getTerm(i) instanceof PawnStructureEvaluator) {
+                    PawnTable table = ((PawnStructureEvaluator) composite.getTerm(i)).getPawnTable();
+                    sb.append(String.format(Locale.ROOT, " pawn hash hits %.1f%%", table.getHitRate() * 100));
+                }
+            }
+        }
+        send(sb.toString());
+    }
+
+    /**
+     * Stops the running search, if there is one, and waits for it to print its best move.
+     */
+    private void stopSearch() {
+        if (searchThread == null) {
+            return;
+        }
+        try {
+            while (searchThread.isAlive()) {
+                // Ask again until it's gone, in case the search hadn't started listening yet
+                engine.stopCalculating();
+                searchThread.interrupt();
+                searchThread.join(50);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        searchThread = null;
+    }
+
+    /**
+     * Used when the search was stopped before it found anything: any legal move beats no move.
+     */
+    private static String fallbackMove(Position root) {
+        List<Integer> moves = root.getPossibleMoves();
+        return moves.isEmpty() ? "0000" : toUci(BitMove.getMoveObject(moves.get(0)));
+    }
+
+    /**
+     * Finds the legal move written in long algebraic notation, such as "e2e4" or "e7e8q".
+     * @return The move, or INVALID_MOVE if it isn't legal in the position
+     */
+    static int parseMove(Position position, String text) {
+        if (text.length() < 4) {
+            return INVALID_MOVE;
+        }
+        int from = CoordinateUtility.convertSANTo0x88(text.substring(0, 2));
+        int to = CoordinateUtility.convertSANTo0x88(text.substring(2, 4));
+        int promotion = text.length() > 4 ? promotionType(text.charAt(4)) : 0;
+        for (int move : position.getPossibleMoves()) {
+            if (BitMove.getFromIndex(move) == from && BitMove.getToIndex(move) == to) {
+                int type = BitMove.getType(move);
+                boolean isPromotion = type >= PROMOTION_KNIGHT && type <= PROMOTION_QUEEN;
+                if (!isPromotion || type == promotion) {
+                    return move;
+                }
+            }
+        }
+        return INVALID_MOVE;
+    }
+
+    /**
+     * Writes a move the way UCI wants it: from square, to square and the promotion piece, if any.
+     */
+    static String toUci(Move move) {
+        return move.toLongAlgebraic();
+    }
+
+    private static int promotionType(char piece) {
+        switch (Character.toLowerCase(piece)) {
+            case 'q': return PROMOTION_QUEEN;
+            case 'r': return PROMOTION_ROOK;
+            case 'b': return PROMOTION_BISHOP;
+            case 'n': return PROMOTION_KNIGHT;
+            default: return 0;
+        }
+    }
+}
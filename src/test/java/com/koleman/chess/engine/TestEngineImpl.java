@@ -1,10 +1,17 @@
 package com.koleman.chess.engine;
 
+import com.koleman.chess.model.CoordinateUtility;
 import com.koleman.chess.model.Move;
+import com.koleman.chess.model.Position;
 import com.koleman.chess.model.PositionUtil;
 import junit.framework.TestCase;
 import org.junit.Test;
 
+import java.util.List;
+
+import static com.koleman.chess.model.Definitions.*;
+import static com.koleman.chess.model.TestData.*;
+
 /**
  * Author Koleman Nix
  * Created On 7/19/12 at 10:19 AM
@@ -18,4 +25,212 @@ public class TestEngineImpl extends TestCase {
         Move move = engine.computeMoveAtDepth(5);
         System.out.println(move.toSAN());
     }
+
+    @Test
+    public void testParallelSearch() {
+        // Back rank mate with Ra8#
+        Position position = PositionUtil.createFromFENString("6k1/5ppp/8/8/8/8/5PPP/R5K1 w - - 0 1");
+        EngineImpl engine = (EngineImpl) EngineUtil.createParallelEngine(4);
+        engine.setPosition(position);
+        Move move = engine.computeMoveAtDepth(4);
+        assertEquals("a8", CoordinateUtility.convert0x88ToSAN(move.end));
+        assertTrue(engine.getNodesSearched() > 0);
+        // The helpers work on copies, so the engine's position is left alone
+        assertEquals("6k1/5ppp/8/8/8/8/5PPP/R5K1 w - - 0 1", position.writeToFEN());
+    }
+
+    @Test
+    public void testPruningSettings() {
+        String fen = "r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3";
+        EngineImpl pruned = new EngineImpl();
+        pruned.setVerbose(false);
+        pruned.setPosition(PositionUtil.createFromFENString(fen));
+        pruned.computeMoveAtDepth(4);
+
+        EngineImpl full = new EngineImpl();
+        full.setVerbose(false);
+        full.getSearchConfig().setNullMovePruning(false);
+        full.getSearchConfig().setLateMoveReductions(false);
+        full.getSearchConfig().setFutilityPruning(false);
+        full.getSearchConfig().setReverseFutilityPruning(false);
+        full.setPosition(PositionUtil.createFromFENString(fen));
+        full.computeMoveAtDepth(4);
+        assertTrue(pruned.getNodesSearched() < full.getNodesSearched());
+
+        // Pruning mustn't hide a mate
+        pruned.setPosition(PositionUtil.createFromFENString("6k1/5ppp/8/8/8/8/5PPP/R5K1 w - - 0 1"));
+        assertEquals("a8", CoordinateUtility.convert0x88ToSAN(pruned.computeMoveAtDepth(4).end));
+    }
+
+    @Test
+    public void testPrincipalVariation() {
+        EngineImpl engine = new EngineImpl();
+        engine.setVerbose(false);
+        Position position = PositionUtil.createFromFENString(COMPLICATED_FEN);
+        engine.setPosition(position);
+        Move move = engine.computeMoveAtDepth(4);
+        List<Move> line = engine.getPrincipalVariation();
+        assertTrue(line.size() >= 2);
+        assertPlayable(position, move, line);
+
+        // A search cut short by the clock still reports the line behind the move it returns
+        engine.setPosition(position);
+        move = engine.computeMoveTimed(TimeManager.forMoveTime(100));
+        assertPlayable(position, move, engine.getPrincipalVariation());
+        assertEquals(COMPLICATED_FEN, position.writeToFEN());
+    }
+
+    @Test
+    public void testMaxPly() {
+        // Starting just short of the ply limit stands in for a line that long. With a rook on the board, null moves
+        // are allowed all the way down, and none of them may run past the ply-indexed tables.
+        EngineImpl engine = new EngineImpl();
+        engine.setVerbose(false);
+        SearchWorker worker = new SearchWorker(engine, true);
+        worker.reset(null);
+        Position position = PositionUtil.createFromFENString("8/8/8/4k3/8/8/8/R3K3 w - - 0 1");
+        for (int ply = SearchWorker.MAX_PLY - 6; ply <= SearchWorker.MAX_PLY; ply++) {
+            int score = worker.NegamaxQuiescent(position, ply, 6, 0, 1, true);
+            assertTrue(score > 0);
+        }
+        assertEquals("8/8/8/4k3/8/8/8/R3K3 w - - 0 1", position.writeToFEN());
+    }
+
+    @Test
+    public void testQuiescencePromotion() {
+        // An exchange down, and bxa8=Q is the way back. Promotions carry no to-piece, so delta pruning has to see the
+        // rook on the board and the queen the pawn becomes.
+        String fen = "r7/1P6/8/8/7k/8/8/4K1N1 w - - 0 1";
+        for (PositionUtil.Backend backend : PositionUtil.Backend.values()) {
+            EngineImpl engine = new EngineImpl();
+            engine.setVerbose(false);
+            SearchWorker worker = new SearchWorker(engine, true);
+            worker.reset(null);
+            Position position = PositionUtil.createFromFENString(fen, backend);
+            int standPat = engine.evaluatePosition(position);
+            // Past what any single capture could win, but not past a capture that promotes
+            int alpha = standPat + 300;
+            assertEquals(alpha + 1, worker.Quies(position, 1, alpha, alpha + 1));
+            // Just past winning a queen, with the 200 delta margin on top
+            alpha = standPat + VAL_QUEEN + 210;
+            assertEquals(alpha + 1, worker.Quies(position, 1, alpha, alpha + 1));
+            assertEquals(fen, position.writeToFEN());
+        }
+    }
+
+    @Test
+    public void testIndefiniteSearchDepthLimit() throws Exception {
+        // Bare kings: every iteration is over in no time, so the search runs out of depth long before it's stopped
+        final EngineImpl engine = new EngineImpl();
+        engine.setVerbose(false);
+        engine.setPosition(PositionUtil.createFromFENString("8/8/8/4k3/8/8/8/4K3 w - - 0 1"));
+        final Throwable[] failure = new Throwable[1];
+        Thread search = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    engine.computeMoveIndefinitely();
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+            }
+        });
+        search.start();
+        search.join(1000);
+        // Still waiting for the stop, as a "go infinite" has to
+        assertTrue(search.isAlive());
+        engine.stopCalculating();
+        search.join(5000);
+        assertFalse(search.isAlive());
+        assertNull(failure[0]);
+    }
+
+    @Test
+    public void testInterruptedIteration() {
+        // Interrupted right after the first root move, so the iteration is only partly done
+        EngineImpl engine = new EngineImpl(new InterruptingView());
+        engine.setVerbose(false);
+        Position position = PositionUtil.createFromFENString(COMPLICATED_FEN);
+        engine.setPosition(position);
+        try {
+            engine.computeMoveAtDepth(3);
+        } finally {
+            Thread.interrupted();
+        }
+        long entry = engine.getTranspositionTable().probe(position.getHashKey());
+        assertFalse(entry != TranspositionTable.MISS && TranspositionTable.getDepth(entry) >= 3
+                && TranspositionTable.getBound(entry) == TranspositionTable.BOUND_EXACT);
+    }
+
+    /**
+     * A view that interrupts the search thread once the first root move is done.
+     */
+    private static class InterruptingView implements KibitzView {
+        @Override
+        public void setBestMove(Move em) {
+        }
+
+        @Override
+        public void setPV(String pv) {
+        }
+
+        @Override
+        public void setCurrentPly(int ply) {
+        }
+
+        @Override
+        public void setNodesPerSecond(int nKps) {
+        }
+
+        @Override
+        public void setNodesSearched(int totalNodes) {
+        }
+
+        @Override
+        public void setEvaluation(double score) {
+        }
+
+        @Override
+        public void setProgress(int completed, int possible) {
+            if (completed == 1) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        @Override
+        public void setDeepestPly(int ply) {
+        }
+
+        @Override
+        public void clearDisplayBoard() {
+        }
+
+        @Override
+        public void clearAll() {
+        }
+
+        @Override
+        public void highlightMove(Move m) {
+        }
+
+        @Override
+        public void clearHighlightedMove() {
+        }
+
+        @Override
+        public void setDisplayBoard(String string) {
+        }
+    }
+
+    /**
+     * Checks that the line starts with the move and that every move in it is legal in turn.
+     */
+    private static void assertPlayable(Position position, Move first, List<Move> line) {
+        assertEquals(first.start, line.get(0).start);
+        assertEquals(first.end, line.get(0).end);
+        Position copy = position.deepClone();
+        for (Move move : line) {
+            assertTrue(move.toSAN(), copy.checkMove(move.start, move.end) != INVALID_MOVE);
+            copy.makeMove(move);
+        }
+    }
 }
@@ -0,0 +1,41 @@
+package com.koleman.chess.engine;
+
+import com.koleman.chess.model.Position;
+import com.koleman.chess.model.PositionUtil;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import static com.koleman.chess.model.TestData.*;
+
+public class TestEvalCache extends TestCase {
+
+    @Test
+    public void testStoreAndProbe() {
+        EvalCache cache = new EvalCache(1);
+        long key = 0xCAFEBABEL;
+        assertEquals(EvalCache.MISS, cache.probe(key));
+        cache.store(key, -250);
+        assertEquals(-250, EvalCache.getScore(cache.probe(key)));
+        // A zero score isn't mistaken for a miss
+        cache.store(key, 0);
+        assertEquals(0, EvalCache.getScore(cache.probe(key)));
+        assertTrue(cache.probe(key) != EvalCache.MISS);
+        assertEquals(EvalCache.MISS, cache.probe(key ^ ((long) cache.getEntryCount() << 4)));
+        assertEquals(3, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        cache.clear();
+        assertEquals(EvalCache.MISS, cache.probe(key));
+    }
+
+    @Test
+    public void testEngineEvaluation() {
+        EngineImpl engine = new EngineImpl();
+        Position position = PositionUtil.createFromFENString(COMPLICATED_FEN);
+        int score = engine.evaluatePosition(position);
+        assertEquals(0, engine.getEvalCache().getHits());
+        // The cached score is white's, so it still has to come back from the side to move's point of view
+        assertEquals(score, engine.evaluatePosition(position));
+        assertEquals(score, engine.evaluate(position) * position.getTeamToMove());
+        assertEquals(1, engine.getEvalCache().getHits());
+    }
+}
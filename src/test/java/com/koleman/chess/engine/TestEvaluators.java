@@ -0,0 +1,109 @@
+package com.koleman.chess.engine;
+
+import com.koleman.chess.model.CoordinateUtility;
+import com.koleman.chess.model.PieceSquareTables;
+import com.koleman.chess.model.Position;
+import com.koleman.chess.model.PositionUtil;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import static com.koleman.chess.model.TestData.*;
+
+public class TestEvaluators extends TestCase {
+
+    @Test
+    public void testSimpleEvaluators() {
+        Position start = PositionUtil.createStartingPosition();
+        assertEquals(0, new MaterialEvaluator().evaluate(start));
+        assertEquals(0, new PieceSquareEvaluator().evaluate(start));
+        // White is a queen up
+        Position queenUp = PositionUtil.createFromFENString("rnb1kbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+        assertEquals(900, new MaterialEvaluator().evaluate(queenUp));
+        assertEquals(PieceSquareTables.taper(queenUp.getMidgameScore(), queenUp.getEndgameScore(), queenUp.getPhase()),
+                new PieceSquareEvaluator().evaluate(queenUp));
+    }
+
+    @Test
+    public void testLazyEvaluation() {
+        Counting expensive = new Counting(40);
+        CompositeEvaluator composite = new CompositeEvaluator()
+                .add(new MaterialEvaluator())
+                .add(expensive, 50);
+        Position queenUp = PositionUtil.createFromFENString("rnb1kbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+        assertEquals(940, composite.evaluate(queenUp));
+        assertEquals(1, expensive.calls);
+        // Inside the window, or too close to it to skip anything
+        assertEquals(940, composite.evaluate(queenUp, 0, 1000));
+        assertEquals(940, composite.evaluate(queenUp, 0, 900));
+        assertEquals(3, expensive.calls);
+        // Far above beta: the expensive term can't bring it back, and the lower bound comes back
+        composite.setTimed(true);
+        assertEquals(850, composite.evaluate(queenUp, -100, 100));
+        // Far below alpha
+        assertEquals(950, composite.evaluate(queenUp, 2000, 2100));
+        assertEquals(3, expensive.calls);
+        assertEquals(2, composite.getTermSkips(1));
+        assertEquals(2, composite.getTermCalls(0));
+        assertEquals(0, composite.getTermCalls(1));
+        assertTrue(composite.getTermNanos(0) > 0);
+        composite.resetTimes();
+        assertEquals(0, composite.getTermCalls(0));
+    }
+
+    @Test
+    public void testClampedMargin() {
+        // Three passed pawns on the seventh are worth more than the default evaluator's pawn margin
+        Position position = PositionUtil.createFromFENString("4k3/PPP5/8/8/8/8/8/4K3 w - - 0 1");
+        int pawns = new PawnStructureEvaluator().evaluate(position);
+        assertTrue(pawns > 250);
+        CompositeEvaluator evaluator = EngineUtil.createDefaultEvaluator();
+        int full = evaluator.evaluate(position);
+        assertEquals(new PieceSquareEvaluator().evaluate(position) + 250, full);
+        // So every lazy answer is still a true bound, wherever the window is
+        for (int lower = full - 600; lower <= full + 600; lower += 10) {
+            int score = evaluator.evaluate(position, lower, lower + 1);
+            if (score <= lower) {
+                assertTrue(full <= score);
+            } else if (score >= lower + 1) {
+                assertTrue(full >= score);
+            }
+        }
+    }
+
+    @Test
+    public void testEngineWithEvaluator() {
+        // Material alone is enough to see a hanging queen
+        EngineImpl engine = (EngineImpl) EngineUtil.createEngine(new MaterialEvaluator());
+        engine.setVerbose(false);
+        engine.setPosition(PositionUtil.createFromFENString("4k3/8/8/3q4/8/8/8/3RK3 w - - 0 1"));
+        assertEquals("d5", CoordinateUtility.convert0x88ToSAN(engine.computeMoveAtDepth(3).end));
+
+        // The default evaluator gives the same scores the engine reports
+        EngineImpl standard = new EngineImpl();
+        Position position = PositionUtil.createFromFENString(COMPLICATED_FEN);
+        assertEquals(EngineUtil.createDefaultEvaluator().evaluate(position), standard.evaluate(position));
+        try {
+            new EngineImpl((Evaluator) null);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * A constant term that counts its calls.
+     */
+    private static class Counting implements Evaluator {
+        private final int score;
+        int calls;
+
+        Counting(int score) {
+            this.score = score;
+        }
+
+        @Override
+        public int evaluate(Position position) {
+            calls++;
+            return score;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.koleman.chess.engine;
+
+import com.koleman.chess.model.BitMove;
+import com.koleman.chess.model.CoordinateUtility;
+import com.koleman.chess.model.Position;
+import com.koleman.chess.model.PositionUtil;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.koleman.chess.model.Definitions.*;
+import static com.koleman.chess.model.TestData.*;
+
+public class TestMovePicker extends TestCase {
+
+    @Test
+    public void testEveryMoveOnce() {
+        String[] fens = {STARTING_FEN, COMPLICATED_FEN, PROMOTION_FEN, "8/8/8/KPp4r/8/8/8/7k w - c6 0 1"};
+        for (PositionUtil.Backend backend : PositionUtil.Backend.values()) {
+            for (String fen : fens) {
+                Position position = PositionUtil.createFromFENString(fen, backend);
+                List<Integer> expected = strip(position.getPossibleMoves());
+                Collections.sort(expected);
+                MovePicker picker = new MovePicker();
+                picker.init(position, 0, 0, 0, null);
+                List<Integer> picked = new ArrayList<Integer>();
+                int move;
+                while ((move = picker.next()) != 0) {
+                    picked.add(BitMove.stripOrdering(move));
+                }
+                Collections.sort(picked);
+                assertEquals(fen, expected, picked);
+            }
+        }
+    }
+
+    @Test
+    public void testStageOrder() {
+        Position position = PositionUtil.createFromFENString(COMPLICATED_FEN);
+        int hashMove = position.checkMove(square("a1"), square("b1"));
+        int killer = position.checkMove(square("e1"), square("f1"));
+        MovePicker picker = new MovePicker();
+        picker.init(position, hashMove, killer, 0, null);
+
+        assertEquals(BitMove.stripOrdering(hashMove), picker.next());
+        int captures = position.getCaptureMoves().size();
+        int losing = 0;
+        for (int capture : position.getCaptureMoves()) {
+            if (position.staticExchange(capture) < 0) {
+                losing++;
+            }
+        }
+        assertTrue(losing > 0);
+        int previous = Integer.MAX_VALUE;
+        for (int i = 0; i < captures - losing; i++) {
+            int move = picker.next();
+            assertTrue(BitMove.getToPiece(move) != EMPTY);
+            // Best exchange first
+            int exchange = position.staticExchange(move);
+            assertTrue(exchange >= 0 && exchange <= previous);
+            previous = exchange;
+        }
+        assertEquals(BitMove.stripOrdering(killer), picker.next());
+        int rest = 0;
+        int move;
+        while ((move = picker.next()) != 0) {
+            assertTrue(BitMove.stripOrdering(move) != BitMove.stripOrdering(hashMove));
+            assertTrue(BitMove.stripOrdering(move) != BitMove.stripOrdering(killer));
+            // The losing captures come last
+            assertEquals(rest >= position.getPossibleMoves().size() - captures - 2, BitMove.getToPiece(move) != EMPTY);
+            rest++;
+        }
+        assertEquals(position.getPossibleMoves().size() - 2 - (captures - losing), rest);
+    }
+
+    @Test
+    public void testQuiescenceCaptures() {
+        for (PositionUtil.Backend backend : PositionUtil.Backend.values()) {
+            Position position = PositionUtil.createFromFENString(COMPLICATED_FEN, backend);
+            int winning = 0;
+            for (int capture : position.getCaptureMoves()) {
+                if (position.staticExchange(capture) >= 0) {
+                    winning++;
+                }
+            }
+            MovePicker picker = new MovePicker();
+            picker.initCaptures(position);
+            int move;
+            while ((move = picker.next()) != 0) {
+                assertTrue(BitMove.getToPiece(move) != EMPTY);
+                assertTrue(position.staticExchange(move) >= 0);
+                winning--;
+            }
+            assertEquals(0, winning);
+        }
+    }
+
+    @Test
+    public void testHistoryOrder() {
+        Position position = PositionUtil.createStartingPosition();
+        int[] history = new int[128 * 128];
+        history[square("g1") << 7 | square("f3")] = 50;
+        history[square("d2") << 7 | square("d4")] = 100;
+        int killer = position.checkMove(square("b1"), square("c3"));
+        MovePicker picker = new MovePicker();
+        picker.init(position, 0, 0, killer, history);
+        // No captures in the starting position, so the killer comes first, then the quiet moves by history
+        assertEquals(BitMove.stripOrdering(killer), picker.next());
+        assertEquals(square("d4"), BitMove.getToIndex(picker.next()));
+        assertEquals(square("f3"), BitMove.getToIndex(picker.next()));
+        int count = 3;
+        while (picker.next() != 0) {
+            count++;
+        }
+        assertEquals(20, count);
+    }
+
+    @Test
+    public void testIllegalHashMoveSkipped() {
+        Position position = PositionUtil.createStartingPosition();
+        // Legal for white, but it's black to move after e4
+        int stale = position.checkMove(square("g1"), square("f3"));
+        position.makeMove(position.checkMove(square("e2"), square("e4")));
+        assertFalse(position.isLegalMove(stale));
+        MovePicker picker = new MovePicker();
+        picker.init(position, stale, stale, stale, null);
+        int count = 0;
+        int move;
+        while ((move = picker.next()) != 0) {
+            assertTrue(BitMove.stripOrdering(move) != BitMove.stripOrdering(stale));
+            count++;
+        }
+        assertEquals(20, count);
+    }
+
+    private static int square(String san) {
+        return CoordinateUtility.convertSANTo0x88(san);
+    }
+
+    private static List<Integer> strip(List<Integer> moves) {
+        List<Integer> result = new ArrayList<Integer>();
+        for (int move : moves) {
+            result.add(BitMove.stripOrdering(move));
+        }
+        return result;
+    }
+}
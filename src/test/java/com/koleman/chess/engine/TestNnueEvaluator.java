@@ -0,0 +1,123 @@
+package com.koleman.chess.engine;
+
+import com.koleman.chess.model.Move;
+import com.koleman.chess.model.Position;
+import com.koleman.chess.model.PositionUtil;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import static com.koleman.chess.model.TestData.*;
+
+public class TestNnueEvaluator extends TestCase {
+
+    @Test
+    public void testLoadAndWrite() throws IOException {
+        NnueNetwork network = randomNetwork(16, 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        network.write(out);
+        byte[] bytes = out.toByteArray();
+        NnueNetwork loaded = NnueNetwork.load(new ByteArrayInputStream(bytes));
+        assertEquals(16, loaded.getHiddenSize());
+        Position position = PositionUtil.createFromFENString(COMPLICATED_FEN);
+        assertEquals(new NnueEvaluator(network).evaluate(position), new NnueEvaluator(loaded).evaluate(position.deepClone()));
+
+        // A truncated file and a file that isn't a network
+        try {
+            NnueNetwork.load(new ByteArrayInputStream(bytes, 0, bytes.length - 1));
+            fail();
+        } catch (IOException expected) {
+        }
+        bytes[0] = 'X';
+        try {
+            NnueNetwork.load(new ByteArrayInputStream(bytes));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testIncrementalAccumulator() {
+        for (PositionUtil.Backend backend : PositionUtil.Backend.values()) {
+            checkRandomGame(PositionUtil.createFromFENString(COMPLICATED_FEN, backend));
+            checkRandomGame(PositionUtil.createFromFENString(PROMOTION_FEN, backend));
+        }
+    }
+
+    @Test
+    public void testSymmetry() {
+        NnueEvaluator evaluator = new NnueEvaluator(randomNetwork(32, 3));
+        // The same position with the colors swapped scores the same for the side to move
+        Position position = PositionUtil.createFromFENString("4k3/8/8/3q4/8/8/8/3RK3 w - - 0 1");
+        Position mirrored = PositionUtil.createFromFENString("3rk3/8/8/8/3Q4/8/8/4K3 b - - 0 1");
+        assertEquals(evaluator.evaluate(position), -evaluator.evaluate(mirrored));
+    }
+
+    @Test
+    public void testEngineWithNetwork() {
+        EngineImpl engine = (EngineImpl) EngineUtil.createEngine(new NnueEvaluator(randomNetwork(32, 4)));
+        engine.setVerbose(false);
+        Position position = PositionUtil.createFromFENString(COMPLICATED_FEN);
+        engine.setPosition(position);
+        Move move = engine.computeMoveAtDepth(3);
+        assertEquals(position.getPiece(move.start), move.startPiece);
+        try {
+            new NnueEvaluator(null);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * Plays random moves and takes them all back, comparing the incrementally updated evaluation with one summed from
+     * scratch on a fresh copy at every step.
+     */
+    private static void checkRandomGame(Position position) {
+        NnueEvaluator evaluator = new NnueEvaluator(randomNetwork(32, 2));
+        Random random = new Random(5);
+        int start = evaluator.evaluate(position);
+        Deque<Integer> moves = new ArrayDeque<Integer>();
+        for (int i = 0; i < 40; i++) {
+            List<Integer> legal = position.getPossibleMoves();
+            if (legal.isEmpty()) {
+                break;
+            }
+            int move = legal.get(random.nextInt(legal.size()));
+            position.makeMove(move);
+            moves.push(move);
+            assertEquals(evaluator.evaluate(position.deepClone()), evaluator.evaluate(position));
+        }
+        while (!moves.isEmpty()) {
+            position.unmakeMove(moves.pop());
+            assertEquals(evaluator.evaluate(position.deepClone()), evaluator.evaluate(position));
+        }
+        assertEquals(start, evaluator.evaluate(position));
+    }
+
+    /**
+     * Small weights, so no accumulator can overflow.
+     */
+    private static NnueNetwork randomNetwork(int hidden, long seed) {
+        Random random = new Random(seed);
+        short[] featureWeights = new short[NnueNetwork.FEATURES * hidden];
+        for (int i = 0; i < featureWeights.length; i++) {
+            featureWeights[i] = (short) (random.nextInt(41) - 20);
+        }
+        short[] featureBias = new short[hidden];
+        for (int i = 0; i < hidden; i++) {
+            featureBias[i] = (short) random.nextInt(100);
+        }
+        short[] outputWeights = new short[2 * hidden];
+        for (int i = 0; i < outputWeights.length; i++) {
+            outputWeights[i] = (short) (random.nextInt(129) - 64);
+        }
+        return new NnueNetwork(hidden, featureWeights, featureBias, outputWeights, 100);
+    }
+}
@@ -0,0 +1,57 @@
+package com.koleman.chess.engine;
+
+import com.koleman.chess.model.Position;
+import com.koleman.chess.model.PositionUtil;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public class TestPawnTable extends TestCase {
+
+    @Test
+    public void testStoreAndProbe() {
+        PawnTable table = new PawnTable(1);
+        long key = 0x123456789L;
+        assertEquals(PawnTable.MISS, table.probe(key));
+        table.store(key, -35, 120);
+        long entry = table.probe(key);
+        assertEquals(-35, PawnTable.getMidgame(entry));
+        assertEquals(120, PawnTable.getEndgame(entry));
+        // Even a structure that scores 0 isn't mistaken for a miss
+        table.store(0, 0, 0);
+        assertTrue(table.probe(0) != PawnTable.MISS);
+        assertEquals(PawnTable.MISS, table.probe(key ^ ((long) table.getEntryCount() << 4)));
+        assertEquals(0.5, table.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void testPawnTerms() {
+        PawnTable table = new PawnTable(1);
+        // Symmetric structures cancel out
+        assertEquals(0, PawnTable.getMidgame(evaluate("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", table)));
+        // A passed pawn on the sixth is worth much more in the endgame
+        long passed = evaluate("4k3/8/3P4/8/8/8/8/4K3 w - - 0 1", table);
+        assertTrue(PawnTable.getEndgame(passed) > PawnTable.getMidgame(passed));
+        assertTrue(PawnTable.getMidgame(passed) > 0);
+        // Doubled and isolated pawns against a healthy pair
+        long weak = evaluate("4k3/5pp1/8/8/8/2P5/2P5/4K3 w - - 0 1", table);
+        assertTrue(PawnTable.getMidgame(weak) < 0);
+        assertTrue(PawnTable.getEndgame(weak) < 0);
+        // The second look comes from the table
+        long hits = table.getHits();
+        evaluate("4k3/5pp1/8/8/8/2P5/2P5/4K3 b - - 0 1", table);
+        assertEquals(hits + 1, table.getHits());
+    }
+
+    @Test
+    public void testKingShelter() {
+        Position sheltered = PositionUtil.createFromFENString("6k1/8/8/8/8/8/5PPP/6K1 w - - 0 1");
+        assertTrue(PawnStructure.kingShelter(sheltered) > 0);
+        // Out in the open
+        Position exposed = PositionUtil.createFromFENString("6k1/8/8/8/8/6K1/5PPP/8 w - - 0 1");
+        assertEquals(0, PawnStructure.kingShelter(exposed));
+    }
+
+    private static long evaluate(String fen, PawnTable table) {
+        return PawnStructure.probe(PositionUtil.createFromFENString(fen), table);
+    }
+}
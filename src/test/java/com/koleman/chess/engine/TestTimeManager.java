@@ -0,0 +1,66 @@
+package com.koleman.chess.engine;
+
+import com.koleman.chess.model.Move;
+import com.koleman.chess.model.Position;
+import com.koleman.chess.model.PositionUtil;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import static com.koleman.chess.model.TestData.*;
+
+public class TestTimeManager extends TestCase {
+
+    @Test
+    public void testAllocation() {
+        TimeManager fixed = TimeManager.forMoveTime(500);
+        assertEquals(500, fixed.getSoftLimitMillis());
+        assertEquals(500, fixed.getHardLimitMillis());
+
+        // A minute with no increment: a thirtieth of it, and a few times that if needed
+        TimeManager clock = TimeManager.forClock(60000, 0, 0, 0);
+        assertEquals(2000, clock.getSoftLimitMillis());
+        assertEquals(8000, clock.getHardLimitMillis());
+        // The increment is there to be spent
+        assertTrue(TimeManager.forClock(60000, 1000, 0, 0).getSoftLimitMillis() > clock.getSoftLimitMillis());
+        // Fewer moves to the time control, more time for each
+        assertTrue(TimeManager.forClock(60000, 0, 5, 0).getSoftLimitMillis() > clock.getSoftLimitMillis());
+        // Nearly flagging: never more than most of what's left, however big the increment
+        TimeManager scramble = TimeManager.forClock(200, 2000, 0, 50);
+        assertTrue(scramble.getHardLimitMillis() <= 150);
+        assertTrue(scramble.getSoftLimitMillis() <= scramble.getHardLimitMillis());
+        try {
+            TimeManager.forMoveTime(0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testIterations() {
+        TimeManager time = TimeManager.forMoveTime(1000);
+        time.start();
+        assertTrue(time.canStartIteration(1000000L));
+        // Half a second last time means about a second next time, which won't fit
+        assertFalse(time.canStartIteration(500000000L));
+        assertFalse(time.hardLimitReached());
+    }
+
+    @Test
+    public void testTimedSearch() {
+        EngineImpl engine = new EngineImpl();
+        engine.setVerbose(false);
+        Position position = PositionUtil.createFromFENString(COMPLICATED_FEN);
+        engine.setPosition(position);
+        TimeManager time = TimeManager.forMoveTime(200);
+        Move move = engine.computeMoveTimed(time);
+        assertNotNull(move);
+        assertEquals(position.getPiece(move.start), move.startPiece);
+        assertEquals(COMPLICATED_FEN, position.writeToFEN());
+        // Only a sanity bound: a search that ignored its limits would run for minutes, but a loaded machine can
+        // stretch 200 ms a long way
+        assertTrue(time.getElapsedNanos() < 30000000000L);
+
+        // Even with next to no time there's a move, from the first quick search
+        assertNotNull(engine.computeMoveTimed(TimeManager.forMoveTime(1)));
+    }
+}
@@ -0,0 +1,81 @@
+package com.koleman.chess.engine;
+
+import com.koleman.chess.model.BitMove;
+import com.koleman.chess.model.CoordinateUtility;
+import com.koleman.chess.model.Move;
+import com.koleman.chess.model.Position;
+import com.koleman.chess.model.PositionUtil;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import static com.koleman.chess.model.Definitions.*;
+
+public class TestTranspositionTable extends TestCase {
+
+    @Test
+    public void testStoreAndProbe() {
+        TranspositionTable table = new TranspositionTable(1);
+        Position position = PositionUtil.createStartingPosition();
+        int move = position.getPossibleMoves().get(0);
+        long key = position.getHashKey();
+
+        assertEquals(TranspositionTable.MISS, table.probe(key));
+        table.store(key, move, -1234, 7, TranspositionTable.BOUND_LOWER);
+        long entry = table.probe(key);
+        assertEquals(BitMove.stripOrdering(move), TranspositionTable.getMove(entry));
+        assertEquals(-1234, TranspositionTable.getScore(entry));
+        assertEquals(7, TranspositionTable.getDepth(entry));
+        assertEquals(TranspositionTable.BOUND_LOWER, TranspositionTable.getBound(entry));
+
+        // A different key in the same slot must not match
+        assertEquals(TranspositionTable.MISS, table.probe(key ^ ((long) table.getEntryCount() << 4)));
+        assertEquals(3, table.getProbes());
+        assertEquals(1, table.getHits());
+    }
+
+    @Test
+    public void testReplacement() {
+        TranspositionTable table = new TranspositionTable(1);
+        long key = 0x123456789ABCDEFL;
+        table.store(key, 0, 50, 6, TranspositionTable.BOUND_UPPER);
+        // Shallower, inexact results don't replace deeper ones from the same search
+        table.store(key, 0, 10, 2, TranspositionTable.BOUND_LOWER);
+        assertEquals(6, TranspositionTable.getDepth(table.probe(key)));
+        // But they do once a new search starts
+        table.newSearch();
+        table.store(key, 0, 10, 2, TranspositionTable.BOUND_LOWER);
+        assertEquals(2, TranspositionTable.getDepth(table.probe(key)));
+    }
+
+    @Test
+    public void testSize() {
+        assertEquals(65536, new TranspositionTable(1).getEntryCount());
+        assertEquals(65536 * 2, new TranspositionTable(3).getEntryCount());
+    }
+
+    @Test
+    public void testMateScores() {
+        TranspositionTable table = new TranspositionTable(1);
+        table.store(1, 0, 149990, 3, TranspositionTable.BOUND_EXACT);
+        assertEquals(149990, TranspositionTable.getScore(table.probe(1)));
+        table.store(2, 0, -300000, 3, TranspositionTable.BOUND_EXACT);
+        assertEquals(-300000, TranspositionTable.getScore(table.probe(2)));
+    }
+
+    /**
+     * A second search of the same position starts from the first one's results, and still finds the mate.
+     */
+    @Test
+    public void testSearchWithTable() {
+        // Back rank mate with Ra8#
+        Position position = PositionUtil.createFromFENString("6k1/5ppp/8/8/8/8/5PPP/R5K1 w - - 0 1");
+        EngineImpl engine = new EngineImpl();
+        engine.setPosition(position);
+        engine.computeMoveAtDepth(3);
+        // The second search starts from the root entry the first one left behind
+        Move move = engine.computeMoveAtDepth(3);
+        assertTrue(engine.getTranspositionTable().getHits() > 0);
+        assertEquals(WHITE_ROOK, move.startPiece);
+        assertEquals("a8", CoordinateUtility.convert0x88ToSAN(move.end));
+    }
+}
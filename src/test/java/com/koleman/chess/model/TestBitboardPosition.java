@@ -0,0 +1,148 @@
+package com.koleman.chess.model;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.koleman.chess.model.Definitions.*;
+import static com.koleman.chess.model.TestData.*;
+
+public class TestBitboardPosition extends TestCase {
+
+    @Test
+    public void testFENRoundTrip() {
+        String[] fens = {STARTING_FEN, COMPLICATED_FEN, PROMOTION_FEN, AFTER_E4, AFTER_E4_E5_NF3_NC6_BC5};
+        for (String fen : fens) {
+            Position p = PositionUtil.createFromFENString(fen, PositionUtil.Backend.BITBOARD);
+            assertEquals(fen, p.writeToFEN());
+        }
+    }
+
+    @Test
+    public void testGetPiece() {
+        Position bitboard = PositionUtil.createFromFENString(COMPLICATED_FEN, PositionUtil.Backend.BITBOARD);
+        Position mailbox = PositionUtil.createFromFENString(COMPLICATED_FEN);
+        for (int i = 0; i < 128; i++) {
+            assertEquals(mailbox.getPiece(i), bitboard.getPiece(i));
+        }
+        assertEquals(mailbox.toString(), bitboard.toString());
+    }
+
+    @Test
+    public void testPerftScore() {
+        Position instance = PositionUtil.createFromFENString(STARTING_FEN, PositionUtil.Backend.BITBOARD);
+        assertEquals(STARTING_PERFT_5, PositionUtil.perft(instance, 5));
+        instance = PositionUtil.createFromFENString(COMPLICATED_FEN, PositionUtil.Backend.BITBOARD);
+        assertEquals(COMPLICATED_PERFT_4, PositionUtil.perft(instance, 4));
+        instance = PositionUtil.createFromFENString(PROMOTION_FEN, PositionUtil.Backend.BITBOARD);
+        assertEquals(PROMOTION_PERFT_5, PositionUtil.perft(instance, 5));
+    }
+
+    /**
+     * Walks the game tree with both backends side by side. They must agree on every move list, in order.
+     */
+    @Test
+    public void testMatchesPositionImpl() {
+        String[] fens = {STARTING_FEN, COMPLICATED_FEN, PROMOTION_FEN};
+        for (String fen : fens) {
+            compareTrees(PositionUtil.createFromFENString(fen), PositionUtil.createFromFENString(fen, PositionUtil.Backend.BITBOARD), 3);
+        }
+    }
+
+    private void compareTrees(Position mailbox, Position bitboard, int depth) {
+        assertEquals(mailbox.writeToFEN(), bitboard.writeToFEN());
+        assertEquals(mailbox.getHashKey(), bitboard.getHashKey());
+        assertEquals(mailbox.inCheck(), bitboard.inCheck());
+        assertEquals(mailbox.getCaptureMoves(), bitboard.getCaptureMoves());
+        List<Integer> moves = mailbox.getPossibleMoves();
+        assertEquals(moves, bitboard.getPossibleMoves());
+        if (depth == 0) {
+            return;
+        }
+        for (int move : moves) {
+            Position mailboxCopy = mailbox.deepClone();
+            Position bitboardCopy = bitboard.deepClone();
+            mailboxCopy.makeMove(move);
+            bitboardCopy.makeMove(move);
+            compareTrees(mailboxCopy, bitboardCopy, depth - 1);
+        }
+    }
+
+    @Test
+    public void testUnmakeMove() {
+        String[] fens = {STARTING_FEN, COMPLICATED_FEN, PROMOTION_FEN, AFTER_E4};
+        for (String fen : fens) {
+            checkUnmake(PositionUtil.createFromFENString(fen, PositionUtil.Backend.BITBOARD), 3);
+        }
+    }
+
+    private void checkUnmake(Position position, int depth) {
+        if (depth == 0) {
+            return;
+        }
+        String fen = position.writeToFEN();
+        long key = position.getHashKey();
+        for (int move : position.getPossibleMoves()) {
+            position.makeMove(move);
+            checkUnmake(position, depth - 1);
+            position.unmakeMove(move);
+            assertEquals(fen, position.writeToFEN());
+            assertEquals(key, position.getHashKey());
+        }
+    }
+
+    /**
+     * Both backends have to agree on every static exchange, ties between attackers of the same value included, since
+     * the move picker orders and prunes captures by it.
+     */
+    @Test
+    public void testStaticExchangeMatches() {
+        String tie = "2k4N/1pNp2pp/8/1q5b/2q5/1B4B1/P1NP2PP/R2n2K1 w - - 0 1";
+        int start = CoordinateUtility.convertSANTo0x88("c7");
+        int end = CoordinateUtility.convertSANTo0x88("d5");
+        // Qb5xd5 wins the knight, while Qc4xd5 would let the bishop behind it in
+        assertEquals(-275, PositionUtil.createFromFENString(tie).staticExchange(
+                PositionUtil.createFromFENString(tie).checkMove(start, end)));
+        assertEquals(-275, PositionUtil.createFromFENString(tie, PositionUtil.Backend.BITBOARD).staticExchange(
+                PositionUtil.createFromFENString(tie).checkMove(start, end)));
+
+        String[] fens = {STARTING_FEN, COMPLICATED_FEN, PROMOTION_FEN, AFTER_E4_E5_NF3_NC6_BC5, tie,
+                "r1bqkb1r/pppp1ppp/2n2n2/4p2Q/2B1P3/8/PPPP1PPP/RNB1K1NR w KQkq - 4 4",
+                "2r1r1k1/pp1bqppp/2nbpn2/3p4/2PP4/1PN1PN2/PB1QBPPP/2RR2K1 w - - 0 1",
+                "1k1r3r/pp2qpp1/2n1p2p/3pPb2/3P4/P1PB1N2/4QPPP/R4RK1 b - - 0 1",
+                "4r1k1/5ppp/8/3p4/3Rn3/3R4/3Q1PPP/6K1 w - - 0 1",
+                "8/2k5/3p4/p2P1p2/P2P1P2/8/3K4/8 w - - 0 1"};
+        Random random = new Random(18);
+        for (String fen : fens) {
+            Position mailbox = PositionUtil.createFromFENString(fen);
+            Position bitboard = PositionUtil.createFromFENString(fen, PositionUtil.Backend.BITBOARD);
+            for (int ply = 0; ply < 40; ply++) {
+                List<Integer> moves = mailbox.getPossibleMoves();
+                if (moves.isEmpty()) {
+                    break;
+                }
+                for (int move : moves) {
+                    assertEquals(mailbox.writeToFEN() + " " + BitMove.getMoveObject(move).toSAN(),
+                            mailbox.staticExchange(move), bitboard.staticExchange(move));
+                }
+                int move = moves.get(random.nextInt(moves.size()));
+                mailbox.makeMove(move);
+                bitboard.makeMove(move);
+            }
+        }
+    }
+
+    @Test
+    public void testCheckMove() {
+        Position instance = PositionUtil.createStartingPosition(PositionUtil.Backend.BITBOARD);
+        int move = instance.checkMove(CoordinateUtility.convertSANTo0x88("e2"), CoordinateUtility.convertSANTo0x88("e4"));
+        assertEquals(WHITE_PAWN, BitMove.getFromPiece(move));
+        assertEquals(INVALID_MOVE, instance.checkMove(CoordinateUtility.convertSANTo0x88("e2"), CoordinateUtility.convertSANTo0x88("e5")));
+
+        instance = PositionUtil.createFromFENString(PROMOTION_FEN, PositionUtil.Backend.BITBOARD);
+        move = instance.checkMove(CoordinateUtility.convertSANTo0x88("g2"), CoordinateUtility.convertSANTo0x88("g1"));
+        assertEquals(PROMOTION_QUEEN, BitMove.getType(move));
+    }
+}
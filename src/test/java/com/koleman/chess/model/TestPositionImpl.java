@@ -3,6 +3,7 @@ package com.koleman.chess.model;
 import junit.framework.TestCase;
 import org.junit.Test;
 import java.lang.reflect.Field;
+import java.util.Arrays;
 import java.util.List;
 import static com.koleman.chess.model.Definitions.*;
 import static com.koleman.chess.model.TestData.*;
@@ -31,6 +32,307 @@ public class TestPositionImpl extends TestCase {
 
     }
 
+    @Test
+    public void testUnmakeMove() {
+        String[] fens = {STARTING_FEN, COMPLICATED_FEN, PROMOTION_FEN, AFTER_E4};
+        for (String fen : fens) {
+            checkUnmake(PositionUtil.createFromFENString(fen), 3);
+        }
+    }
+
+    private void checkUnmake(Position position, int depth) {
+        if (depth == 0) {
+            return;
+        }
+        String fen = position.writeToFEN();
+        String board = position.toString();
+        for (int move : position.getPossibleMoves()) {
+            position.makeMove(move);
+            checkUnmake(position, depth - 1);
+            position.unmakeMove(move);
+            assertEquals(fen, position.writeToFEN());
+            assertEquals(board, position.toString());
+        }
+    }
+
+    @Test
+    public void testGenerateMoves() {
+        Position instance = PositionUtil.createFromFENString(COMPLICATED_FEN);
+        int[] buffer = new int[MAX_LEGAL_MOVES + 10];
+        buffer[9] = 12345;
+        int count = instance.generateMoves(buffer, 10);
+        assertEquals(COMPLICATED_PERFT_1, count);
+        assertEquals(12345, buffer[9]);
+        int[] sorted = Arrays.copyOfRange(buffer, 10, 10 + count);
+        Arrays.sort(sorted);
+        List<Integer> moveList = instance.getPossibleMoves();
+        for (int i = 0; i < count; i++) {
+            assertEquals((int) moveList.get(i), sorted[i]);
+        }
+
+        count = instance.generateCaptures(buffer, 0);
+        assertEquals(instance.getCaptureMoves().size(), count);
+        for (int i = 0; i < count; i++) {
+            assertTrue(BitMove.getToPiece(buffer[i]) != EMPTY);
+        }
+    }
+
+    @Test
+    public void testHalfMoveClock() {
+        Position p = PositionUtil.createFromFENString(AFTER_E4_E5);
+        p.makeMove(p.checkMove(CoordinateUtility.convertSANTo0x88("g1"), CoordinateUtility.convertSANTo0x88("f3")));
+        assertEquals(AFTER_E4_E5_NF3.replace(" 0 2", " 1 2"), p.writeToFEN());
+        p.makeMove(p.checkMove(CoordinateUtility.convertSANTo0x88("d7"), CoordinateUtility.convertSANTo0x88("d6")));
+        assertTrue(p.writeToFEN().endsWith(" 0 3"));
+    }
+
+    @Test
+    public void testHashKeyTransposition() {
+        Position a = PositionUtil.createStartingPosition();
+        Position b = PositionUtil.createStartingPosition();
+        playMoves(a, "g1", "f3", "g8", "f6", "b1", "c3");
+        playMoves(b, "b1", "c3", "g8", "f6", "g1", "f3");
+        assertEquals(a.getHashKey(), b.getHashKey());
+        assertEquals(a, b);
+        assertEquals(PositionUtil.createFromFENString(a.writeToFEN()).getHashKey(), a.getHashKey());
+
+        // Same pieces, different en passant square
+        Position c = PositionUtil.createStartingPosition();
+        playMoves(c, "e2", "e4");
+        assertFalse(c.getHashKey() == PositionUtil.createFromFENString(AFTER_E4.replace(" e3 ", " - ")).getHashKey());
+    }
+
+    @Test
+    public void testNullMove() {
+        for (PositionUtil.Backend backend : PositionUtil.Backend.values()) {
+            Position p = PositionUtil.createFromFENString(AFTER_E4, backend);
+            String fen = p.writeToFEN();
+            long key = p.getHashKey();
+            p.makeNullMove();
+            assertEquals(WHITE_TEAM, p.getTeamToMove());
+            assertEquals("-", p.writeToFEN().split(" ")[3]);
+            assertEquals(PositionUtil.createFromFENString(p.writeToFEN()).getHashKey(), p.getHashKey());
+            p.unmakeNullMove();
+            assertEquals(fen, p.writeToFEN());
+            assertEquals(key, p.getHashKey());
+        }
+    }
+
+    @Test
+    public void testRepetition() {
+        for (PositionUtil.Backend backend : PositionUtil.Backend.values()) {
+            Position p = PositionUtil.createStartingPosition(backend);
+            playMoves(p, "g1", "f3", "g8", "f6", "f3", "g1");
+            assertFalse(p.isRepetition());
+            playMoves(p, "f6", "g8");
+            assertTrue(p.isRepetition());
+            // A pawn move can't be taken back, so nothing before it repeats
+            playMoves(p, "e2", "e4", "e7", "e5");
+            assertFalse(p.isRepetition());
+            // Nor does a null move count as a way back
+            Position q = PositionUtil.createStartingPosition(backend);
+            playMoves(q, "g1", "f3");
+            q.makeNullMove();
+            playMoves(q, "f3", "g1");
+            q.makeNullMove();
+            assertFalse(q.isRepetition());
+        }
+    }
+
+    @Test
+    public void testNonPawnMaterial() {
+        for (PositionUtil.Backend backend : PositionUtil.Backend.values()) {
+            Position p = PositionUtil.createFromFENString("4k3/4p3/8/8/8/8/3NP3/4K3 w - - 0 1", backend);
+            assertTrue(p.hasNonPawnMaterial(WHITE_TEAM));
+            assertFalse(p.hasNonPawnMaterial(BLACK_TEAM));
+        }
+    }
+
+    @Test
+    public void testStaticExchange() {
+        for (PositionUtil.Backend backend : PositionUtil.Backend.values()) {
+            // Free pawn, pawn for pawn, queen for pawn
+            assertEquals(100, exchange("4k3/8/8/3p4/4P3/8/8/4K3 w - - 0 1", backend, "e4", "d5"));
+            assertEquals(0, exchange("4k3/8/2p5/3p4/4P3/8/8/4K3 w - - 0 1", backend, "e4", "d5"));
+            assertEquals(-800, exchange("4k3/8/2p5/3p4/8/8/3Q4/4K3 w - - 0 1", backend, "d2", "d5"));
+            // Doubled rooks on both sides: the rooks behind join in once the ones in front are gone
+            assertEquals(-400, exchange("3rk3/3r4/8/3p4/8/8/3R4/3RK3 w - - 0 1", backend, "d2", "d5"));
+            assertEquals(100, exchange("3rk3/8/8/3p4/8/8/3R4/3RK3 w - - 0 1", backend, "d2", "d5"));
+            // En passant, and a quiet move onto a square the pawn guards
+            assertEquals(100, exchange("4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1", backend, "e5", "d6"));
+            assertEquals(0, exchange("4k3/8/2p5/8/8/8/8/1N2K3 w - - 0 1", backend, "b1", "d2"));
+            assertEquals(-275, exchange("4k3/8/2p5/8/8/2N5/8/4K3 w - - 0 1", backend, "c3", "d5"));
+            // The position is left as it was
+            Position p = PositionUtil.createFromFENString(COMPLICATED_FEN, backend);
+            for (int move : p.getPossibleMoves()) {
+                p.staticExchange(move);
+            }
+            assertEquals(COMPLICATED_FEN, p.writeToFEN());
+            assertEquals(p.getPossibleMoves().size(), PositionUtil.createFromFENString(COMPLICATED_FEN, backend).getPossibleMoves().size());
+        }
+    }
+
+    private static int exchange(String fen, PositionUtil.Backend backend, String from, String to) {
+        Position p = PositionUtil.createFromFENString(fen, backend);
+        int move = p.checkMove(CoordinateUtility.convertSANTo0x88(from), CoordinateUtility.convertSANTo0x88(to));
+        assertTrue(fen, move != INVALID_MOVE);
+        return p.staticExchange(move);
+    }
+
+    /**
+     * The incrementally updated key must always match one built from scratch, and unmakeMove() must restore it.
+     */
+    @Test
+    public void testHashKeyIncremental() {
+        String[] fens = {STARTING_FEN, COMPLICATED_FEN, PROMOTION_FEN};
+        for (String fen : fens) {
+            checkHashKey(PositionUtil.createFromFENString(fen), 3);
+        }
+    }
+
+    private void checkHashKey(Position position, int depth) {
+        assertEquals(PositionUtil.createFromFENString(position.writeToFEN()).getHashKey(), position.getHashKey());
+        if (depth == 0) {
+            return;
+        }
+        long key = position.getHashKey();
+        for (int move : position.getPossibleMoves()) {
+            position.makeMove(move);
+            checkHashKey(position, depth - 1);
+            position.unmakeMove(move);
+            assertEquals(key, position.getHashKey());
+        }
+    }
+
+    @Test
+    public void testPawnKey() {
+        for (PositionUtil.Backend backend : PositionUtil.Backend.values()) {
+            Position p = PositionUtil.createStartingPosition(backend);
+            long pawns = p.getPawnKey();
+            playMoves(p, "g1", "f3", "b8", "c6");
+            assertEquals(pawns, p.getPawnKey());
+            int push = p.checkMove(CoordinateUtility.convertSANTo0x88("e2"), CoordinateUtility.convertSANTo0x88("e4"));
+            p.makeMove(push);
+            assertFalse(pawns == p.getPawnKey());
+            assertEquals(PositionUtil.createFromFENString(p.writeToFEN(), backend).getPawnKey(), p.getPawnKey());
+            assertEquals(p.getPawnKey(), p.deepClone().getPawnKey());
+            p.unmakeMove(push);
+            assertEquals(pawns, p.getPawnKey());
+            assertEquals(CoordinateUtility.convertSANTo0x88("e1"), p.getKingSquare(WHITE_TEAM));
+            assertEquals(CoordinateUtility.convertSANTo0x88("e8"), p.getKingSquare(BLACK_TEAM));
+        }
+    }
+
+    /**
+     * Like the key, the piece-square totals must match ones built from scratch after every move and take-back.
+     */
+    @Test
+    public void testIncrementalScores() {
+        for (PositionUtil.Backend backend : PositionUtil.Backend.values()) {
+            Position start = PositionUtil.createStartingPosition(backend);
+            assertEquals(0, start.getMidgameScore());
+            assertEquals(0, start.getEndgameScore());
+            assertEquals(PieceSquareTables.MAX_PHASE, start.getPhase());
+            for (String fen : new String[]{COMPLICATED_FEN, PROMOTION_FEN, "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1"}) {
+                checkScores(PositionUtil.createFromFENString(fen, backend), backend, 3);
+            }
+        }
+    }
+
+    private void checkScores(Position position, PositionUtil.Backend backend, int depth) {
+        Position fresh = PositionUtil.createFromFENString(position.writeToFEN(), backend);
+        assertEquals(fresh.getMidgameScore(), position.getMidgameScore());
+        assertEquals(fresh.getEndgameScore(), position.getEndgameScore());
+        assertEquals(fresh.getPhase(), position.getPhase());
+        if (depth == 0) {
+            return;
+        }
+        int midgame = position.getMidgameScore();
+        for (int move : position.getPossibleMoves()) {
+            position.makeMove(move);
+            checkScores(position, backend, depth - 1);
+            position.unmakeMove(move);
+            assertEquals(midgame, position.getMidgameScore());
+        }
+    }
+
+    /**
+     * isAttacked() reads the piece lists, so after any line of moves and take-backs it has to agree with a position
+     * whose lists were built from scratch.
+     */
+    @Test
+    public void testAttacksAfterMoves() {
+        String[] fens = {COMPLICATED_FEN, PROMOTION_FEN};
+        for (String fen : fens) {
+            checkAttacks((PositionImpl) PositionUtil.createFromFENString(fen), 3);
+        }
+    }
+
+    private void checkAttacks(PositionImpl position, int depth) {
+        PositionImpl fresh = (PositionImpl) PositionUtil.createFromFENString(position.writeToFEN());
+        for (int i = 0; i < 128; i++) {
+            if ((i & 0x88) == 0) {
+                assertEquals(fresh.isAttacked(i, WHITE_TEAM), position.isAttacked(i, WHITE_TEAM));
+                assertEquals(fresh.isAttacked(i, BLACK_TEAM), position.isAttacked(i, BLACK_TEAM));
+            }
+        }
+        if (depth == 0) {
+            return;
+        }
+        for (int move : position.getPossibleMoves()) {
+            position.makeMove(move);
+            checkAttacks(position, depth - 1);
+            position.unmakeMove(move);
+        }
+    }
+
+    /**
+     * The generator works out pins and checks up front, so check the positions where that's easiest to get wrong.
+     */
+    @Test
+    public void testPinsAndEnPassant() {
+        // Taking en passant would leave both pawns' squares empty and expose the king to the rook
+        Position instance = PositionUtil.createFromFENString("8/8/8/KPp4r/8/8/8/7k w - c6 0 1");
+        assertEquals(INVALID_MOVE, instance.checkMove(CoordinateUtility.convertSANTo0x88("b5"), CoordinateUtility.convertSANTo0x88("c6")));
+        // The pinned knight can't move at all, and the pinned rook only along the pin
+        instance = PositionUtil.createFromFENString("4k3/4r3/8/8/4R2b/8/5N2/4K3 w - - 0 1");
+        assertEquals(INVALID_MOVE, instance.checkMove(CoordinateUtility.convertSANTo0x88("f2"), CoordinateUtility.convertSANTo0x88("d3")));
+        assertEquals(INVALID_MOVE, instance.checkMove(CoordinateUtility.convertSANTo0x88("e4"), CoordinateUtility.convertSANTo0x88("a4")));
+        assertTrue(instance.checkMove(CoordinateUtility.convertSANTo0x88("e4"), CoordinateUtility.convertSANTo0x88("e7")) != INVALID_MOVE);
+        // Rook and pawn endgame full of pins and discovered checks along the rank
+        instance = PositionUtil.createFromFENString("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1");
+        assertEquals(674624, PositionUtil.perft(instance, 5));
+    }
+
+    private void playMoves(Position position, String... squares) {
+        for (int i = 0; i < squares.length; i += 2) {
+            position.makeMove(position.checkMove(CoordinateUtility.convertSANTo0x88(squares[i]), CoordinateUtility.convertSANTo0x88(squares[i + 1])));
+        }
+    }
+
+    @Test
+    public void testParallelPerft() {
+        Position instance = PositionUtil.createFromFENString(COMPLICATED_FEN);
+        assertEquals(COMPLICATED_PERFT_4, PositionUtil.perft(instance, 4, 4));
+        assertEquals(COMPLICATED_FEN, instance.writeToFEN());
+        instance = PositionUtil.createFromFENString(PROMOTION_FEN, PositionUtil.Backend.BITBOARD);
+        assertEquals(PROMOTION_PERFT_5, PositionUtil.perft(instance, 5, 2));
+        assertEquals(PositionUtil.divide(instance, 3), PositionUtil.divide(instance, 3, 3));
+    }
+
+    @Test
+    public void testHashedPerft() {
+        PerftTable table = new PerftTable(4);
+        Position instance = PositionUtil.createFromFENString(COMPLICATED_FEN);
+        assertEquals(COMPLICATED_PERFT_4, PositionUtil.perft(instance, 4, table));
+        // Again, this time mostly out of the table
+        assertEquals(COMPLICATED_PERFT_4, PositionUtil.perft(instance, 4, table));
+        assertEquals(COMPLICATED_PERFT_4, table.probe(instance.getHashKey(), 4));
+        assertEquals(-1, table.probe(instance.getHashKey(), 5));
+        instance = PositionUtil.createStartingPosition(PositionUtil.Backend.BITBOARD);
+        assertEquals(STARTING_PERFT_5, PositionUtil.perft(instance, 5, 2, new PerftTable(4)));
+    }
+
     @Test
     public void testCloneMethod() {
         Position instance = PositionUtil.createFromFENString(AFTER_E4_E5);
@@ -0,0 +1,105 @@
+package com.koleman.chess.uci;
+
+import com.koleman.chess.engine.EngineImpl;
+import com.koleman.chess.model.BitMove;
+import com.koleman.chess.model.Position;
+import com.koleman.chess.model.PositionUtil;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+
+import static com.koleman.chess.model.Definitions.*;
+import static com.koleman.chess.model.TestData.*;
+
+public class TestUciProtocol extends TestCase {
+
+    private ByteArrayOutputStream output;
+
+    private UciProtocol createProtocol(String input) {
+        output = new ByteArrayOutputStream();
+        return new UciProtocol(new BufferedReader(new StringReader(input)), new PrintStream(output, true));
+    }
+
+    @Test
+    public void testHandshake() throws Exception {
+        createProtocol("uci\nisready\nquit\n").run();
+        String text = output.toString();
+        assertTrue(text.contains("id name pablo"));
+        assertTrue(text.contains("uciok"));
+        assertTrue(text.contains("readyok"));
+    }
+
+    @Test
+    public void testGoDepth() throws Exception {
+        // Back rank mate with Ra8#
+        UciProtocol protocol = createProtocol("");
+        protocol.execute("position fen 6k1/5ppp/8/8/8/8/5PPP/R5K1 w - - 0 1");
+        protocol.execute("go depth 3");
+        // A GUI waits for the best move, and so do we
+        for (int i = 0; i < 200 && !output.toString().contains("bestmove"); i++) {
+            Thread.sleep(50);
+        }
+        String text = output.toString();
+        assertTrue(text, text.contains("bestmove a1a8"));
+        assertTrue(text, text.contains("info "));
+        assertTrue(text, text.contains(" pv a1a8"));
+    }
+
+    @Test
+    public void testMateScore() throws Exception {
+        // Ra7 and Rb8 mate
+        UciProtocol protocol = createProtocol("");
+        protocol.execute("position fen 7k/8/8/8/8/8/R7/1R4K1 w - - 0 1");
+        protocol.execute("go depth 4");
+        String text = waitForBestMove();
+        assertTrue(text, text.contains("score mate 2 "));
+        assertFalse(text, text.contains("score cp 1499"));
+
+        // After Ra7 it's black getting mated, next move
+        protocol = createProtocol("");
+        protocol.execute("position fen 7k/R7/8/8/8/8/8/1R4K1 b - - 1 1");
+        protocol.execute("go depth 3");
+        text = waitForBestMove();
+        assertTrue(text, text.contains("score mate -1 "));
+
+        assertEquals("cp -35", UciKibitzView.formatScore(-35));
+        assertEquals("mate 1", UciKibitzView.formatScore(EngineImpl.MATE - 1));
+    }
+
+    private String waitForBestMove() throws InterruptedException {
+        for (int i = 0; i < 200 && !output.toString().contains("bestmove"); i++) {
+            Thread.sleep(50);
+        }
+        return output.toString();
+    }
+
+    @Test
+    public void testStopInfinite() throws Exception {
+        UciProtocol protocol = createProtocol("");
+        protocol.execute("position startpos moves e2e4 e7e5");
+        protocol.execute("go infinite");
+        Thread.sleep(300);
+        protocol.execute("stop");
+        String text = output.toString();
+        assertTrue(text, text.contains("bestmove "));
+        // Nothing prints after the best move
+        assertEquals(text.length(), output.toString().length());
+    }
+
+    @Test
+    public void testParseMove() {
+        Position position = PositionUtil.createFromFENString(PROMOTION_FEN);
+        int move = UciProtocol.parseMove(position, "g2h1n");
+        assertEquals(PROMOTION_KNIGHT, BitMove.getType(move));
+        assertEquals("g2h1n", UciProtocol.toUci(BitMove.getMoveObject(move)));
+        assertEquals(PROMOTION_QUEEN, BitMove.getType(UciProtocol.parseMove(position, "g2g1q")));
+        assertEquals(INVALID_MOVE, UciProtocol.parseMove(position, "g2g3"));
+
+        position = PositionUtil.createStartingPosition();
+        assertEquals("e2e4", UciProtocol.toUci(BitMove.getMoveObject(UciProtocol.parseMove(position, "e2e4"))));
+    }
+}